@@ -0,0 +1,48 @@
+class ASSGNNode implements RobotProgramNode {
+
+	private String name;
+	private final int slot;
+	private EXPNode EXP;
+	private int depth;
+
+	public ASSGNNode(String name, int slot, EXPNode EXP) {
+		this.name = name;
+		this.slot = slot;
+		this.EXP = EXP;
+		this.depth = 1 + EXP.getDepth();
+	}
+	
+	public EXPNode getExpression() {
+		return EXP;
+	}
+
+	public void setExpression(EXPNode EXP) {
+		this.EXP = EXP;
+		this.depth = 1 + EXP.getDepth();
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public void execute(Robot robot) {
+		robot.getFrame()[slot] = EXP.evaluate(robot);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/** The variable's index in the frame of variables */
+	public int getSlot() {
+		return slot;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return name.toString() + " = " + EXP.toString();
+	}
+}
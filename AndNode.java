@@ -0,0 +1,50 @@
+// AND NODE
+class AndNode implements CONDNode {
+	CONDNode n1;
+	CONDNode n2;
+	private final int depth;
+	private int rightCost = -1;
+
+	public AndNode(CONDNode n1, CONDNode n2) {
+		this.n1 = n1;
+		this.n2 = n2;
+		this.depth = 1 + Math.max(n1.getDepth(), n2.getDepth());
+	}
+
+	public boolean evaluate(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			return Interpreter.evaluateCond(this, robot);
+		}
+		return (n1.evaluate(robot) && charged(robot) && n2.evaluate(robot));
+	}
+
+	public CONDNode getLeft() {
+		return n1;
+	}
+
+	public CONDNode getRight() {
+		return n2;
+	}
+
+	/** The instructions evaluating the right condition costs (see Robot.charge) */
+	public int getRightCost() {
+		if (rightCost < 0) {
+			rightCost = Interpreter.cost(n2);
+		}
+		return rightCost;
+	}
+
+	// charges for the right condition, to evaluate it
+	private boolean charged(Robot robot) {
+		robot.charge(getRightCost());
+		return true;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return n1.toString() + " AND " + n2.toString();
+	}
+}
@@ -0,0 +1,314 @@
+import java.awt.Point;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times finding the closest barrels to a robot, as its sensors do each tick,
+ * in worlds of up to hundreds of thousands of barrels.
+ *
+ * Each tick one barrel is taken and another added, then the robot looks for
+ * its closest and its tenth closest barrel from a random place in the world.
+ * "sort" does it as Robot.updatePending used to, copying every barrel to a
+ * list relative to the robot and sorting them by distance; "index" takes a
+ * view of a BarrelIndex and searches outwards from the robot. Before timing,
+ * it checks that both find barrels at the same distances.
+ *
+ * With -ticks, it instead times whole ticks of a world stepped in lockstep
+ * (see World.tick), in worlds from 12x12 to 10000x10000 starting with
+ * different numbers of barrels, for robots whose program only moves and
+ * robots whose program reads the closest barrel. The robots that only move
+ * should take as long however many barrels there are, as their sensors never
+ * look at them (see Sensors), and neither should take much longer in a bigger
+ * world. Only the ticks are timed, not making the worlds.
+ *
+ * With -memory, it instead compares the heap the barrels of worlds from 12x12
+ * to 4096x4096 take up, in a BarrelIndex and in the concurrent hash set of
+ * Points that World used to keep them in.
+ *
+ * Usage: java BarrelBenchmark [-ticks | -memory]
+ */
+public class BarrelBenchmark {
+
+	private static final long WARMUP_NANOS = 1000000000L, ITERATION_NANOS = 500000000L;
+	private static final int ITERATIONS = 3;
+	// the sizes of world and numbers of barrels to time
+	private static final int[][] WORLDS = { { 12, 10 }, { 12, 100 }, { 100, 1000 }, { 1000, 10000 },
+			{ 1000, 100000 }, { 1000, 500000 }, { 10000, 1000 }, { 10000, 100000 } };
+
+	// a program that only moves, and one that reads the closest barrel every tick
+	private static final String[] PROGRAMS = { "loop { move; turnL; }",
+			"loop { if (gt(barrelLR, 0)) { turnR; } else { turnL; } }" };
+	// the sizes of world, and numbers of barrels they start with, to time ticks in
+	private static final int[][] TICK_WORLDS = { { 12, 0 }, { 12, 10 }, { 12, 144 }, { 1000, 0 }, { 1000, 1000 },
+			{ 1000, 100000 }, { 10000, 0 }, { 10000, 1000 }, { 10000, 100000 } };
+	// the sizes of world, and the share of their cells with a barrel, to compare the memory of
+	private static final int[] MEMORY_SIZES = { 12, 64, 256, 1024, 4096 };
+	private static final double[] DENSITIES = { 0.01, 0.1, 0.5 };
+
+	private static long sink;
+	// what retained is measuring, so that it can't be collected before it is
+	private static Object held;
+
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-ticks")) {
+			ticks();
+			return;
+		}
+		if (args.length > 0 && args[0].equals("-memory")) {
+			memory();
+			return;
+		}
+		System.out.printf("%-16s %-6s %16s %14s %12s%n", "world", "way", "ticks/s", "us/tick", "bytes/tick");
+		for (int[] world : WORLDS) {
+			Barrels w = new Barrels(world[0], world[1], new Random(1));
+			w.check();
+			String name = world[0] + "x" + world[0] + ", " + world[1];
+			measure(name, "sort", w, true);
+			measure(name, "index", w, false);
+		}
+	}
+
+	/** A world of barrels, as both a list and an index, and a robot somewhere in it */
+	private static class Barrels {
+		final int size;
+		final BarrelIndex index;
+		final List<Point> barrels = new ArrayList<Point>();
+		final Random rand;
+
+		Barrels(int size, int count, Random rand) {
+			this.size = size;
+			this.rand = rand;
+			index = new BarrelIndex(size, size);
+			while (index.size() < count) {
+				int x = rand.nextInt(size), y = rand.nextInt(size);
+				if (index.add(x, y)) {
+					barrels.add(new Point(x, y));
+				}
+			}
+		}
+
+		/** Takes a random barrel and adds one somewhere else */
+		void change() {
+			Point p = barrels.get(rand.nextInt(barrels.size()));
+			int x = rand.nextInt(size), y = rand.nextInt(size);
+			if (index.add(x, y)) {
+				index.remove(p.x, p.y);
+				p.setLocation(x, y);
+			}
+		}
+
+		/** A tick of a robot at a random place, finding its closest and nth closest barrels one way or the other */
+		long tick(boolean sort, int n) {
+			change();
+			int x = rand.nextInt(size), y = rand.nextInt(size), dir = rand.nextInt(4);
+			int dx = (dir == 2) ? -1 : (dir == 3) ? 1 : 0;
+			int dy = (dir == 0) ? -1 : (dir == 1) ? 1 : 0;
+			long sum = 0;
+			if (sort) {
+				List<Point> relative = sorted(x, y, dx, dy);
+				sum += relative.get(0).x + relative.get(n).y;
+			} else {
+				CellIndex.View view = index.view();
+				sum += CellIndex.lr(view.nearest(0, x, y, dx, dy)) + CellIndex.fb(view.nearest(n, x, y, dx, dy));
+			}
+			return sum;
+		}
+
+		/** The barrels relative to the robot, closest first, as Robot.updatePending used to make them */
+		List<Point> sorted(int x, int y, int dx, int dy) {
+			List<Point> relative = new ArrayList<Point>(barrels);
+			for (int i = 0; i < relative.size(); i++) {
+				Point p = relative.get(i);
+				// right is forward turned clockwise
+				int lr = (p.x - x) * -dy + (p.y - y) * dx;
+				int fb = (p.x - x) * dx + (p.y - y) * dy;
+				relative.set(i, new Point(lr, fb));
+			}
+			Collections.sort(relative, new Comparator<Point>() {
+				@Override
+				public int compare(Point p1, Point p2) {
+					int d1 = Math.abs(p1.x) + Math.abs(p1.y);
+					int d2 = Math.abs(p2.x) + Math.abs(p2.y);
+					return d1 - d2;
+				}
+			});
+			return relative;
+		}
+
+		/** Checks that the index finds barrels at the distances the sort does, from a few places */
+		void check() {
+			int[][] dirs = { { 0, -1 }, { 0, 1 }, { -1, 0 }, { 1, 0 } };
+			for (int i = 0; i < 20; i++) {
+				int x = rand.nextInt(size), y = rand.nextInt(size);
+				int[] d = dirs[i % 4];
+				List<Point> relative = sorted(x, y, d[0], d[1]);
+				CellIndex.View view = index.view();
+				for (int n = 0; n <= Math.min(20, relative.size()); n++) {
+					long barrel = view.nearest(n, x, y, d[0], d[1]);
+					int expected = (n < relative.size()) ? Math.abs(relative.get(n).x) + Math.abs(relative.get(n).y) : -1;
+					int actual = -1;
+					if (barrel != CellIndex.NONE) {
+						int lr = CellIndex.lr(barrel), fb = CellIndex.fb(barrel);
+						actual = Math.abs(lr) + Math.abs(fb);
+						if (!relative.contains(new Point(lr, fb))) {
+							actual = -2;
+						}
+					}
+					if (actual != expected) {
+						System.out.printf("%dx%d: barrel %d from (%d,%d) is at distance %d, not %d%n", size, size, n,
+								x, y, actual, expected);
+						System.exit(1);
+					}
+				}
+			}
+		}
+	}
+
+	private static void measure(String world, String way, final Barrels w, final boolean sort) {
+		Timing t = Timing.measure(new Timing.Work() {
+			long run() {
+				sink += w.tick(sort, Math.min(9, w.barrels.size() - 1));
+				return 1;
+			}
+		}, WARMUP_NANOS, ITERATION_NANOS, ITERATIONS);
+		System.out.printf("%-16s %-6s %16s %14.2f %12d%n", world, way, t.format("%.0f"), t.nanos / 1e3 / t.ops,
+				t.bytes / t.ops);
+	}
+
+	// =======================================================
+	// Ticks
+	// =======================================================
+
+	private static void ticks() {
+		// the robots would print every action
+		Trace.setSinks();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			out.printf("%-58s %-12s %8s %16s %12s%n", "program", "world", "barrels", "ticks/s", "ns/tick");
+			for (String src : PROGRAMS) {
+				RobotProgramNode prog = Parser.parseSource(ByteBuffer.wrap(src.getBytes(StandardCharsets.UTF_8)));
+				for (int[] world : TICK_WORLDS) {
+					measureTicks(out, src, prog, world[0], world[1]);
+				}
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	private static void measureTicks(PrintStream out, String src, RobotProgramNode prog, int size, int barrels) {
+		Timing t = Timing.measure(ticks(prog, size, barrels), WARMUP_NANOS, ITERATION_NANOS, ITERATIONS);
+		out.printf("%-58s %-12s %8d %16s %12.0f%n", src, size + "x" + size, barrels, t.format("%.0f"),
+				t.nanos / (double) t.ops);
+	}
+
+	/**
+	 * Ticks a world of the given size that starts with the given number of
+	 * barrels a thousand times, each time it is run, leaving making the world
+	 * out of the timing.
+	 */
+	private static Timing.Work ticks(final RobotProgramNode prog, final int size, final int barrels) {
+		final Random rand = new Random(1);
+		return new Timing.Work() {
+			long run() {
+				long start = System.nanoTime();
+				World world = new World(size, size);
+				world.setSeed(1);
+				for (int added = 0; added < barrels;) {
+					if (world.getBarrels().add(rand.nextInt(size), rand.nextInt(size))) {
+						added++;
+					}
+				}
+				world.getRobot(1).setProgram(prog);
+				world.getRobot(2).setProgram(prog);
+				world.startLockstep();
+				untimed(start);
+				int n = world.runLockstep(1000);
+				start = System.nanoTime();
+				world.reset();
+				untimed(start);
+				return n;
+			}
+		};
+	}
+
+	// =======================================================
+	// Memory
+	// =======================================================
+
+	private static void memory() {
+		System.out.printf("%-10s %8s %10s %16s %14s %14s%n", "world", "barrels", "", "hash set bytes", "index bytes",
+				"per barrel");
+		// load the classes both need first
+		retained(12, 0.5, true);
+		retained(12, 0.5, false);
+		for (int size : MEMORY_SIZES) {
+			for (double density : DENSITIES) {
+				// the same barrels in both
+				long set = retained(size, density, true);
+				long index = retained(size, density, false);
+				long barrels = count(size, density);
+				System.out.printf("%-10s %8.0f%% %10d %16d %14d %6.1f / %-6.2f%n", size + "x" + size, 100 * density,
+						barrels, set, index, set / (double) barrels, index / (double) barrels);
+			}
+		}
+	}
+
+	/** The barrels retained puts in a world */
+	private static long count(int size, double density) {
+		Random rand = new Random(1);
+		long count = 0;
+		for (long i = (long) size * size; i > 0; i--) {
+			if (rand.nextDouble() < density) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The bytes of heap the barrels of a world take up, as a hash set or an
+	 * index. Small worlds are measured many at a time, so that they show.
+	 */
+	private static long retained(int size, double density, boolean hashSet) {
+		int copies = Math.max(1, (1 << 22) / (size * size));
+		Set<?>[] worlds = new Set<?>[copies];
+		Runtime runtime = Runtime.getRuntime();
+		// the last world measured can outlive a single collection
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		long before = runtime.totalMemory() - runtime.freeMemory();
+		for (int i = 0; i < copies; i++) {
+			Set<Point> barrels = hashSet ? Collections.newSetFromMap(new ConcurrentHashMap<Point, Boolean>())
+					: new BarrelIndex(size, size);
+			Random rand = new Random(1);
+			for (int y = 0; y < size; y++) {
+				for (int x = 0; x < size; x++) {
+					if (rand.nextDouble() < density) {
+						barrels.add(new Point(x, y));
+					}
+				}
+			}
+			worlds[i] = barrels;
+		}
+		held = worlds;
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+		held = null;
+		return (after - before) / copies;
+	}
+}
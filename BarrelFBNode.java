@@ -0,0 +1,52 @@
+// "barrelFB" NODE
+class BarrelFBNode implements SENNode, EXPNode {
+
+	private EXPNode EXP;
+	private int depth = 1;
+
+	public BarrelFBNode() {
+
+	}
+
+	public BarrelFBNode(EXPNode EXP) {
+		this.EXP = EXP;
+		this.depth = 1 + EXP.getDepth();
+	}
+
+	public int execute(Robot robot) {
+		return robot.sense().barrelFB(0);
+	}
+
+	public int evaluate(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			return Interpreter.evaluateExp(this, robot);
+		}
+		if (EXP == null) {
+			return robot.sense().barrelFB(0);
+		} else {
+			int n = this.EXP.evaluate(robot);
+			return robot.sense().barrelFB(n);
+		}
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.barrelFB((EXP == null) ? 0 : EXP.evaluate(robot));
+	}
+
+	/** The barrel number, or null for the closest barrel */
+	public EXPNode getExpression() {
+		return EXP;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		if (EXP == null) {
+			return "FB distance to closest barrel";
+		} else {
+			return "FB distance to barrel no. 'argument'";
+		}
+	}
+}
@@ -0,0 +1,10 @@
+/**
+ * The fuel barrels of a world: the cells that have a barrel. Robots take
+ * views of it to find the barrels closest to them (see Sensors).
+ */
+public class BarrelIndex extends CellIndex {
+
+	public BarrelIndex(int width, int height) {
+		super(width, height);
+	}
+}
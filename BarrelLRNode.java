@@ -0,0 +1,53 @@
+// "barrelLR" NODE
+class BarrelLRNode implements SENNode, EXPNode {
+
+	private EXPNode EXP;
+	private int depth = 1;
+
+	public BarrelLRNode() {
+
+	}
+
+	public BarrelLRNode(EXPNode EXP) {
+		this.EXP = EXP;
+		this.depth = 1 + EXP.getDepth();
+	}
+
+	public int execute(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			return Interpreter.evaluateExp(this, robot);
+		}
+		if (EXP == null) {
+			return robot.sense().barrelLR(0);
+		} else {
+			int n = this.EXP.evaluate(robot);
+			return robot.sense().barrelLR(n);
+		}
+	}
+
+	public int evaluate(Robot robot) {
+		return execute(robot);
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.barrelLR((EXP == null) ? 0 : EXP.evaluate(robot));
+	}
+
+	/** The barrel number, or null for the closest barrel */
+	public EXPNode getExpression() {
+		return EXP;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		if (this.EXP == null) {
+			return "LR distance to closest barrel";
+		} else {
+			return "LR distance to barrel no. 'argument'";
+		}
+	}
+
+}
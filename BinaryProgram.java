@@ -0,0 +1,573 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A compact, versioned binary format for parsed robot programs, so that a
+ * program can be loaded without lexing or parsing its source.
+ *
+ * The file starts with the bytes "ROBO" and a version byte, followed by the
+ * nodes of the tree in post-order: each node's children come before the
+ * node's own record, so reading is a simple loop over a stack of nodes. A
+ * record is a tag byte followed by any counts, numbers and names the node
+ * needs, as unsigned LEB128 varints (numbers are zig-zag encoded first).
+ *
+ * Variables are written with the slot the parser gave them, and the program
+ * lists their names in slot order. Reading checks that every slot is one of
+ * the program's variables, so a damaged file can't run off the robot's frame.
+ *
+ * A node that appears in more than one place in the tree, as expressions
+ * shared by the Optimizer can, is written once with the SHARED bit set on its
+ * tag, and after that as a REF to its position in the table of shared nodes,
+ * which keeps the file the size of the tree that was built rather than of the
+ * fully expanded tree.
+ *
+ * Version 2 added the slots; version 1 files must be compiled again.
+ */
+public class BinaryProgram {
+
+	static final byte[] MAGIC = { 'R', 'O', 'B', 'O' };
+	static final int VERSION = 2;
+
+	// tags
+	private static final int PROG = 1, STMT = 2, LOOP = 3, BLOCK = 4, IF = 5, WHILE = 6, MOVE = 7, MOVE_N = 8,
+			TURNL = 9, TURNR = 10, TURNAROUND = 11, SHIELDON = 12, SHIELDOFF = 13, TAKEFUEL = 14, WAIT = 15,
+			WAIT_N = 16, ASSGN = 17, SENSE = 18;
+	private static final int COND = 20, AND = 21, OR = 22, NOT = 23, GT = 24, EQ = 25, LT = 26;
+	private static final int FUELLEFT = 30, OPPLR = 31, OPPFB = 32, NUMBARRELS = 33, WALLDIST = 34, BARRELLR = 35,
+			BARRELLR_N = 36, BARRELFB = 37, BARRELFB_N = 38;
+	private static final int ADD = 40, SUB = 41, MUL = 42, DIV = 43, NUM = 44, VAR = 45;
+	private static final int REF = 63;
+	private static final int SHARED = 0x80;
+
+	/** Does the source start with the header of a compiled program? */
+	public static boolean isBinary(ByteBuffer src) {
+		if (src.limit() < MAGIC.length + 1) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (src.get(i) != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// =======================================================
+	// Writing
+	// =======================================================
+
+	public static byte[] toBytes(RobotProgramNode prog) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(prog, out);
+		} catch (IOException e) {
+			// can't happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Writes a program tree, as built by the Parser, to the stream.
+	 */
+	public static void write(RobotProgramNode prog, OutputStream out) throws IOException {
+		IdentityHashMap<Object, Integer> refs = countReferences(prog);
+		IdentityHashMap<Object, Integer> shared = new IdentityHashMap<Object, Integer>();
+		Encoder enc = new Encoder();
+		enc.bytes(MAGIC);
+		enc.varint(VERSION);
+
+		// iterative post-order walk, so deep trees don't overflow the stack
+		ArrayList<Object> nodes = new ArrayList<Object>();
+		ArrayList<Object[]> kids = new ArrayList<Object[]>();
+		int[] next = new int[16];
+		nodes.add(prog);
+		kids.add(null);
+		while (!nodes.isEmpty()) {
+			int top = nodes.size() - 1;
+			Object node = nodes.get(top);
+			if (kids.get(top) == null) {
+				Integer index = shared.get(node);
+				if (index != null) {
+					enc.varint(REF);
+					enc.varint(index);
+					nodes.remove(top);
+					kids.remove(top);
+					continue;
+				}
+				kids.set(top, Nodes.children(node));
+				if (next.length <= top) {
+					next = Arrays.copyOf(next, next.length * 2);
+				}
+				next[top] = 0;
+			}
+			Object[] children = kids.get(top);
+			if (next[top] < children.length) {
+				nodes.add(children[next[top]++]);
+				kids.add(null);
+				continue;
+			}
+			boolean isShared = refs.get(node) > 1;
+			writeRecord(node, enc, isShared ? SHARED : 0);
+			if (isShared) {
+				shared.put(node, shared.size());
+			}
+			nodes.remove(top);
+			kids.remove(top);
+		}
+		enc.writeTo(out);
+	}
+
+	/** Counts how many times each node is reached from the root */
+	private static IdentityHashMap<Object, Integer> countReferences(RobotProgramNode prog) {
+		IdentityHashMap<Object, Integer> refs = new IdentityHashMap<Object, Integer>();
+		ArrayList<Object> todo = new ArrayList<Object>();
+		todo.add(prog);
+		while (!todo.isEmpty()) {
+			Object node = todo.remove(todo.size() - 1);
+			Integer count = refs.get(node);
+			refs.put(node, (count == null) ? 1 : count + 1);
+			if (count == null) {
+				todo.addAll(Arrays.asList(Nodes.children(node)));
+			}
+		}
+		return refs;
+	}
+
+	private static void writeRecord(Object node, Encoder enc, int flags) {
+		if (node instanceof ProgNode) {
+			ProgNode n = (ProgNode) node;
+			enc.varint(PROG | flags);
+			enc.varint(n.getStatements().size());
+			enc.varint(n.getVariables().size());
+			for (String name : n.getVariables()) {
+				enc.string(name);
+			}
+		} else if (node instanceof BlockNode) {
+			enc.varint(BLOCK | flags);
+			enc.varint(((BlockNode) node).getSize());
+		} else if (node instanceof IfNode) {
+			IfNode n = (IfNode) node;
+			enc.varint(IF | flags);
+			enc.varint(n.getElifs().size());
+			enc.varint((n.getElseBlock() != null) ? 1 : 0);
+		} else if (node instanceof ASSGNNode) {
+			enc.varint(ASSGN | flags);
+			enc.string(((ASSGNNode) node).getName());
+			enc.varint(((ASSGNNode) node).getSlot());
+		} else if (node instanceof SenseNode) {
+			SenseNode n = (SenseNode) node;
+			enc.varint(SENSE | flags);
+			enc.varint(n.getNames().size());
+			for (int i = 0; i < n.getNames().size(); i++) {
+				enc.string(n.getNames().get(i));
+				enc.varint(n.getSlot(i));
+			}
+		} else if (node instanceof NumNode) {
+			enc.varint(NUM | flags);
+			int value = ((NumNode) node).getValue();
+			enc.varint((value << 1) ^ (value >> 31));
+		} else if (node instanceof VarNode) {
+			enc.varint(VAR | flags);
+			enc.string(((VarNode) node).getName());
+			enc.varint(((VarNode) node).getSlot());
+		} else {
+			enc.varint(simpleTag(node) | flags);
+		}
+	}
+
+	/** The tag of a node whose record is only its tag */
+	private static int simpleTag(Object node) {
+		if (node instanceof StmtNode) {
+			return STMT;
+		} else if (node instanceof LoopNode) {
+			return LOOP;
+		} else if (node instanceof WhileNode) {
+			return WHILE;
+		} else if (node instanceof MoveNode) {
+			return (((MoveNode) node).getExpression() == null) ? MOVE : MOVE_N;
+		} else if (node instanceof WaitNode) {
+			return (((WaitNode) node).getExpression() == null) ? WAIT : WAIT_N;
+		} else if (node instanceof TurnLNode) {
+			return TURNL;
+		} else if (node instanceof TurnRNode) {
+			return TURNR;
+		} else if (node instanceof TurnAroundNode) {
+			return TURNAROUND;
+		} else if (node instanceof ShieldOnNode) {
+			return SHIELDON;
+		} else if (node instanceof ShieldOffNode) {
+			return SHIELDOFF;
+		} else if (node instanceof TakeFuelNode) {
+			return TAKEFUEL;
+		} else if (node instanceof ConditionNode) {
+			return COND;
+		} else if (node instanceof AndNode) {
+			return AND;
+		} else if (node instanceof OrNode) {
+			return OR;
+		} else if (node instanceof NotNode) {
+			return NOT;
+		} else if (node instanceof GreaterThanNode) {
+			return GT;
+		} else if (node instanceof EqualToNode) {
+			return EQ;
+		} else if (node instanceof LessThanNode) {
+			return LT;
+		} else if (node instanceof FuelLeftNode) {
+			return FUELLEFT;
+		} else if (node instanceof OppLRNode) {
+			return OPPLR;
+		} else if (node instanceof OppFBNode) {
+			return OPPFB;
+		} else if (node instanceof NumBarrelsNode) {
+			return NUMBARRELS;
+		} else if (node instanceof WallDistNode) {
+			return WALLDIST;
+		} else if (node instanceof BarrelLRNode) {
+			return (((BarrelLRNode) node).getExpression() == null) ? BARRELLR : BARRELLR_N;
+		} else if (node instanceof BarrelFBNode) {
+			return (((BarrelFBNode) node).getExpression() == null) ? BARRELFB : BARRELFB_N;
+		} else if (node instanceof AddNode) {
+			return ADD;
+		} else if (node instanceof SubNode) {
+			return SUB;
+		} else if (node instanceof MulNode) {
+			return MUL;
+		} else if (node instanceof DivNode) {
+			return DIV;
+		}
+		throw new IllegalArgumentException("Can't write a " + node.getClass().getName());
+	}
+
+	/** A growable byte array with varint encoding */
+	private static class Encoder {
+		private byte[] buf = new byte[256];
+		private int size;
+
+		void byteValue(int b) {
+			if (size == buf.length) {
+				buf = Arrays.copyOf(buf, size * 2);
+			}
+			buf[size++] = (byte) b;
+		}
+
+		void bytes(byte[] bytes) {
+			for (byte b : bytes) {
+				byteValue(b);
+			}
+		}
+
+		void varint(int value) {
+			while ((value & ~0x7F) != 0) {
+				byteValue((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			byteValue(value);
+		}
+
+		void string(String s) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			varint(bytes.length);
+			bytes(bytes);
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			out.write(buf, 0, size);
+		}
+	}
+
+	// =======================================================
+	// Reading
+	// =======================================================
+
+	/**
+	 * Reads a compiled program. The buffer is read in place, so it can be a
+	 * memory-mapped file.
+	 */
+	public static RobotProgramNode read(ByteBuffer src) {
+		if (!isBinary(src)) {
+			throw new ParserFailureException("Not a compiled robot program");
+		}
+		Decoder in = new Decoder(src, MAGIC.length);
+		int version = in.varint();
+		if (version != VERSION) {
+			throw new ParserFailureException("Compiled robot program has version " + version + ", expected " + VERSION);
+		}
+		try {
+			return readNodes(in);
+		} catch (ParserFailureException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			// ClassCastException, IndexOutOfBoundsException etc. from a damaged file
+			throw new ParserFailureException("Invalid compiled robot program at byte " + in.pos + ": " + e);
+		}
+	}
+
+	private static RobotProgramNode readNodes(Decoder in) {
+		Object[] stack = new Object[64];
+		int top = 0;
+		Object[] shared = new Object[16];
+		int sharedCount = 0;
+		while (in.hasMore()) {
+			int tag = in.varint();
+			if (tag == REF) {
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+				}
+				stack[top++] = shared[in.varint()];
+				continue;
+			}
+			Object node;
+			switch (tag & ~SHARED) {
+			case PROG: {
+				int count = in.varint();
+				ProgNode n = new ProgNode(count);
+				for (int i = top - count; i < top; i++) {
+					n.addNode((RobotProgramNode) stack[i]);
+				}
+				top -= count;
+				List<String> names = new ArrayList<String>();
+				for (int i = in.varint(); i > 0; i--) {
+					names.add(in.string());
+				}
+				if (in.slots > names.size()) {
+					throw new ParserFailureException(
+							"Compiled robot program has variable slot " + (in.slots - 1) + ", past its variables");
+				}
+				n.setVariables(names);
+				node = n;
+				break;
+			}
+			case BLOCK: {
+				int count = in.varint();
+				BlockNode n = new BlockNode(count);
+				for (int i = top - count; i < top; i++) {
+					n.addNode((RobotProgramNode) stack[i]);
+				}
+				top -= count;
+				node = n;
+				break;
+			}
+			case IF: {
+				int elifs = in.varint();
+				boolean hasElse = in.varint() != 0;
+				int base = top - 2 - elifs - (hasElse ? 1 : 0);
+				IfNode n = new IfNode((CONDNode) stack[base]);
+				n.setBlock((BlockNode) stack[base + 1]);
+				for (int i = 0; i < elifs; i++) {
+					n.addElif((IfNode) stack[base + 2 + i]);
+				}
+				if (hasElse) {
+					n.setElseBlock((BlockNode) stack[top - 1]);
+				}
+				top = base;
+				node = n;
+				break;
+			}
+			case WHILE: {
+				WhileNode n = new WhileNode((CONDNode) stack[top - 2]);
+				n.setBlock((BlockNode) stack[top - 1]);
+				top -= 2;
+				node = n;
+				break;
+			}
+			case STMT:
+				node = new StmtNode((RobotProgramNode) stack[--top]);
+				break;
+			case LOOP:
+				node = new LoopNode((RobotProgramNode) stack[--top]);
+				break;
+			case MOVE:
+				node = new MoveNode();
+				break;
+			case MOVE_N:
+				node = new MoveNode((EXPNode) stack[--top]);
+				break;
+			case WAIT:
+				node = new WaitNode();
+				break;
+			case WAIT_N:
+				node = new WaitNode((EXPNode) stack[--top]);
+				break;
+			case TURNL:
+				node = new TurnLNode();
+				break;
+			case TURNR:
+				node = new TurnRNode();
+				break;
+			case TURNAROUND:
+				node = new TurnAroundNode();
+				break;
+			case SHIELDON:
+				node = new ShieldOnNode();
+				break;
+			case SHIELDOFF:
+				node = new ShieldOffNode();
+				break;
+			case TAKEFUEL:
+				node = new TakeFuelNode();
+				break;
+			case ASSGN:
+				node = new ASSGNNode(in.string(), in.slot(), (EXPNode) stack[--top]);
+				break;
+			case SENSE: {
+				int count = in.varint();
+				SenseNode n = new SenseNode();
+				for (int i = top - count; i < top; i++) {
+					n.addSensor(in.string(), in.slot(), (SENNode) stack[i]);
+				}
+				top -= count;
+				node = n;
+				break;
+			}
+			case COND:
+				node = new ConditionNode((CONDNode) stack[--top]);
+				break;
+			case NOT:
+				node = new NotNode((CONDNode) stack[--top]);
+				break;
+			case AND:
+				top -= 2;
+				node = new AndNode((CONDNode) stack[top], (CONDNode) stack[top + 1]);
+				break;
+			case OR:
+				top -= 2;
+				node = new OrNode((CONDNode) stack[top], (CONDNode) stack[top + 1]);
+				break;
+			case GT:
+				top -= 2;
+				node = new GreaterThanNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case EQ:
+				top -= 2;
+				node = new EqualToNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case LT:
+				top -= 2;
+				node = new LessThanNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case FUELLEFT:
+				node = new FuelLeftNode();
+				break;
+			case OPPLR:
+				node = new OppLRNode();
+				break;
+			case OPPFB:
+				node = new OppFBNode();
+				break;
+			case NUMBARRELS:
+				node = new NumBarrelsNode();
+				break;
+			case WALLDIST:
+				node = new WallDistNode();
+				break;
+			case BARRELLR:
+				node = new BarrelLRNode();
+				break;
+			case BARRELLR_N:
+				node = new BarrelLRNode((EXPNode) stack[--top]);
+				break;
+			case BARRELFB:
+				node = new BarrelFBNode();
+				break;
+			case BARRELFB_N:
+				node = new BarrelFBNode((EXPNode) stack[--top]);
+				break;
+			case ADD:
+				top -= 2;
+				node = new AddNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case SUB:
+				top -= 2;
+				node = new SubNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case MUL:
+				top -= 2;
+				node = new MulNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case DIV:
+				top -= 2;
+				node = new DivNode((EXPNode) stack[top], (EXPNode) stack[top + 1]);
+				break;
+			case NUM: {
+				int zigzag = in.varint();
+				node = new NumNode((zigzag >>> 1) ^ -(zigzag & 1));
+				break;
+			}
+			case VAR:
+				node = new VarNode(in.string(), in.slot());
+				break;
+			default:
+				throw new ParserFailureException("Unknown node tag " + tag + " at byte " + in.pos);
+			}
+			if ((tag & SHARED) != 0) {
+				if (sharedCount == shared.length) {
+					shared = Arrays.copyOf(shared, sharedCount * 2);
+				}
+				shared[sharedCount++] = node;
+			}
+			if (top == stack.length) {
+				stack = Arrays.copyOf(stack, top * 2);
+			}
+			stack[top++] = node;
+		}
+		if (top != 1 || !(stack[0] instanceof ProgNode)) {
+			throw new ParserFailureException("Compiled robot program does not hold exactly one program");
+		}
+		return (RobotProgramNode) stack[0];
+	}
+
+	/** Reads varints and strings from a buffer without moving its position */
+	private static class Decoder {
+		private final ByteBuffer buf;
+		private int pos;
+		// one more than the highest variable slot read so far
+		int slots;
+
+		Decoder(ByteBuffer buf, int pos) {
+			this.buf = buf;
+			this.pos = pos;
+		}
+
+		boolean hasMore() {
+			return pos < buf.limit();
+		}
+
+		int varint() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = buf.get(pos++);
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new ParserFailureException("Bad number in compiled robot program at byte " + pos);
+		}
+
+		/** Reads a variable slot, which the program's variables must cover */
+		int slot() {
+			int slot = varint();
+			if (slot < 0) {
+				throw new ParserFailureException("Bad variable slot in compiled robot program at byte " + pos);
+			}
+			slots = Math.max(slots, slot + 1);
+			return slot;
+		}
+
+		String string() {
+			byte[] bytes = new byte[varint()];
+			buf.get(pos, bytes);
+			pos += bytes.length;
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
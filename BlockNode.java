@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+//BLOCK 
+class BlockNode implements RobotProgramNode {
+
+	private ArrayList<RobotProgramNode> STMT;
+	private int depth = 1;
+	private volatile int[] costs;
+
+	public BlockNode() {
+		this.STMT = new ArrayList<RobotProgramNode>();
+	}
+
+	/** For readers that know how many statements there will be */
+	public BlockNode(int size) {
+		this.STMT = new ArrayList<RobotProgramNode>(size);
+	}
+
+	public void execute(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			Interpreter.execute(this, robot);
+			return;
+		}
+		for (int i = 0; i < this.STMT.size(); i++) {
+			robot.charge(getCost(i));
+			this.STMT.get(i).execute(robot);
+		}
+	}
+
+	public void addNode(RobotProgramNode node) {
+		this.STMT.add(node);
+		depth = Math.max(depth, 1 + node.getDepth());
+		costs = null;
+	}
+
+	public int getSize() {
+		return this.STMT.size();
+	}
+
+	public List<RobotProgramNode> getStatements() {
+		return STMT;
+	}
+
+	/** The instructions statement i costs each time it is executed (see Robot.charge) */
+	public int getCost(int i) {
+		int[] costs = this.costs;
+		if (costs == null) {
+			costs = new int[STMT.size()];
+			for (int j = 0; j < costs.length; j++) {
+				costs[j] = Interpreter.cost(STMT.get(j));
+			}
+			this.costs = costs;
+		}
+		return costs[i];
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		String str = "\n";
+
+		for (RobotProgramNode r : this.STMT) {
+			str += "\t" + r.toString() + "\n";
+		}
+
+		return str;
+	}
+}
@@ -2,5 +2,10 @@
 public interface CONDNode {
 	public boolean evaluate(Robot robot);
 
+	/** The number of nodes on the longest path down from this one */
+	public default int getDepth() {
+		return 1;
+	}
+
 	public String toString();
 }
@@ -0,0 +1,527 @@
+import java.awt.Point;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of the cells of a world, as a bitmap, which finds the cells in it
+ * closest to a robot without sorting them. A world keeps its fuel barrels in
+ * one (see BarrelIndex), and the cells its robots are in, and moving to, in
+ * another, which finds each robot's nearest opponent (see World.claim).
+ *
+ * The index is the world's set, so it stays up to date as cells are added
+ * and taken. Robots read it through a View, an immutable copy of the index
+ * at one tick. The bitmap is kept in tiles of 64x64 cells, a word to each row
+ * of a tile, with no tile for a part of the world with no cells in the set,
+ * and the tiles in rows. Taking a view shares the tiles, and the first change
+ * to a tile after that copies the tile, its row of tiles and the table of
+ * rows, so views cost little however big the world is.
+ *
+ * Testing, adding and taking a cell take constant time, but for copying a
+ * tile and its row the first time after a view, and need no Point.
+ *
+ * Where the cells are dense, View.nearest searches outwards from the robot
+ * one ring of cells at a time, each ring the cells at the next Manhattan
+ * distance, so the cost of finding the nth closest depends on how far away
+ * it is, not on how many cells there are. Where they are sparse, and the
+ * rings would be mostly empty, it goes outwards a ring of tiles at a time
+ * instead, skipping the empty ones, looking at the cells in each until no
+ * tile left can have a closer one.
+ *
+ * Cells at the same distance from the robot come in the order of the ring:
+ * clockwise, starting straight ahead of it. For a robot at (x, y) facing
+ * north, the cells at distance 1 come ahead (x, y - 1), right (x + 1, y),
+ * behind (x, y + 1), then left (x - 1, y). Both searches give them in that
+ * order (see order), whatever order the cells were added in.
+ */
+public class CellIndex extends AbstractSet<Point> {
+
+	/** What View.nearest returns when there are not enough cells */
+	public static final long NONE = Long.MIN_VALUE;
+
+	// a tile is 1 << TILE_BITS cells across and down, though those at the bottom may be shorter
+	private static final int TILE_BITS = 6, TILE = 1 << TILE_BITS;
+	// nearest searches rings of cells where there are at most this many cells to each one in the set
+	private static final int RING_CELLS = 128;
+
+	private final int width, height;
+	// the tiles across and down the world
+	private final int across, down;
+	// the tiles of the bitmap, in rows, a bit per cell; null for a tile with no cells in the set
+	private volatile long[][][] tiles;
+	private int count;
+	// which views the table, each row and each tile were copied after, so that only newer ones can be changed in place
+	private int version, tableVersion;
+	private final int[] rowVersions, tileVersions;
+
+	public CellIndex(int width, int height) {
+		// the cells are numbered in an int (see View.next)
+		if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("no index of " + width + " by " + height + " cells");
+		}
+		this.width = width;
+		this.height = height;
+		this.across = (width + TILE - 1) >>> TILE_BITS;
+		this.down = (height + TILE - 1) >>> TILE_BITS;
+		this.tiles = new long[down][across][];
+		this.rowVersions = new int[down];
+		this.tileVersions = new int[down * across];
+	}
+
+	/** Is (x, y) in the set? */
+	public boolean contains(int x, int y) {
+		return has(tiles, width, height, x, y);
+	}
+
+	/** Adds (x, y), returning false if it was already in the set */
+	public synchronized boolean add(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			throw new IllegalArgumentException("(" + x + "," + y + ") is outside the world");
+		}
+		return change(x, y, true);
+	}
+
+	/** Takes (x, y) out, returning false if it wasn't in the set */
+	public synchronized boolean remove(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return false;
+		}
+		return change(x, y, false);
+	}
+
+	private boolean change(int x, int y, boolean in) {
+		long[][][] tiles = this.tiles;
+		int tx = x >>> TILE_BITS, ty = y >>> TILE_BITS, t = ty * across + tx, word = y & (TILE - 1);
+		long bit = 1L << x;
+		long[][] row = tiles[ty];
+		long[] tile = row[tx];
+		if (((tile != null && (tile[word] & bit) != 0)) == in) {
+			return false;
+		}
+		// a row copied since the last view is in a table copied since then too
+		if (rowVersions[ty] != version) {
+			if (tableVersion != version) {
+				tiles = tiles.clone();
+				tableVersion = version;
+			}
+			row = row.clone();
+			rowVersions[ty] = version;
+			tiles[ty] = row;
+		}
+		if (tile == null) {
+			// the tiles at the bottom only have the rows the world needs
+			tile = new long[Math.min(TILE, height - (ty << TILE_BITS))];
+		} else if (tileVersions[t] != version) {
+			tile = tile.clone();
+		}
+		tileVersions[t] = version;
+		tile[word] ^= bit;
+		if (!in && tile[word] == 0 && isEmpty(tile)) {
+			tile = null;
+		}
+		row[tx] = tile;
+		count += in ? 1 : -1;
+		this.tiles = tiles;
+		return true;
+	}
+
+	private static boolean isEmpty(long[] page) {
+		for (long word : page) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** The cells as they are now, which later changes leave alone */
+	public synchronized View view() {
+		version++;
+		return new View(tiles, count, width, height);
+	}
+
+	@Override
+	public boolean add(Point p) {
+		return add(p.x, p.y);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return (o instanceof Point) && contains(((Point) o).x, ((Point) o).y);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return (o instanceof Point) && remove(((Point) o).x, ((Point) o).y);
+	}
+
+	@Override
+	public synchronized void clear() {
+		tiles = new long[down][across][];
+		tableVersion = version;
+		Arrays.fill(rowVersions, version);
+		count = 0;
+	}
+
+	@Override
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Iterates over the cells there were when it was made, in the order of
+	 * View.next, so that the world can change while they are gone through.
+	 */
+	@Override
+	public Iterator<Point> iterator() {
+		final View view = view();
+		return new Iterator<Point>() {
+			private int next = view.next(-1);
+			private int last = -1;
+
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			public Point next() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				next = view.next(next);
+				return new Point(last % width, last / width);
+			}
+
+			public void remove() {
+				if (last < 0) {
+					throw new IllegalStateException();
+				}
+				CellIndex.this.remove(last % width, last / width);
+				last = -1;
+			}
+		};
+	}
+
+	/** The left-right part of a position returned by View.nearest */
+	public static int lr(long position) {
+		return (int) (position >> 32);
+	}
+
+	/** The front-back part of a position returned by View.nearest */
+	public static int fb(long position) {
+		return (int) position;
+	}
+
+	/** Where (lr, fb) comes in the rings: its distance, then how far round its ring */
+	static long order(int lr, int fb) {
+		int d = Math.abs(lr) + Math.abs(fb);
+		int round;
+		if (lr >= 0 && fb > 0) {
+			round = lr;
+		} else if (lr > 0) {
+			round = d - fb;
+		} else if (fb < 0) {
+			round = 2 * d - lr;
+		} else {
+			round = 3 * d + fb;
+		}
+		return ((long) d << 32) | round;
+	}
+
+	/** The position at a place in the order, as View.nearest returns it */
+	static long position(long key) {
+		int d = (int) (key >>> 32), round = (int) key;
+		int lr, fb;
+		if (round < d) {
+			lr = round;
+			fb = d - round;
+		} else if (round < 2 * d) {
+			lr = 2 * d - round;
+			fb = d - round;
+		} else if (round < 3 * d) {
+			lr = 2 * d - round;
+			fb = round - 3 * d;
+		} else {
+			lr = round - 4 * d;
+			fb = round - 3 * d;
+		}
+		return ((long) lr << 32) | (fb & 0xffffffffL);
+	}
+
+	private static boolean has(long[][][] tiles, int width, int height, int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return false;
+		}
+		long[] tile = tiles[y >>> TILE_BITS][x >>> TILE_BITS];
+		return tile != null && (tile[y & (TILE - 1)] & (1L << x)) != 0;
+	}
+
+	/** The cells of the set at one moment, which never change */
+	public static final class View {
+		private final long[][][] tiles;
+		private final int count, width, height;
+		// an array for gather to work in, while no thread has taken it (see take)
+		private long[] scratch;
+
+		private View(long[][][] tiles, int count, int width, int height) {
+			this.tiles = tiles;
+			this.count = count;
+			this.width = width;
+			this.height = height;
+		}
+
+		public int size() {
+			return count;
+		}
+
+		/** The width of the world, for the cells of next */
+		public int width() {
+			return width;
+		}
+
+		/**
+		 * Finds the nth closest cell (counting from 0) to a robot at (x, y)
+		 * facing along (dx, dy), one of (0, -1) north, (0, 1) south, (-1, 0)
+		 * west and (1, 0) east. Returns where it is relative to the robot, as
+		 * the Robot's sensors give it, packed into a long for lr and fb, or
+		 * NONE if there are no more than n cells.
+		 */
+		public long nearest(int n, int x, int y, int dx, int dy) {
+			if (n < 0) {
+				throw new IndexOutOfBoundsException("cell " + n);
+			}
+			if (n >= count) {
+				return NONE;
+			}
+			// the rings search about width * height / count cells for each one in the set, one at a time
+			if ((long) width * height / count <= RING_CELLS) {
+				return search(n, x, y, dx, dy);
+			}
+			return gather(n, x, y, dx, dy);
+		}
+
+		/** nearest, searching the rings round the robot */
+		private long search(int n, int x, int y, int dx, int dy) {
+			// right is forward turned clockwise, y being down the screen
+			int rx = -dy, ry = dx;
+			if (has(tiles, width, height, x, y) && n-- == 0) {
+				return 0;
+			}
+			int far = Math.max(x, width - 1 - x) + Math.max(y, height - 1 - y);
+			for (int d = 1; d <= far; d++) {
+				// the four sides of the ring, each going clockwise from one corner to the next
+				for (int side = 0; side < 4; side++) {
+					// the corner the side starts at, and the step along it
+					int lr0, fb0, dlr, dfb;
+					switch (side) {
+					case 0:
+						lr0 = 0;
+						fb0 = d;
+						dlr = 1;
+						dfb = -1;
+						break;
+					case 1:
+						lr0 = d;
+						fb0 = 0;
+						dlr = -1;
+						dfb = -1;
+						break;
+					case 2:
+						lr0 = 0;
+						fb0 = -d;
+						dlr = -1;
+						dfb = 1;
+						break;
+					default:
+						lr0 = -d;
+						fb0 = 0;
+						dlr = 1;
+						dfb = 1;
+					}
+					int ax = x + lr0 * rx + fb0 * dx, ay = y + lr0 * ry + fb0 * dy;
+					int sx = dlr * rx + dfb * dx, sy = dlr * ry + dfb * dy;
+					int from = Math.max(enter(ax, sx, width), enter(ay, sy, height));
+					int to = Math.min(Math.min(leave(ax, sx, width), leave(ay, sy, height)), d);
+					for (int i = from; i < to; i++) {
+						if (has(tiles, width, height, ax + i * sx, ay + i * sy) && n-- == 0) {
+							return ((long) (lr0 + i * dlr) << 32) | ((fb0 + i * dfb) & 0xffffffffL);
+						}
+					}
+				}
+			}
+			// unreachable, as count cells are all within far
+			return NONE;
+		}
+
+		/** The first step i at which a + i * s is at least 0, for a side going s each step */
+		private static int enter(int a, int s, int size) {
+			if (s > 0) {
+				return Math.max(0, -a);
+			} else if (s < 0) {
+				return Math.max(0, a - (size - 1));
+			}
+			return (a >= 0 && a < size) ? 0 : Integer.MAX_VALUE;
+		}
+
+		/** The first step i after enter at which a + i * s is outside 0 to size - 1 */
+		private static int leave(int a, int s, int size) {
+			if (s > 0) {
+				return size - a;
+			} else if (s < 0) {
+				return a + 1;
+			}
+			return Integer.MAX_VALUE;
+		}
+
+		/**
+		 * nearest, going through the tiles a ring at a time, each ring the
+		 * tiles round the last, and keeping the n + 1 closest cells in
+		 * them, until the tiles of the next ring are all further away than
+		 * the nth closest so far.
+		 */
+		private long gather(int n, int x, int y, int dx, int dy) {
+			long[] closest = take(n + 1);
+			try {
+				return position(closest(closest, n, x, y, dx, dy));
+			} finally {
+				give(closest);
+			}
+		}
+
+		/**
+		 * gather's search, keeping the closest cells, as their places in the
+		 * order, in a heap in closest with the furthest first. Returns the
+		 * place of the nth closest.
+		 */
+		private long closest(long[] closest, int n, int x, int y, int dx, int dy) {
+			int rx = -dy, ry = dx;
+			int across = tiles[0].length, down = tiles.length;
+			int tx = x >>> TILE_BITS, ty = y >>> TILE_BITS;
+			int found = 0;
+			int far = Math.max(Math.max(tx, across - 1 - tx), Math.max(ty, down - 1 - ty));
+			for (int k = 0; k <= far; k++) {
+				// every cell in ring k is at least (k - 1) * TILE + 1 from the robot
+				if (found > n && (closest[0] >>> 32) <= (k - 1L) * TILE) {
+					break;
+				}
+				for (int j = Math.max(0, ty - k); j <= Math.min(down - 1, ty + k); j++) {
+					// all of the top and bottom rows of the ring, and the two ends of the others
+					int step = (j == ty - k || j == ty + k) ? 1 : Math.max(1, 2 * k);
+					for (int i = tx - k; i <= tx + k; i += step) {
+						long[] tile = (i >= 0 && i < across) ? tiles[j][i] : null;
+						if (tile == null || found > n && gap(x, i) + gap(y, j) > (closest[0] >>> 32)) {
+							continue;
+						}
+						for (int word = 0; word < tile.length; word++) {
+							for (long bits = tile[word]; bits != 0; bits &= bits - 1) {
+								int cx = (i << TILE_BITS) + Long.numberOfTrailingZeros(bits) - x;
+								int cy = (j << TILE_BITS) + word - y;
+								long key = order(cx * rx + cy * ry, cx * dx + cy * dy);
+								if (found <= n) {
+									closest[found] = key;
+									siftUp(closest, found++);
+								} else if (key < closest[0]) {
+									closest[0] = key;
+									siftDown(closest, found);
+								}
+							}
+						}
+					}
+				}
+			}
+			return closest[0];
+		}
+
+		/**
+		 * An array of at least size longs for gather to work in, which it
+		 * gives back when it is done. Robots share a view, so another thread
+		 * may have it, and then this makes a new one.
+		 */
+		private synchronized long[] take(int size) {
+			long[] array = scratch;
+			if (array == null || array.length < size) {
+				return new long[size];
+			}
+			scratch = null;
+			return array;
+		}
+
+		/** Gives back an array from take, or keeps it if it is bigger than the one kept */
+		private synchronized void give(long[] array) {
+			if (scratch == null || scratch.length < array.length) {
+				scratch = array;
+			}
+		}
+
+		/** How far a is from the nearest of the cells of tile t along its side */
+		private static int gap(int a, int t) {
+			int first = t << TILE_BITS;
+			return (a < first) ? first - a : Math.max(0, a - (first + TILE - 1));
+		}
+
+		private static void siftUp(long[] heap, int i) {
+			while (i > 0 && heap[(i - 1) / 2] < heap[i]) {
+				swap(heap, i, (i - 1) / 2);
+				i = (i - 1) / 2;
+			}
+		}
+
+		private static void siftDown(long[] heap, int size) {
+			int i = 0;
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && heap[child + 1] > heap[child]) {
+					child++;
+				}
+				if (heap[i] >= heap[child]) {
+					return;
+				}
+				swap(heap, i, child);
+				i = child;
+			}
+		}
+
+		private static void swap(long[] heap, int i, int j) {
+			long t = heap[i];
+			heap[i] = heap[j];
+			heap[j] = t;
+		}
+
+		/**
+		 * The first cell in the set after the given one, where cell
+		 * y * width + x is (x, y), or the first of all for -1, or -1 if there
+		 * are no more. Goes through the cells a tile at a time, the tiles in
+		 * rows and the cells in each in rows, skipping empty words and tiles,
+		 * with no Points.
+		 */
+		public int next(int cell) {
+			int across = tiles.length > 0 ? tiles[0].length : 0, down = tiles.length;
+			int tx = 0, ty = 0, word = 0;
+			long mask = -1L;
+			if (cell >= 0) {
+				int x = cell % width, y = cell / width;
+				tx = x >>> TILE_BITS;
+				ty = y >>> TILE_BITS;
+				word = y & (TILE - 1);
+				mask = -2L << x;
+			}
+			for (; ty < down; ty++, tx = 0) {
+				for (; tx < across; tx++, word = 0, mask = -1L) {
+					long[] tile = tiles[ty][tx];
+					if (tile == null) {
+						continue;
+					}
+					for (; word < tile.length; word++, mask = -1L) {
+						long bits = tile[word] & mask;
+						if (bits != 0) {
+							return ((ty << TILE_BITS) + word) * width + (tx << TILE_BITS)
+									+ Long.numberOfTrailingZeros(bits);
+						}
+					}
+				}
+			}
+			return -1;
+		}
+	}
+}
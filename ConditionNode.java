@@ -0,0 +1,28 @@
+class ConditionNode implements CONDNode {
+	CONDNode n;
+	private final int depth;
+
+	public ConditionNode(CONDNode n) {
+		this.n = n;
+		this.depth = 1 + n.getDepth();
+	}
+
+	public boolean evaluate(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			return Interpreter.evaluateCond(this, robot);
+		}
+		return n.evaluate(robot);
+	}
+
+	public CONDNode getCondition() {
+		return n;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return n.toString();
+	}
+}
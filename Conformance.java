@@ -0,0 +1,271 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that every engine runs robot programs exactly as the tree does.
+ *
+ * Each program in the given directories (bench/corpus by default), and a set
+ * of generated programs, is run as the red robot of a headless world on every
+ * Engine, both as parsed and as optimized by Optimizer. The states recorded by
+ * Robot.readState are compared with those of the tree running the parsed
+ * program on a robot that takes every move(n) and wait(n) one step at a time,
+ * rather than as a batch, and the instructions charged (see Robot.charge)
+ * with those of the tree running the same program. The Stepper is checked
+ * in the same way. Most
+ * programs never finish, so a run is stopped after a fixed number of
+ * actions. Exits with status 1 if any run differs.
+ *
+ * Usage: java Conformance [-generated count] [dir...]
+ */
+public class Conformance {
+
+	// the actions a run may take before it is stopped
+	private static final int MAX_ACTIONS = 500;
+
+	public static void main(String[] args) {
+		int generated = 300;
+		List<File> dirs = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-generated") && i + 1 < args.length) {
+				generated = Integer.parseInt(args[++i]);
+			} else {
+				dirs.add(new File(args[i]));
+			}
+		}
+		if (dirs.isEmpty()) {
+			dirs.add(new File("bench/corpus"));
+		}
+
+		List<String> names = new ArrayList<String>();
+		List<RobotProgramNode> programs = new ArrayList<RobotProgramNode>();
+		for (File dir : dirs) {
+			File[] files = dir.listFiles();
+			if (files == null) {
+				System.out.println("Not a directory: " + dir);
+				System.exit(1);
+			}
+			Arrays.sort(files);
+			for (File file : files) {
+				if (file.getName().endsWith(".prog")) {
+					names.add(file.getPath());
+					programs.add(Parser.parseFile(file));
+				}
+			}
+		}
+		Random rand = new Random(13);
+		for (int i = 0; i < generated; i++) {
+			names.add("generated " + i);
+			String src = ProgramGenerator.generate(3 + rand.nextInt(15), rand);
+			programs.add(Parser.parseSource(java.nio.ByteBuffer.wrap(src.getBytes())));
+		}
+
+		PrintStream out = System.out;
+		// trace nothing, so the robots record no events, and hide what they still print
+		Trace.setSinks();
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		int failures = 0;
+		try {
+			for (int i = 0; i < programs.size(); i++) {
+				RobotProgramNode prog = programs.get(i);
+				if (prog == null) {
+					out.println(names.get(i) + ": does not parse");
+					failures++;
+					continue;
+				}
+				Run expected = run(prog, false);
+				RobotProgramNode optimized = Optimizer.optimize(prog);
+				RobotProgramNode[] ps = { prog, optimized };
+				long[] instructions = { expected.instructions, run(optimized, false).instructions };
+				for (Engine engine : Engine.values()) {
+					for (int j = 0; j < ps.length; j++) {
+						String mismatch = compare(expected, instructions[j], run(engine.prepare(ps[j]), true));
+						if (mismatch != null) {
+							out.println(names.get(i) + ": " + engine + ((j == 0) ? "" : " optimized") + mismatch);
+							failures++;
+						}
+					}
+				}
+				for (int j = 0; j < ps.length; j++) {
+					String mismatch = compare(expected, instructions[j], step(ps[j]));
+					if (mismatch != null) {
+						out.println(names.get(i) + ": stepper" + ((j == 0) ? "" : " optimized") + mismatch);
+						failures++;
+					}
+				}
+			}
+		} finally {
+			System.setOut(out);
+		}
+		out.println(programs.size() + " programs on " + Engine.values().length + " engines and the stepper: "
+				+ ((failures == 0) ? "all matched" : failures + " FAILED"));
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/** The states of a run, and the instructions it was charged for */
+	static class Run {
+		final List<String> states;
+		final long instructions;
+
+		Run(List<String> states, long instructions) {
+			this.states = states;
+			this.instructions = instructions;
+		}
+	}
+
+	/**
+	 * Runs the program as the red robot of a headless world, and returns the
+	 * robot's states, followed by the exception that ended the run if there
+	 * was one.
+	 */
+	static Run run(RobotProgramNode prog, boolean batched) {
+		World world = new World.RoboGamePrinter();
+		Robot robot = new LimitedRobot(world, batched);
+		world.robots[1] = robot;
+		robot.setProgram(prog);
+		List<String> states = robot.getHistory();
+		try {
+			robot.run();
+		} catch (RobotInterruptedException e) {
+			// stopped after MAX_ACTIONS
+		} catch (RuntimeException e) {
+			states = new ArrayList<String>(states);
+			states.add(e.getClass().getName());
+		}
+		return new Run(states, robot.getInstructions());
+	}
+
+	/**
+	 * Like run, but steps through the program with a Stepper, carrying out
+	 * each action as a world in lockstep would.
+	 */
+	static Run step(RobotProgramNode prog) {
+		World world = new World.RoboGamePrinter();
+		Robot robot = world.getRobot(1);
+		Stepper stepper = new Stepper(prog, robot);
+		List<String> states = robot.getHistory();
+		try {
+			while (states.size() < MAX_ACTIONS) {
+				int action = stepper.step();
+				if (action == Stepper.DONE) {
+					break;
+				}
+				if (robot.startAction(action)) {
+					robot.updatePending();
+					robot.readState();
+				}
+			}
+		} catch (RuntimeException e) {
+			states = new ArrayList<String>(states);
+			states.add(e.getClass().getName());
+		}
+		return new Run(states, robot.getInstructions());
+	}
+
+	/** How the run differs from the tree's states and instructions, or null if it doesn't */
+	private static String compare(Run expected, long instructions, Run actual) {
+		if (!actual.states.equals(expected.states)) {
+			return " differs from the tree " + difference(expected.states, actual.states);
+		}
+		if (actual.instructions != instructions) {
+			return " was charged for " + actual.instructions + " instructions, the tree for " + instructions;
+		}
+		return null;
+	}
+
+	private static String difference(List<String> expected, List<String> actual) {
+		int i = 0;
+		while (i < expected.size() && i < actual.size() && expected.get(i).equals(actual.get(i))) {
+			i++;
+		}
+		return "at state " + i + ": expected " + ((i < expected.size()) ? expected.get(i) : "the end") + ", got "
+				+ ((i < actual.size()) ? actual.get(i) : "the end");
+	}
+
+	/**
+	 * A robot that stops its program after MAX_ACTIONS actions, and that takes
+	 * move(n) and wait(n) as a batch or one step at a time.
+	 */
+	private static class LimitedRobot extends Robot {
+		private final boolean batched;
+
+		LimitedRobot(World world, boolean batched) {
+			super(world, 0, 0, "red", true);
+			this.batched = batched;
+		}
+
+		private void count() {
+			if (getHistory().size() >= MAX_ACTIONS) {
+				throw new RobotInterruptedException();
+			}
+		}
+
+		public void move() {
+			super.move();
+			count();
+		}
+
+		public void move(int steps) {
+			if (batched) {
+				// a batch never goes past MAX_ACTIONS
+				super.move(Math.min(steps, MAX_ACTIONS - getHistory().size()));
+				count();
+			} else {
+				for (int i = 0; i < steps; i++) {
+					move();
+				}
+			}
+		}
+
+		public void turnLeft() {
+			super.turnLeft();
+			count();
+		}
+
+		public void turnRight() {
+			super.turnRight();
+			count();
+		}
+
+		public void turnAround() {
+			super.turnAround();
+			count();
+		}
+
+		public void setShield(boolean on) {
+			super.setShield(on);
+			count();
+		}
+
+		public void takeFuel() {
+			super.takeFuel();
+			count();
+		}
+
+		public void idleWait() {
+			super.idleWait();
+			count();
+		}
+
+		public void idleWait(int times) {
+			if (batched) {
+				// a batch never goes past MAX_ACTIONS
+				super.idleWait(Math.min(times, MAX_ACTIONS - getHistory().size()));
+				count();
+			} else {
+				for (int i = 0; i < times; i++) {
+					idleWait();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * The ways a robot can run its program. Each robot has its own engine, so
+ * robots running the same program with different engines can be compared.
+ */
+public enum Engine {
+	/** Walks the tree of nodes the parser built */
+	TREE,
+	/** Runs the program compiled to int instructions by FlatProgram */
+	FLAT,
+	/** Runs the program compiled to JVM bytecode by ProgramCompiler */
+	COMPILED;
+
+	/**
+	 * Returns the program this engine runs for the given parsed program. A
+	 * program that can't be compiled is run as a tree.
+	 */
+	public RobotProgramNode prepare(RobotProgramNode prog) {
+		switch (this) {
+		case FLAT:
+			return FlatProgram.compile(prog);
+		case COMPILED:
+			return ProgramCompiler.compile(prog);
+		default:
+			return prog;
+		}
+	}
+
+	/**
+	 * The engine named by the robots.engine system property, such as
+	 * -Drobots.engine=flat, or TREE if it isn't set.
+	 */
+	public static Engine byDefault() {
+		String name = System.getProperty("robots.engine");
+		if (name == null) {
+			return TREE;
+		}
+		try {
+			return valueOf(name.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown robot engine '" + name + "', using the tree");
+			return TREE;
+		}
+	}
+}
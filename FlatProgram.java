@@ -0,0 +1,528 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A robot program compiled to a flat array of int instructions, and the
+ * loop that runs them.
+ *
+ * Each instruction is an opcode followed by its operands. Expressions are
+ * computed into an array of int registers: the program's variables are the
+ * first registers, in slot order, and the temporaries of expressions come
+ * after them. Conditions compile to compare-and-jump instructions, and if,
+ * while and loop statements to jumps, so running a program is one switch in
+ * one loop, with no calls except the ones to the robot.
+ *
+ * The register array is the robot's frame of variables for the run, so nodes
+ * that are called back (any the compiler doesn't know) see the same values.
+ */
+public class FlatProgram implements RobotProgramNode {
+
+	// opcodes. r is a register, n a number, t the index of an instruction
+	static final int HALT = 0;
+	static final int MOVE = 1, TURNL = 2, TURNR = 3, TURNAROUND = 4, SHIELDON = 5, SHIELDOFF = 6, TAKEFUEL = 7,
+			WAIT = 8;
+	// MOVE_N r, WAIT_N r
+	static final int MOVE_N = 9, WAIT_N = 10;
+	// CONST r n, COPY r r
+	static final int CONST = 11, COPY = 12;
+	// sensors, into r; the _N ones take the barrel number from a second r
+	static final int FUELLEFT = 13, OPPLR = 14, OPPFB = 15, NUMBARRELS = 16, WALLDIST = 17, BARRELLR = 18,
+			BARRELLR_N = 19, BARRELFB = 20, BARRELFB_N = 21;
+	// ADD r r r: the first register gets the others' sum
+	static final int ADD = 22, SUB = 23, MUL = 24, DIV = 25;
+	// JLT r r t: jumps to t if the first register is less than the second
+	static final int JLT = 26, JGE = 27, JGT = 28, JLE = 29, JEQ = 30, JNE = 31;
+	// JUMP t
+	static final int JUMP = 32;
+	// EXEC n: executes node n; EVAL r n: evaluates node n into r; JTRUE n t, JFALSE n t
+	static final int EXEC = 33, EVAL = 34, JTRUE = 35, JFALSE = 36;
+	// CHARGE n: charges the robot for n instructions, as the nodes do
+	static final int CHARGE = 37;
+
+	private final int[] code;
+	private final int registers;
+	// the nodes called back by EXEC, EVAL, JTRUE and JFALSE
+	private final Object[] nodes;
+	private final boolean newFrame;
+
+	private FlatProgram(int[] code, int registers, Object[] nodes, boolean newFrame) {
+		this.code = code;
+		this.registers = registers;
+		this.nodes = nodes;
+		this.newFrame = newFrame;
+	}
+
+	/**
+	 * Compiles the program, or returns it unchanged if it is too deeply nested
+	 * to compile.
+	 */
+	public static RobotProgramNode compile(RobotProgramNode prog) {
+		if (prog.getDepth() > Interpreter.MAX_DEPTH) {
+			// the compiler recurses through the tree
+			System.out.println("Robot program is too deeply nested to flatten, so it will be interpreted");
+			return prog;
+		}
+		Compiler c = new Compiler();
+		boolean newFrame = prog instanceof ProgNode;
+		if (newFrame) {
+			ProgNode p = (ProgNode) prog;
+			c.variables = p.getVariables().size();
+			for (int i = 0; i < p.getStatements().size(); i++) {
+				c.charge(p.getCost(i));
+				c.statement(p.getStatements().get(i));
+			}
+		} else {
+			c.variables = slots(prog);
+			c.statement(prog);
+		}
+		c.emit(HALT);
+		return new FlatProgram(Arrays.copyOf(c.code, c.length), Math.max(c.registers, c.variables), c.nodes.toArray(),
+				newFrame);
+	}
+
+	/** The number of variable slots a part of a program uses */
+	private static int slots(RobotProgramNode prog) {
+		int slots = 0;
+		List<Object> todo = new ArrayList<Object>();
+		todo.add(prog);
+		while (!todo.isEmpty()) {
+			Object node = todo.remove(todo.size() - 1);
+			if (node instanceof ASSGNNode) {
+				slots = Math.max(slots, ((ASSGNNode) node).getSlot() + 1);
+			} else if (node instanceof VarNode) {
+				slots = Math.max(slots, ((VarNode) node).getSlot() + 1);
+			} else if (node instanceof SenseNode) {
+				SenseNode n = (SenseNode) node;
+				for (int i = 0; i < n.getNames().size(); i++) {
+					slots = Math.max(slots, n.getSlot(i) + 1);
+				}
+			}
+			todo.addAll(Arrays.asList(Nodes.children(node)));
+		}
+		return slots;
+	}
+
+	public void execute(Robot robot) {
+		int[] r;
+		if (newFrame) {
+			// every run of the program has its own variables, as in ProgNode
+			r = new int[registers];
+			robot.setFrame(r);
+		} else {
+			r = robot.getFrame();
+			if (r.length < registers) {
+				r = Arrays.copyOf(r, registers);
+				robot.setFrame(r);
+			}
+		}
+		int[] code = this.code;
+		int pc = 0;
+		while (true) {
+			switch (code[pc]) {
+			case HALT:
+				return;
+			case MOVE:
+				robot.move();
+				pc += 1;
+				break;
+			case TURNL:
+				robot.turnLeft();
+				pc += 1;
+				break;
+			case TURNR:
+				robot.turnRight();
+				pc += 1;
+				break;
+			case TURNAROUND:
+				robot.turnAround();
+				pc += 1;
+				break;
+			case SHIELDON:
+				robot.setShield(true);
+				pc += 1;
+				break;
+			case SHIELDOFF:
+				robot.setShield(false);
+				pc += 1;
+				break;
+			case TAKEFUEL:
+				robot.takeFuel();
+				pc += 1;
+				break;
+			case WAIT:
+				robot.idleWait();
+				pc += 1;
+				break;
+			case MOVE_N:
+				robot.move(r[code[pc + 1]]);
+				pc += 2;
+				break;
+			case WAIT_N:
+				robot.idleWait(r[code[pc + 1]]);
+				pc += 2;
+				break;
+			case CONST:
+				r[code[pc + 1]] = code[pc + 2];
+				pc += 3;
+				break;
+			case COPY:
+				r[code[pc + 1]] = r[code[pc + 2]];
+				pc += 3;
+				break;
+			case FUELLEFT:
+				r[code[pc + 1]] = robot.sense().fuel();
+				pc += 2;
+				break;
+			case OPPLR:
+				r[code[pc + 1]] = robot.sense().oppLR();
+				pc += 2;
+				break;
+			case OPPFB:
+				r[code[pc + 1]] = robot.sense().oppFB();
+				pc += 2;
+				break;
+			case NUMBARRELS:
+				r[code[pc + 1]] = robot.sense().numBarrels();
+				pc += 2;
+				break;
+			case WALLDIST:
+				r[code[pc + 1]] = robot.sense().wallDist;
+				pc += 2;
+				break;
+			case BARRELLR:
+				r[code[pc + 1]] = robot.sense().barrelLR(0);
+				pc += 2;
+				break;
+			case BARRELLR_N:
+				r[code[pc + 1]] = robot.sense().barrelLR(r[code[pc + 2]]);
+				pc += 3;
+				break;
+			case BARRELFB:
+				r[code[pc + 1]] = robot.sense().barrelFB(0);
+				pc += 2;
+				break;
+			case BARRELFB_N:
+				r[code[pc + 1]] = robot.sense().barrelFB(r[code[pc + 2]]);
+				pc += 3;
+				break;
+			case ADD:
+				r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+				pc += 4;
+				break;
+			case SUB:
+				r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+				pc += 4;
+				break;
+			case MUL:
+				r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+				pc += 4;
+				break;
+			case DIV:
+				r[code[pc + 1]] = r[code[pc + 2]] / r[code[pc + 3]];
+				pc += 4;
+				break;
+			case JLT:
+				pc = (r[code[pc + 1]] < r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+				break;
+			case JGE:
+				pc = (r[code[pc + 1]] >= r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+				break;
+			case JGT:
+				pc = (r[code[pc + 1]] > r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+				break;
+			case JLE:
+				pc = (r[code[pc + 1]] <= r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+				break;
+			case JEQ:
+				pc = (r[code[pc + 1]] == r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+				break;
+			case JNE:
+				pc = (r[code[pc + 1]] != r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+				break;
+			case JUMP:
+				pc = code[pc + 1];
+				break;
+			case CHARGE:
+				robot.charge(code[pc + 1]);
+				pc += 2;
+				break;
+			case EXEC:
+				((RobotProgramNode) nodes[code[pc + 1]]).execute(robot);
+				pc += 2;
+				break;
+			case EVAL:
+				r[code[pc + 1]] = ((EXPNode) nodes[code[pc + 2]]).evaluate(robot);
+				pc += 3;
+				break;
+			case JTRUE:
+				pc = ((CONDNode) nodes[code[pc + 1]]).evaluate(robot) ? code[pc + 2] : pc + 3;
+				break;
+			case JFALSE:
+				pc = ((CONDNode) nodes[code[pc + 1]]).evaluate(robot) ? pc + 3 : code[pc + 2];
+				break;
+			default:
+				throw new IllegalStateException("Unknown opcode " + code[pc] + " at " + pc);
+			}
+		}
+	}
+
+	/** The number of ints of code */
+	public int size() {
+		return code.length;
+	}
+
+	public String toString() {
+		return "flat program of " + code.length + " ints and " + registers + " registers";
+	}
+
+	/** Turns nodes into instructions */
+	private static class Compiler {
+		int[] code = new int[64];
+		int length;
+		int variables;
+		// the most registers any instruction uses
+		int registers;
+		final List<Object> nodes = new ArrayList<Object>();
+
+		void emit(int op) {
+			if (length == code.length) {
+				code = Arrays.copyOf(code, length * 2);
+			}
+			code[length++] = op;
+		}
+
+		void emit(int op, int a) {
+			emit(op);
+			emit(a);
+		}
+
+		void emit(int op, int a, int b) {
+			emit(op, a);
+			emit(b);
+		}
+
+		void emit(int op, int a, int b, int c) {
+			emit(op, a, b);
+			emit(c);
+		}
+
+		/** A register for a temporary, counting up from the variables */
+		int temp(int n) {
+			int register = variables + n;
+			registers = Math.max(registers, register + 1);
+			return register;
+		}
+
+		int node(Object node) {
+			nodes.add(node);
+			return nodes.size() - 1;
+		}
+
+		/** Charges the robot for the instructions, as the nodes do */
+		void charge(int cost) {
+			if (cost > 0) {
+				emit(CHARGE, cost);
+			}
+		}
+
+		// =======================================================
+		// Statements
+		// =======================================================
+
+		void statement(RobotProgramNode node) {
+			if (node instanceof StmtNode) {
+				statement(((StmtNode) node).getNode());
+			} else if (node instanceof BlockNode) {
+				BlockNode n = (BlockNode) node;
+				for (int i = 0; i < n.getStatements().size(); i++) {
+					charge(n.getCost(i));
+					statement(n.getStatements().get(i));
+				}
+			} else if (node instanceof LoopNode) {
+				int top = length;
+				charge(LoopNode.ROUND_COST);
+				statement(((LoopNode) node).getBlock());
+				emit(JUMP, top);
+			} else if (node instanceof WhileNode) {
+				WhileNode n = (WhileNode) node;
+				int top = length;
+				List<Integer> exits = new ArrayList<Integer>();
+				charge(n.getCost());
+				condition(n.getCondition(), false, exits);
+				statement(n.getBlock());
+				emit(JUMP, top);
+				patch(exits);
+			} else if (node instanceof IfNode) {
+				// the same choice as IfNode.execute: only the first elif is tried
+				IfNode n = (IfNode) node;
+				List<Integer> otherwise = new ArrayList<Integer>();
+				condition(n.getCondition(), false, otherwise);
+				statement(n.getBlock());
+				if (n.getElifs().isEmpty() && n.getElseBlock() == null) {
+					patch(otherwise);
+					return;
+				}
+				emit(JUMP, -1);
+				int end = length - 1;
+				patch(otherwise);
+				if (!n.getElifs().isEmpty()) {
+					charge(n.getElifs().get(0).getCost());
+					statement(n.getElifs().get(0));
+				} else {
+					statement(n.getElseBlock());
+				}
+				code[end] = length;
+			} else if (node instanceof MoveNode) {
+				repeat(((MoveNode) node).getExpression(), MOVE, MOVE_N);
+			} else if (node instanceof WaitNode) {
+				repeat(((WaitNode) node).getExpression(), WAIT, WAIT_N);
+			} else if (node instanceof TurnLNode) {
+				emit(TURNL);
+			} else if (node instanceof TurnRNode) {
+				emit(TURNR);
+			} else if (node instanceof TurnAroundNode) {
+				emit(TURNAROUND);
+			} else if (node instanceof ShieldOnNode) {
+				emit(SHIELDON);
+			} else if (node instanceof ShieldOffNode) {
+				emit(SHIELDOFF);
+			} else if (node instanceof TakeFuelNode) {
+				emit(TAKEFUEL);
+			} else if (node instanceof ASSGNNode) {
+				ASSGNNode n = (ASSGNNode) node;
+				// into a temporary first, since the expression may read the variable
+				int value = expression(n.getExpression(), 0);
+				if (value != n.getSlot()) {
+					emit(COPY, n.getSlot(), value);
+				}
+			} else {
+				emit(EXEC, node(node));
+			}
+		}
+
+		private void repeat(EXPNode count, int once, int times) {
+			if (count == null) {
+				emit(once);
+			} else {
+				emit(times, expression(count, 0));
+			}
+		}
+
+		/** Points the jumps whose targets are still to come at the next instruction */
+		private void patch(List<Integer> jumps) {
+			for (int at : jumps) {
+				code[at] = length;
+			}
+		}
+
+		// =======================================================
+		// Conditions
+		// =======================================================
+
+		/**
+		 * Jumps if the condition's value is jumpWhen, and otherwise carries on.
+		 * The positions of the jump targets are added to the list, to be
+		 * patched when the target is known.
+		 */
+		void condition(CONDNode node, boolean jumpWhen, List<Integer> jumps) {
+			if (node instanceof ConditionNode) {
+				condition(((ConditionNode) node).getCondition(), jumpWhen, jumps);
+			} else if (node instanceof NotNode) {
+				condition(((NotNode) node).getCondition(), !jumpWhen, jumps);
+			} else if (node instanceof AndNode || node instanceof OrNode) {
+				boolean and = node instanceof AndNode;
+				CONDNode left = and ? ((AndNode) node).getLeft() : ((OrNode) node).getLeft();
+				CONDNode right = and ? ((AndNode) node).getRight() : ((OrNode) node).getRight();
+				int rightCost = and ? ((AndNode) node).getRightCost() : ((OrNode) node).getRightCost();
+				if (jumpWhen != and) {
+					// and jumping when false, or or jumping when true: either side decides
+					condition(left, jumpWhen, jumps);
+					charge(rightCost);
+					condition(right, jumpWhen, jumps);
+				} else {
+					List<Integer> skips = new ArrayList<Integer>();
+					condition(left, !jumpWhen, skips);
+					charge(rightCost);
+					condition(right, jumpWhen, jumps);
+					patch(skips);
+				}
+			} else if (node instanceof LessThanNode) {
+				compare(((LessThanNode) node).getLeft(), ((LessThanNode) node).getRight(), jumpWhen ? JLT : JGE, jumps);
+			} else if (node instanceof GreaterThanNode) {
+				compare(((GreaterThanNode) node).getLeft(), ((GreaterThanNode) node).getRight(), jumpWhen ? JGT : JLE,
+						jumps);
+			} else if (node instanceof EqualToNode) {
+				compare(((EqualToNode) node).getLeft(), ((EqualToNode) node).getRight(), jumpWhen ? JEQ : JNE, jumps);
+			} else {
+				emit(jumpWhen ? JTRUE : JFALSE, node(node), -1);
+				jumps.add(length - 1);
+			}
+		}
+
+		private void compare(EXPNode left, EXPNode right, int op, List<Integer> jumps) {
+			int a = expression(left, 0);
+			int b = expression(right, 1);
+			emit(op, a, b, -1);
+			jumps.add(length - 1);
+		}
+
+		// =======================================================
+		// Expressions
+		// =======================================================
+
+		/**
+		 * Computes the expression into temporary n, using the temporaries
+		 * above n for its operands, and returns the register holding the value.
+		 * A variable is read straight from its own register.
+		 */
+		int expression(EXPNode node, int n) {
+			if (node instanceof VarNode) {
+				return ((VarNode) node).getSlot();
+			}
+			int target = temp(n);
+			if (node instanceof NumNode) {
+				emit(CONST, target, ((NumNode) node).getValue());
+			} else if (node instanceof AddNode) {
+				binary(ADD, target, ((AddNode) node).getLeft(), ((AddNode) node).getRight(), n);
+			} else if (node instanceof SubNode) {
+				binary(SUB, target, ((SubNode) node).getLeft(), ((SubNode) node).getRight(), n);
+			} else if (node instanceof MulNode) {
+				binary(MUL, target, ((MulNode) node).getLeft(), ((MulNode) node).getRight(), n);
+			} else if (node instanceof DivNode) {
+				binary(DIV, target, ((DivNode) node).getLeft(), ((DivNode) node).getRight(), n);
+			} else if (node instanceof FuelLeftNode) {
+				emit(FUELLEFT, target);
+			} else if (node instanceof OppLRNode) {
+				emit(OPPLR, target);
+			} else if (node instanceof OppFBNode) {
+				emit(OPPFB, target);
+			} else if (node instanceof NumBarrelsNode) {
+				emit(NUMBARRELS, target);
+			} else if (node instanceof WallDistNode) {
+				emit(WALLDIST, target);
+			} else if (node instanceof BarrelLRNode) {
+				barrel(BARRELLR, BARRELLR_N, target, ((BarrelLRNode) node).getExpression(), n);
+			} else if (node instanceof BarrelFBNode) {
+				barrel(BARRELFB, BARRELFB_N, target, ((BarrelFBNode) node).getExpression(), n);
+			} else {
+				emit(EVAL, target, node(node));
+			}
+			return target;
+		}
+
+		private void binary(int op, int target, EXPNode left, EXPNode right, int n) {
+			int a = expression(left, n);
+			int b = expression(right, n + 1);
+			emit(op, target, a, b);
+		}
+
+		private void barrel(int closest, int numbered, int target, EXPNode argument, int n) {
+			if (argument == null) {
+				emit(closest, target);
+			} else {
+				emit(numbered, target, expression(argument, n));
+			}
+		}
+	}
+}
@@ -0,0 +1,18 @@
+// "fuelLeft" NODE
+class FuelLeftNode implements SENNode, EXPNode {
+	public int execute(Robot robot) {
+		return robot.sense().fuel();
+	}
+
+	public int evaluate(Robot robot) {
+		return execute(robot);
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.fuel();
+	}
+
+	public String toString() {
+		return "Fuel remaining";
+	}
+}
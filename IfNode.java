@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//if
+class IfNode implements RobotProgramNode {
+
+	private CONDNode condition;
+	private int depth;
+	private BlockNode block;
+	private ArrayList<IfNode> elifList;
+	private BlockNode elseBlock;
+	private int cost = -1;
+
+	public IfNode(CONDNode condNode) {
+		this.condition = condNode;
+		this.depth = 1 + condNode.getDepth();
+	}
+
+	public void setBlock(BlockNode block) {
+		this.block = block;
+		depth = Math.max(depth, 1 + block.getDepth());
+	}
+
+	public void setElseBlock(BlockNode elseBlock) {
+		this.elseBlock = elseBlock;
+		depth = Math.max(depth, 1 + elseBlock.getDepth());
+	}
+
+	public void addElif(IfNode node) {
+		if (elifList == null) {
+			this.elifList = new ArrayList<IfNode>();
+		}
+
+		this.elifList.add(node);
+		depth = Math.max(depth, 1 + node.getDepth());
+	}
+
+	public void execute(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			Interpreter.execute(this, robot);
+			return;
+		}
+		if (condition.evaluate(robot)) {
+			block.execute(robot);
+		} else {
+			if (this.elifList != null) {
+				for (IfNode n : this.elifList) {
+					robot.charge(n.getCost());
+					n.execute(robot);
+					return;
+				}
+			}
+			if (elseBlock != null) {
+				elseBlock.execute(robot);
+			}
+		}
+	}
+
+	public CONDNode getCondition() {
+		return condition;
+	}
+
+	public BlockNode getBlock() {
+		return block;
+	}
+
+	/** The elifs tried when the condition is false, never null */
+	public List<IfNode> getElifs() {
+		return (elifList == null) ? Collections.<IfNode>emptyList() : elifList;
+	}
+
+	/** The else block, or null if there isn't one */
+	public BlockNode getElseBlock() {
+		return elseBlock;
+	}
+
+	/** The instructions trying this as an elif costs (see Robot.charge) */
+	public int getCost() {
+		if (cost < 0) {
+			cost = Interpreter.cost(this);
+		}
+		return cost;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		String str = "";
+
+		str += "if (" + condition.toString() + ")" + this.block.toString() + "}";
+
+		if (elifList != null) {
+			for (IfNode n : this.elifList) {
+				str += "elif" + n.toString();
+			}
+		}
+
+		if (elseBlock != null) {
+			str += "else " + this.elseBlock.toString() + "}";
+		}
+
+		return str;
+	}
+}
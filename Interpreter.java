@@ -0,0 +1,305 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates and executes nodes that are nested too deeply to be run by
+ * recursion. Nodes run themselves recursively while their depth (see
+ * RobotProgramNode.getDepth) is at most MAX_DEPTH, and hand themselves to the
+ * Interpreter when it is greater, which keeps the deep part of the tree on
+ * explicit stacks. Subtrees that are no deeper than MAX_DEPTH are still run
+ * by the nodes themselves, so the thread stack used is bounded whatever the
+ * depth of the program.
+ */
+class Interpreter {
+
+	/** The deepest tree that nodes evaluate or execute by recursion */
+	static final int MAX_DEPTH = 200;
+
+	// =======================================================
+	// Expressions
+	// =======================================================
+
+	/**
+	 * Evaluates an expression, working down through the add, sub, mul, div
+	 * and barrel nodes with an explicit stack. Operands are evaluated left to
+	 * right, as the nodes do.
+	 */
+	static int evaluateExp(EXPNode root, Robot robot) {
+		EXPNode[] nodes = new EXPNode[16];
+		int[] visited = new int[16];
+		int[] values = new int[16];
+		int top = 0, count = 0;
+		nodes[0] = root;
+		while (top >= 0) {
+			EXPNode node = nodes[top];
+			EXPNode child = operand(node, visited[top]);
+			if (child != null) {
+				visited[top]++;
+				if (child.getDepth() <= MAX_DEPTH || !hasOperands(child)) {
+					if (count == values.length) {
+						values = Arrays.copyOf(values, count * 2);
+					}
+					values[count++] = child.evaluate(robot);
+				} else {
+					if (++top == nodes.length) {
+						nodes = Arrays.copyOf(nodes, top * 2);
+						visited = Arrays.copyOf(visited, top * 2);
+					}
+					nodes[top] = child;
+					visited[top] = 0;
+				}
+				continue;
+			}
+			// all the operands have been evaluated, so replace them with the result
+			if (node instanceof BarrelLRNode) {
+				values[count - 1] = robot.sense().barrelLR(values[count - 1]);
+			} else if (node instanceof BarrelFBNode) {
+				values[count - 1] = robot.sense().barrelFB(values[count - 1]);
+			} else {
+				int right = values[--count];
+				int left = values[count - 1];
+				if (node instanceof AddNode) {
+					values[count - 1] = left + right;
+				} else if (node instanceof SubNode) {
+					values[count - 1] = left - right;
+				} else if (node instanceof MulNode) {
+					values[count - 1] = left * right;
+				} else {
+					values[count - 1] = left / right;
+				}
+			}
+			nodes[top--] = null;
+		}
+		return values[0];
+	}
+
+	private static boolean hasOperands(EXPNode node) {
+		return node instanceof AddNode || node instanceof SubNode || node instanceof MulNode
+				|| node instanceof DivNode || node instanceof BarrelLRNode || node instanceof BarrelFBNode;
+	}
+
+	/** Operand i of an expression node, or null if it has no more */
+	private static EXPNode operand(EXPNode node, int i) {
+		if (node instanceof AddNode) {
+			return (i == 0) ? ((AddNode) node).getLeft() : (i == 1) ? ((AddNode) node).getRight() : null;
+		} else if (node instanceof SubNode) {
+			return (i == 0) ? ((SubNode) node).getLeft() : (i == 1) ? ((SubNode) node).getRight() : null;
+		} else if (node instanceof MulNode) {
+			return (i == 0) ? ((MulNode) node).getLeft() : (i == 1) ? ((MulNode) node).getRight() : null;
+		} else if (node instanceof DivNode) {
+			return (i == 0) ? ((DivNode) node).getLeft() : (i == 1) ? ((DivNode) node).getRight() : null;
+		} else if (node instanceof BarrelLRNode) {
+			return (i == 0) ? ((BarrelLRNode) node).getExpression() : null;
+		} else if (node instanceof BarrelFBNode) {
+			return (i == 0) ? ((BarrelFBNode) node).getExpression() : null;
+		}
+		return null;
+	}
+
+	// =======================================================
+	// Conditions
+	// =======================================================
+
+	/**
+	 * Evaluates a condition, working down through the and, or, not and
+	 * wrapping condition nodes with an explicit stack. and and or only
+	 * evaluate their second condition when they need to, as the nodes do.
+	 */
+	static boolean evaluateCond(CONDNode root, Robot robot) {
+		CONDNode[] nodes = new CONDNode[16];
+		int[] visited = new int[16];
+		int top = 0;
+		nodes[0] = root;
+		// the value of the condition that finished last
+		boolean value = false;
+		while (top >= 0) {
+			CONDNode node = nodes[top];
+			CONDNode child = null;
+			int i = visited[top]++;
+			if (node instanceof AndNode) {
+				if (i == 0) {
+					child = ((AndNode) node).getLeft();
+				} else if (i == 1 && value) {
+					child = ((AndNode) node).getRight();
+					robot.charge(((AndNode) node).getRightCost());
+				}
+			} else if (node instanceof OrNode) {
+				if (i == 0) {
+					child = ((OrNode) node).getLeft();
+				} else if (i == 1 && !value) {
+					child = ((OrNode) node).getRight();
+					robot.charge(((OrNode) node).getRightCost());
+				}
+			} else if (node instanceof NotNode) {
+				if (i == 0) {
+					child = ((NotNode) node).getCondition();
+				} else {
+					value = !value;
+				}
+			} else if (i == 0) {
+				child = ((ConditionNode) node).getCondition();
+			}
+			if (child == null) {
+				// finished, and value is the value of the node
+				nodes[top--] = null;
+			} else if (child.getDepth() <= MAX_DEPTH || !hasConditions(child)) {
+				value = child.evaluate(robot);
+			} else {
+				if (++top == nodes.length) {
+					nodes = Arrays.copyOf(nodes, top * 2);
+					visited = Arrays.copyOf(visited, top * 2);
+				}
+				nodes[top] = child;
+				visited[top] = 0;
+			}
+		}
+		return value;
+	}
+
+	private static boolean hasConditions(CONDNode node) {
+		return node instanceof AndNode || node instanceof OrNode || node instanceof NotNode
+				|| node instanceof ConditionNode;
+	}
+
+	// =======================================================
+	// Statements
+	// =======================================================
+
+	/**
+	 * Executes a statement, keeping the blocks, loops and whiles it is inside
+	 * on an explicit stack.
+	 */
+	static void execute(RobotProgramNode node, Robot robot) {
+		Frames frames = new Frames();
+		start(node, frames, robot);
+		run(frames, robot);
+	}
+
+	/** Executes the statements of a program */
+	static void execute(ProgNode prog, Robot robot) {
+		Frames frames = new Frames();
+		frames.push(prog);
+		run(frames, robot);
+	}
+
+	/**
+	 * A stack of the programs, blocks, loops and whiles being executed. For a
+	 * program or block, index is the next statement to execute.
+	 */
+	private static class Frames {
+		final ArrayList<Object> owners = new ArrayList<Object>();
+		int[] index = new int[16];
+
+		void push(Object owner) {
+			int top = owners.size();
+			if (top == index.length) {
+				index = Arrays.copyOf(index, top * 2);
+			}
+			owners.add(owner);
+			index[top] = 0;
+		}
+	}
+
+	private static void run(Frames frames, Robot robot) {
+		while (!frames.owners.isEmpty()) {
+			int top = frames.owners.size() - 1;
+			Object owner = frames.owners.get(top);
+			if (owner instanceof BlockNode || owner instanceof ProgNode) {
+				boolean block = owner instanceof BlockNode;
+				List<RobotProgramNode> statements = block ? ((BlockNode) owner).getStatements()
+						: ((ProgNode) owner).getStatements();
+				int i = frames.index[top]++;
+				if (i < statements.size()) {
+					robot.charge(block ? ((BlockNode) owner).getCost(i) : ((ProgNode) owner).getCost(i));
+					start(statements.get(i), frames, robot);
+				} else {
+					frames.owners.remove(top);
+				}
+			} else if (owner instanceof LoopNode) {
+				robot.charge(LoopNode.ROUND_COST);
+				start(((LoopNode) owner).getBlock(), frames, robot);
+			} else {
+				WhileNode node = (WhileNode) owner;
+				robot.charge(node.getCost());
+				if (node.getCondition().evaluate(robot)) {
+					start(node.getBlock(), frames, robot);
+				} else {
+					frames.owners.remove(top);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts executing a statement. Shallow statements and actions are run
+	 * straight away; deep blocks, loops and whiles are pushed as frames, and
+	 * deep ifs are replaced by the branch they take.
+	 */
+	private static void start(RobotProgramNode node, Frames frames, Robot robot) {
+		while (node != null) {
+			if (node.getDepth() <= MAX_DEPTH) {
+				node.execute(robot);
+				return;
+			}
+			if (node instanceof StmtNode) {
+				node = ((StmtNode) node).getNode();
+			} else if (node instanceof BlockNode) {
+				frames.push(node);
+				return;
+			} else if (node instanceof LoopNode || node instanceof WhileNode) {
+				frames.push(node);
+				return;
+			} else if (node instanceof IfNode) {
+				// the same choice as IfNode.execute: only the first elif is tried
+				IfNode n = (IfNode) node;
+				if (n.getCondition().evaluate(robot)) {
+					node = n.getBlock();
+				} else if (!n.getElifs().isEmpty()) {
+					node = n.getElifs().get(0);
+					robot.charge(((IfNode) node).getCost());
+				} else {
+					node = n.getElseBlock();
+				}
+			} else {
+				node.execute(robot);
+				return;
+			}
+		}
+	}
+
+	// =======================================================
+	// Instructions
+	// =======================================================
+
+	/**
+	 * The instructions a statement, condition or expression costs each time
+	 * it is evaluated (see Robot.charge): the nodes evaluated whenever it is.
+	 * The parts that are only evaluated some of the time are left out, and
+	 * charge for themselves when they are: the statements of blocks, each as
+	 * it is executed; the branches of an if; a loop and a while, each time
+	 * round; and the second condition of an and or an or.
+	 */
+	static int cost(Object node) {
+		long cost = 0;
+		List<Object> todo = new ArrayList<Object>();
+		todo.add(node);
+		while (!todo.isEmpty()) {
+			Object n = todo.remove(todo.size() - 1);
+			if (n instanceof BlockNode || n instanceof LoopNode || n instanceof WhileNode) {
+				continue;
+			}
+			cost++;
+			if (n instanceof IfNode) {
+				todo.add(((IfNode) n).getCondition());
+			} else if (n instanceof AndNode) {
+				todo.add(((AndNode) n).getLeft());
+			} else if (n instanceof OrNode) {
+				todo.add(((OrNode) n).getLeft());
+			} else {
+				todo.addAll(Arrays.asList(Nodes.children(n)));
+			}
+		}
+		return (int) Math.min(cost, Integer.MAX_VALUE);
+	}
+}
@@ -0,0 +1,36 @@
+// LESS THAN NODE
+class LessThanNode implements CONDNode {
+
+	private EXPNode e1;
+	private EXPNode e2;
+	private final int depth;
+
+	public LessThanNode(EXPNode e1, EXPNode e2) {
+		this.e1 = e1;
+		this.e2 = e2;
+		this.depth = 1 + Math.max(e1.getDepth(), e2.getDepth());
+	}
+
+	public boolean evaluate(Robot robot) {
+		if (e1.evaluate(robot) < e2.evaluate(robot)) {
+			return true;
+		}
+		return false;
+	}
+
+	public EXPNode getLeft() {
+		return e1;
+	}
+
+	public EXPNode getRight() {
+		return e2;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return "(" + e1.toString() + " < " + e2.toString() + ")";
+	}
+}
@@ -0,0 +1,363 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A hand-written lexer for robot programs. Tokens are lexed straight from the
+ * source as the parser asks for them, and only a small window of tokens is
+ * kept, so the memory used while parsing does not grow with the size of the
+ * source. The source is either a char array or a ByteBuffer, which may be a
+ * memory-mapped file.
+ *
+ * The tokens are the same as the ones the old Scanner produced: tokens are
+ * separated by white space, and each of (){},; is always a token on its own.
+ * Only the kind and position of each token is stored; its text, value, line
+ * and column are worked out from the source when they are asked for.
+ */
+class Lexer {
+
+	// the source, exactly one of these is set. Bytes are read as ASCII, which
+	// is all the language uses; other bytes only end up inside invalid tokens.
+	private final char[] chars;
+	private final ByteBuffer bytes;
+	private final int length;
+
+	// the offset in the source of the next character to lex
+	private int offset;
+
+	// ring buffer of tokens that have been lexed but not consumed. Tokens are
+	// numbered from the start of the source; token t is kept in slot t & MASK.
+	// It only has to hold the next token and the five fail() shows after it.
+	private static final int WINDOW = 8, MASK = WINDOW - 1;
+	private final byte[] kinds = new byte[WINDOW];
+	private final int[] starts = new int[WINDOW];
+	private final int[] ends = new int[WINDOW];
+
+	// the number of the next token to be consumed, and of the tokens lexed
+	private int pos;
+	private int count;
+	private boolean done;
+
+	private static final TokenKind[] KINDS = TokenKind.values();
+
+	public Lexer(char[] src) {
+		this(src, src.length);
+	}
+
+	/** Lexes the first length characters of src */
+	public Lexer(char[] src, int length) {
+		this.chars = src;
+		this.bytes = null;
+		this.length = length;
+	}
+
+	/** Lexes the bytes from 0 to the limit of src, e.g. a mapped file */
+	public Lexer(ByteBuffer src) {
+		this.chars = null;
+		this.bytes = src;
+		this.length = src.limit();
+	}
+
+	private char at(int i) {
+		return (chars != null) ? chars[i] : (char) (bytes.get(i) & 0xFF);
+	}
+
+	/**
+	 * Lexes until token pos + i is in the window, or the source runs out.
+	 */
+	private void fill(int i) {
+		while (count <= pos + i && !done) {
+			lexToken();
+		}
+	}
+
+	/**
+	 * Lexes the next token into the window, or sets done if there are none left.
+	 */
+	private void lexToken() {
+		int i = offset;
+		while (i < length && charType(at(i)) == SPACE) {
+			i++;
+		}
+		if (i == length) {
+			offset = i;
+			done = true;
+			return;
+		}
+		int start = i;
+		char c = at(i);
+		TokenKind kind;
+		if (charType(c) == PUNCTUATION) {
+			kind = punctuation(c);
+			i++;
+		} else {
+			while (i < length && charType(at(i)) == OTHER) {
+				i++;
+			}
+			kind = classify(start, i);
+			if (kind == TokenKind.NUMBER) {
+				checkRange(start, i);
+			}
+		}
+		offset = i;
+		int slot = count & MASK;
+		kinds[slot] = (byte) kind.ordinal();
+		starts[slot] = start;
+		ends[slot] = i;
+		count++;
+	}
+
+	// character types, looked up in a table so the inner loop has one branch
+	private static final byte OTHER = 0, SPACE = 1, PUNCTUATION = 2;
+	private static final byte[] CHAR_TYPES = new byte[128];
+
+	static {
+		// the same characters as the \s class the Scanner delimiter used
+		for (char c : " \t\n\r\f\u000B".toCharArray()) {
+			CHAR_TYPES[c] = SPACE;
+		}
+		for (char c : "(){},;".toCharArray()) {
+			CHAR_TYPES[c] = PUNCTUATION;
+		}
+	}
+
+	private static int charType(char c) {
+		return (c < 128) ? CHAR_TYPES[c] : OTHER;
+	}
+
+	private static TokenKind punctuation(char c) {
+		switch (c) {
+		case '(':
+			return TokenKind.OPENPAREN;
+		case ')':
+			return TokenKind.CLOSEPAREN;
+		case '{':
+			return TokenKind.OPENBRACE;
+		case '}':
+			return TokenKind.CLOSEBRACE;
+		case ',':
+			return TokenKind.COMMA;
+		case ';':
+			return TokenKind.SEMICOLON;
+		}
+		return null;
+	}
+
+	/**
+	 * Works out the kind of a token that is not punctuation. Numbers are
+	 * -?[1-9][0-9]*|0, variables are \$[A-Za-z][A-Za-z0-9]* and keywords get
+	 * their own kind.
+	 */
+	private TokenKind classify(int start, int end) {
+		char c = at(start);
+		if (c == '=' && end - start == 1) {
+			return TokenKind.EQUALS;
+		}
+		if (c == '$') {
+			if (end - start < 2 || !isLetter(at(start + 1))) {
+				return TokenKind.WORD;
+			}
+			for (int i = start + 2; i < end; i++) {
+				if (!isLetter(at(i)) && !isDigit(at(i))) {
+					return TokenKind.WORD;
+				}
+			}
+			return TokenKind.VARIABLE;
+		}
+		int i = (c == '-') ? start + 1 : start;
+		if (i == end || !isDigit(at(i))) {
+			return keyword(start, end);
+		}
+		if (at(i) == '0') {
+			return (i == start && end - start == 1) ? TokenKind.NUMBER : TokenKind.WORD;
+		}
+		for (i++; i < end; i++) {
+			if (!isDigit(at(i))) {
+				return TokenKind.WORD;
+			}
+		}
+		return TokenKind.NUMBER;
+	}
+
+	/**
+	 * Returns the keyword spelled by the source from start to end, or WORD if
+	 * it is not a keyword. Does not allocate.
+	 */
+	private TokenKind keyword(int start, int end) {
+		TokenKind[] candidates = TokenKind.keywordsStartingWith(at(start));
+		if (candidates == null) {
+			return TokenKind.WORD;
+		}
+		for (TokenKind kind : candidates) {
+			String text = kind.text;
+			if (text.length() == end - start && matches(text, start)) {
+				return kind;
+			}
+		}
+		return TokenKind.WORD;
+	}
+
+	private boolean matches(String text, int start) {
+		for (int i = 1; i < text.length(); i++) {
+			if (at(start + i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkRange(int start, int end) {
+		long value = 0;
+		for (int i = (at(start) == '-') ? start + 1 : start; i < end; i++) {
+			value = value * 10 + (at(i) - '0');
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				break;
+			}
+		}
+		if (value > ((at(start) == '-') ? (long) Integer.MAX_VALUE + 1 : Integer.MAX_VALUE)) {
+			throw new ParserFailureException("Number out of range\n   @ line " + lineOf(start) + ", column "
+					+ columnOf(start) + ": " + text(start, end));
+		}
+	}
+
+	private int parseInt(int start, int end) {
+		boolean negative = at(start) == '-';
+		int value = 0;
+		for (int i = negative ? start + 1 : start; i < end; i++) {
+			value = value * 10 - (at(i) - '0');
+		}
+		return negative ? value : -value;
+	}
+
+	private int lineOf(int offset) {
+		int line = 1;
+		for (int i = 0; i < offset; i++) {
+			if (at(i) == '\n') {
+				line++;
+			}
+		}
+		return line;
+	}
+
+	private int columnOf(int offset) {
+		int i = offset;
+		while (i > 0 && at(i - 1) != '\n') {
+			i--;
+		}
+		return offset - i + 1;
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private String text(int start, int end) {
+		if (chars != null) {
+			return new String(chars, start, end - start);
+		}
+		byte[] text = new byte[end - start];
+		bytes.get(start, text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	// =======================================================
+	// The cursor used by the parser
+	// =======================================================
+
+	/** Is there another token? */
+	public boolean hasNext() {
+		if (pos == count) {
+			fill(0);
+		}
+		return pos < count;
+	}
+
+	/** Is the next token of the given kind? */
+	public boolean hasNext(TokenKind kind) {
+		return hasNext() && kinds[pos & MASK] == kind.ordinal();
+	}
+
+	/** Is the text of the next token exactly the given string? */
+	public boolean hasNext(String text) {
+		if (!hasNext()) {
+			return false;
+		}
+		int start = starts[pos & MASK];
+		int length = ends[pos & MASK] - start;
+		if (length != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (at(start + i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** The kind of the next token, or EOF at the end of the source */
+	public TokenKind peek() {
+		return hasNext() ? KINDS[kinds[pos & MASK]] : TokenKind.EOF;
+	}
+
+	/** Consumes the next token and returns its text */
+	public String next() {
+		hasNext();
+		String text = text(starts[pos & MASK], ends[pos & MASK]);
+		pos++;
+		return text;
+	}
+
+	/** Consumes the next token, which must be a NUMBER, and returns its value */
+	public int nextInt() {
+		hasNext();
+		int value = parseInt(starts[pos & MASK], ends[pos & MASK]);
+		pos++;
+		return value;
+	}
+
+	/** Consumes the next token without building its text */
+	public void skip() {
+		hasNext();
+		pos++;
+	}
+
+	/** The text of the token i places after the next one, or null */
+	public String lookahead(int i) {
+		fill(i);
+		int p = pos + i;
+		return (p < count) ? text(starts[p & MASK], ends[p & MASK]) : null;
+	}
+
+	/** Line of the next token, or of the last token at the end of the source */
+	public int line() {
+		return lineOf(currentStart());
+	}
+
+	/** Column of the next token, or of the last token at the end of the source */
+	public int column() {
+		return columnOf(currentStart());
+	}
+
+	private int currentStart() {
+		if (hasNext()) {
+			return starts[pos & MASK];
+		}
+		return (count == 0) ? 0 : starts[(count - 1) & MASK];
+	}
+
+	/**
+	 * The total number of tokens in the source. Lexes any tokens that have not
+	 * been lexed yet, so it should only be called once parsing is over.
+	 */
+	public int tokenCount() {
+		while (!done) {
+			pos = count;
+			lexToken();
+		}
+		return count;
+	}
+}
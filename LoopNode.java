@@ -0,0 +1,38 @@
+//LOOP
+class LoopNode implements RobotProgramNode {
+
+	private RobotProgramNode n;
+	private final int depth;
+
+	/** The instructions each time round a loop costs (see Robot.charge) */
+	static final int ROUND_COST = 1;
+
+	public LoopNode(RobotProgramNode blockNode) {
+		this.n = blockNode;
+		this.depth = 1 + blockNode.getDepth();
+	}
+
+	public void execute(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			Interpreter.execute(this, robot);
+			return;
+		}
+		while (true) {
+			robot.charge(ROUND_COST);
+			this.n.execute(robot);
+		}
+	}
+
+	public RobotProgramNode getBlock() {
+		return n;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		System.out.println("called");
+		return "loop " + n.toString() + "end loop";
+	}
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The threads that run the robots of one match, which belong to the match
+ * and never outlive it.
+ *
+ * Each robot runs on a daemon thread of its own, forked by the match.
+ * Closing the match cancels every robot still running, wakes any that are
+ * waiting for the world and joins all of their threads, so a reset leaves
+ * nothing behind.
+ */
+public class Match implements AutoCloseable {
+
+	// how long close waits for robots to see they have been cancelled, at their next action or loop
+	private static final long JOIN_MILLIS = 1000;
+
+	// numbers the robots' threads, across every match
+	private static int threadCount;
+
+	private final List<Robot> robots = new ArrayList<Robot>();
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private boolean closed;
+
+	/**
+	 * Starts running the robot on a new thread of this match. When its program
+	 * ends, or it is cancelled, the robot is set finished.
+	 */
+	public synchronized void fork(final Robot robot) {
+		if (closed) {
+			throw new IllegalStateException("The match is over");
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					robot.run();
+				} catch (RobotInterruptedException e) {
+					report(e);
+				}
+				robot.setFinished(true);
+			}
+		}, threadName());
+		// a robot that cannot be stopped should not keep the JVM running
+		thread.setDaemon(true);
+		robots.add(robot);
+		threads.add(thread);
+		thread.start();
+	}
+
+	/** Waits until every robot of the match has finished its program */
+	public void join() throws InterruptedException {
+		for (Thread thread : threads()) {
+			thread.join();
+		}
+	}
+
+	/** Has every robot of the match finished its program? */
+	public boolean isDone() {
+		for (Thread thread : threads()) {
+			if (thread.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Ends the match: cancels the robots that are still running and waits for
+	 * every thread to end. Returns the number of threads still running, whose
+	 * robots have not reached an action or a statement (see Robot.charge) in time
+	 * to see that they have been cancelled.
+	 */
+	public int stop() {
+		List<Robot> robots;
+		List<Thread> threads;
+		synchronized (this) {
+			closed = true;
+			robots = new ArrayList<Robot>(this.robots);
+			threads = new ArrayList<Thread>(this.threads);
+		}
+		for (int i = 0; i < threads.size(); i++) {
+			if (threads.get(i).isAlive()) {
+				robots.get(i).cancel();
+				threads.get(i).interrupt();
+			}
+		}
+		boolean interrupted = false;
+		int running = 0;
+		long end = System.currentTimeMillis() + JOIN_MILLIS;
+		for (Thread thread : threads) {
+			while (thread.isAlive() && System.currentTimeMillis() < end) {
+				try {
+					thread.join(Math.max(1, end - System.currentTimeMillis()));
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (thread.isAlive()) {
+				running++;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return running;
+	}
+
+	/** Stops the match, reporting robots that could not be stopped */
+	public void close() {
+		int running = stop();
+		if (running > 0) {
+			System.err.println(running + " robot(s) did not stop when their match ended");
+		}
+	}
+
+	private synchronized List<Thread> threads() {
+		return new ArrayList<Thread>(threads);
+	}
+
+	/**
+	 * Reports why a robot was stopped, on one line, if it was stopped for a
+	 * reason rather than cancelled with the match (see Robot.charge).
+	 */
+	static void report(RobotInterruptedException e) {
+		if (e.getMessage() != null) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	private static synchronized String threadName() {
+		return "robot-" + threadCount++;
+	}
+}
@@ -0,0 +1,219 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Runs many matches at once in one JVM, to show how far Match scales.
+ *
+ * Starts the given number of matches, each a World with two robots running
+ * the default program on threads of their own that wait for the world as
+ * they do in the GUI, ticks every world the given number of times, then
+ * resets them all. Reports how long that took, how many actions the robots
+ * took, and whether any robot's thread outlived its match. Also reports the
+ * CPU the JVM uses while every robot waits for a tick that does not come, and
+ * how long robots take to carry on once their tick comes (see
+ * Robot.getWakeLatency).
+ *
+ * Every robot has a daemon platform thread of its own, so how many matches
+ * one JVM can run at once depends on how many threads it can make; if it
+ * runs out, the robots started so far are reset and the run fails.
+ *
+ * With -lockstep, every match is instead stepped on the main thread (see
+ * World.tick), with no robot threads at all. The worlds all have the same
+ * seed, so every match must play out exactly the same way.
+ *
+ * With -robots, it instead times the ticks of a single 1000x1000 world in
+ * lockstep with 2, 100 and 10,000 robots, all running a program that only
+ * moves, then all running one that chases the nearest robot and tries to take
+ * its fuel. A tick should cost about the same per robot however many robots
+ * there are, as each move and each nearest robot is found without looking at
+ * every robot (see World.claim and Sensors.Robots).
+ *
+ * Usage: java MatchScaling [-lockstep] [matches [ticks]] | -robots
+ */
+public class MatchScaling {
+
+	// the time between ticks, enough for every robot to take its action
+	private static final long TICK_MILLIS = 50;
+	// how long to measure the CPU used by robots waiting for a tick
+	private static final long IDLE_MILLIS = 2000;
+	// the numbers of robots to time one world's ticks with, the size of the world, and the programs
+	private static final int[] ROBOTS = { 2, 100, 10000 };
+	private static final int ROBOTS_SIZE = 1000;
+	private static final String[] ROBOT_PROGRAMS = { "loop { move; turnL; move; turnR; }",
+			"loop { if (gt(oppFB, 0)) { move; } else { if (gt(oppLR, 0)) { turnR; } else { turnL; } } takeFuel; }" };
+	private static final long WARMUP_NANOS = 1000000000L, ROBOTS_NANOS = 2000000000L;
+
+	// where the results go, as the robots' own lines, their states and any fuel they take, would drown them
+	private static final PrintStream out = System.out;
+
+	public static void main(String[] args) throws Exception {
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		if (args.length > 0 && args[0].equals("-robots")) {
+			Trace.setSinks();
+			robots();
+			return;
+		}
+		boolean lockstep = args.length > 0 && args[0].equals("-lockstep");
+		if (lockstep) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		int matches = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int ticks = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		// two robots per match would print more than they do
+		Trace.setSinks();
+		if (lockstep) {
+			lockstep(matches, ticks);
+			return;
+		}
+		out.printf("%d matches on their own threads%n", matches);
+
+		World[] worlds = new World[matches];
+		long start = System.nanoTime();
+		int started = 0;
+		try {
+			for (; started < matches; started++) {
+				worlds[started] = new World();
+				worlds[started].start();
+			}
+		} catch (OutOfMemoryError e) {
+			// unable to create native thread
+			worlds[started].reset();
+			out.printf("ran out of threads after starting %d matches: %s%n", started, e.getMessage());
+		}
+		out.printf("started %d matches (%d robots) in %.0f ms%n", started, 2 * started,
+				(System.nanoTime() - start) / 1e6);
+
+		// let every robot reach its first action, then see what waiting costs
+		Thread.sleep(TICK_MILLIS);
+		long cpu = cpuNanos();
+		Thread.sleep(IDLE_MILLIS);
+		if (cpu >= 0) {
+			out.printf("waiting %d ms for a tick used %.0f ms of CPU%n", IDLE_MILLIS, (cpuNanos() - cpu) / 1e6);
+		}
+
+		start = System.nanoTime();
+		for (int t = 0; t < ticks; t++) {
+			for (int i = 0; i < started; i++) {
+				worlds[i].updateWorld();
+			}
+			Thread.sleep(TICK_MILLIS);
+		}
+		long actions = 0;
+		double latency = 0;
+		for (int i = 0; i < started; i++) {
+			actions += worlds[i].getRobot(1).getHistory().size() + worlds[i].getRobot(2).getHistory().size();
+			latency += worlds[i].getRobot(1).getWakeLatency() + worlds[i].getRobot(2).getWakeLatency();
+		}
+		out.printf("%d ticks of every match in %.0f ms: %d actions%n", ticks, (System.nanoTime() - start) / 1e6,
+				actions);
+		out.printf("robots carried on %.0f us after their tick, on average%n", latency / (2 * started));
+
+		start = System.nanoTime();
+		int leaked = 0;
+		for (int i = 0; i < started; i++) {
+			worlds[i].reset();
+			if (!worlds[i].getMatch().isDone()) {
+				leaked++;
+			}
+		}
+		out.printf("reset and joined every match in %.0f ms: %s%n", (System.nanoTime() - start) / 1e6,
+				(leaked == 0) ? "no robot threads left" : leaked + " matches LEFT THREADS RUNNING");
+		if (leaked > 0 || started < matches) {
+			System.exit(1);
+		}
+	}
+
+	/** The CPU time the JVM has used, or -1 if the JVM does not say */
+	private static long cpuNanos() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	/** Steps every match on this thread, and checks that they all played out the same way */
+	private static void lockstep(int matches, int ticks) {
+		out.printf("%d matches in lockstep on one thread%n", matches);
+		World[] worlds = new World[matches];
+		for (int i = 0; i < matches; i++) {
+			worlds[i] = new World();
+			worlds[i].setSeed(1);
+			worlds[i].startLockstep();
+		}
+		long start = System.nanoTime();
+		int played = 0;
+		for (int t = 0; t < ticks; t++) {
+			boolean any = false;
+			for (int i = 0; i < matches; i++) {
+				any |= worlds[i].tick();
+			}
+			if (!any) {
+				break;
+			}
+			played++;
+		}
+		long time = System.nanoTime() - start;
+		long actions = 0;
+		int different = 0;
+		for (int i = 0; i < matches; i++) {
+			actions += worlds[i].getRobot(1).getHistory().size() + worlds[i].getRobot(2).getHistory().size();
+			for (int r = 1; r <= 2; r++) {
+				if (!worlds[i].getRobot(r).getHistory().equals(worlds[0].getRobot(r).getHistory())) {
+					different++;
+				}
+			}
+		}
+		out.printf("%d ticks of every match in %.0f ms: %d actions, %.0f actions/s%n", played, time / 1e6,
+				actions, actions / (time / 1e9));
+		out.println((different == 0) ? "every match played out the same way"
+				: different + " robots PLAYED DIFFERENTLY");
+		if (different > 0) {
+			System.exit(1);
+		}
+	}
+
+	/** Times the ticks of a world in lockstep with more and more robots */
+	private static void robots() {
+		out.printf("%-100s %8s %10s %12s %14s%n", "program", "robots", "ticks/s", "us/tick", "ns/robot");
+		for (String src : ROBOT_PROGRAMS) {
+			RobotProgramNode prog = Parser.parseSource(ByteBuffer.wrap(src.getBytes(StandardCharsets.UTF_8)));
+			for (int robots : ROBOTS) {
+				ticksFor(prog, robots, WARMUP_NANOS);
+				Timing t = ticksFor(prog, robots, ROBOTS_NANOS);
+				double perTick = t.nanos / (double) t.ops;
+				out.printf("%-100s %8d %10.0f %12.1f %14.0f%n", src, robots, 1e9 / perTick, perTick / 1e3,
+						perTick / robots);
+			}
+		}
+	}
+
+	/**
+	 * Ticks a new world with the given number of robots, all running the
+	 * program, until the time is up.
+	 */
+	private static Timing ticksFor(RobotProgramNode prog, int robots, long nanos) {
+		final World world = new World(ROBOTS_SIZE, ROBOTS_SIZE, robots);
+		world.setSeed(1);
+		for (int i = 1; i <= robots; i++) {
+			world.getRobot(i).setProgram(prog);
+		}
+		world.startLockstep();
+		Timing t = Timing.runFor(new Timing.Work() {
+			long run() {
+				world.tick();
+				return 1;
+			}
+		}, nanos);
+		world.reset();
+		return t;
+	}
+}
@@ -0,0 +1,38 @@
+// MOVE NODE
+class MoveNode implements RobotProgramNode {
+	private EXPNode expNode;
+	private int depth = 1;
+
+	public MoveNode() {
+
+	}
+
+	public MoveNode(EXPNode expNode) {
+		this.expNode = expNode;
+		this.depth = 1 + expNode.getDepth();
+	}
+
+	public void execute(Robot robot) {
+		if (expNode == null) {
+			robot.move();
+		} else {
+			robot.move(expNode.evaluate(robot));
+		}
+	}
+
+	/** The number of steps, or null for a single step */
+	public EXPNode getExpression() {
+		return expNode;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		if (expNode == null) {
+			return "move";
+		}
+		return "move " + expNode.toString() + " number of times";
+	}
+}
@@ -0,0 +1,35 @@
+// "*" mul NODE
+class MulNode implements EXPNode {
+	private EXPNode e1;
+	private EXPNode e2;
+	private final int depth;
+
+	public MulNode(EXPNode e1, EXPNode e2) {
+		this.e1 = e1;
+		this.e2 = e2;
+		this.depth = 1 + Math.max(e1.getDepth(), e2.getDepth());
+	}
+
+	public int evaluate(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			return Interpreter.evaluateExp(this, robot);
+		}
+		return (e1.evaluate(robot) * e2.evaluate(robot));
+	}
+
+	public EXPNode getLeft() {
+		return e1;
+	}
+
+	public EXPNode getRight() {
+		return e2;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return "(" + e1.toString() + " TIMES " + e2.toString() + ")";
+	}
+}
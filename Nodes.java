@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shape of the trees of nodes the parser builds, for the code that looks
+ * through a whole program: BinaryProgram, the engines, the Optimizer and
+ * Sensors.
+ */
+final class Nodes {
+
+	private static final Object[] NONE = new Object[0];
+
+	/**
+	 * The children of a node of the parser's (or the Optimizer's), in the
+	 * order they are written, or none for a leaf or a node of some other kind.
+	 */
+	static Object[] children(Object node) {
+		if (node instanceof ProgNode) {
+			return ((ProgNode) node).getStatements().toArray();
+		} else if (node instanceof BlockNode) {
+			return ((BlockNode) node).getStatements().toArray();
+		} else if (node instanceof StmtNode) {
+			return new Object[] { ((StmtNode) node).getNode() };
+		} else if (node instanceof LoopNode) {
+			return new Object[] { ((LoopNode) node).getBlock() };
+		} else if (node instanceof IfNode) {
+			IfNode n = (IfNode) node;
+			List<Object> list = new ArrayList<Object>();
+			list.add(n.getCondition());
+			list.add(n.getBlock());
+			list.addAll(n.getElifs());
+			if (n.getElseBlock() != null) {
+				list.add(n.getElseBlock());
+			}
+			return list.toArray();
+		} else if (node instanceof WhileNode) {
+			return new Object[] { ((WhileNode) node).getCondition(), ((WhileNode) node).getBlock() };
+		} else if (node instanceof MoveNode) {
+			return optional(((MoveNode) node).getExpression());
+		} else if (node instanceof WaitNode) {
+			return optional(((WaitNode) node).getExpression());
+		} else if (node instanceof ASSGNNode) {
+			return new Object[] { ((ASSGNNode) node).getExpression() };
+		} else if (node instanceof SenseNode) {
+			return ((SenseNode) node).getSensors().toArray();
+		} else if (node instanceof ConditionNode) {
+			return new Object[] { ((ConditionNode) node).getCondition() };
+		} else if (node instanceof NotNode) {
+			return new Object[] { ((NotNode) node).getCondition() };
+		} else if (node instanceof AndNode) {
+			return new Object[] { ((AndNode) node).getLeft(), ((AndNode) node).getRight() };
+		} else if (node instanceof OrNode) {
+			return new Object[] { ((OrNode) node).getLeft(), ((OrNode) node).getRight() };
+		} else if (node instanceof GreaterThanNode) {
+			return new Object[] { ((GreaterThanNode) node).getLeft(), ((GreaterThanNode) node).getRight() };
+		} else if (node instanceof EqualToNode) {
+			return new Object[] { ((EqualToNode) node).getLeft(), ((EqualToNode) node).getRight() };
+		} else if (node instanceof LessThanNode) {
+			return new Object[] { ((LessThanNode) node).getLeft(), ((LessThanNode) node).getRight() };
+		} else if (node instanceof BarrelLRNode) {
+			return optional(((BarrelLRNode) node).getExpression());
+		} else if (node instanceof BarrelFBNode) {
+			return optional(((BarrelFBNode) node).getExpression());
+		} else if (node instanceof AddNode) {
+			return new Object[] { ((AddNode) node).getLeft(), ((AddNode) node).getRight() };
+		} else if (node instanceof SubNode) {
+			return new Object[] { ((SubNode) node).getLeft(), ((SubNode) node).getRight() };
+		} else if (node instanceof MulNode) {
+			return new Object[] { ((MulNode) node).getLeft(), ((MulNode) node).getRight() };
+		} else if (node instanceof DivNode) {
+			return new Object[] { ((DivNode) node).getLeft(), ((DivNode) node).getRight() };
+		}
+		return NONE;
+	}
+
+	private static Object[] optional(Object child) {
+		return (child == null) ? NONE : new Object[] { child };
+	}
+}
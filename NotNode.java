@@ -0,0 +1,29 @@
+// NOT NODE
+class NotNode implements CONDNode {
+	CONDNode n1;
+	private final int depth;
+
+	public NotNode(CONDNode n1) {
+		this.n1 = n1;
+		this.depth = 1 + n1.getDepth();
+	}
+
+	public boolean evaluate(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			return Interpreter.evaluateCond(this, robot);
+		}
+		return (!n1.evaluate(robot));
+	}
+
+	public CONDNode getCondition() {
+		return n1;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return "NOT " + n1.toString();
+	}
+}
@@ -0,0 +1,18 @@
+// "numBarrels" NODE
+class NumBarrelsNode implements SENNode, EXPNode {
+	public int execute(Robot robot) {
+		return robot.sense().numBarrels();
+	}
+
+	public int evaluate(Robot robot) {
+		return execute(robot);
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.numBarrels();
+	}
+
+	public String toString() {
+		return "No. of Barrels Currently in the word";
+	}
+}
@@ -0,0 +1,24 @@
+// NUM NODE
+class NumNode implements EXPNode {
+	private int number;
+
+	public NumNode(int num) {
+		this.number = num;
+	}
+
+	public int evaluate() {
+		return this.number;
+	}
+
+	public int evaluate(Robot robot) {
+		return number;
+	}
+
+	public int getValue() {
+		return number;
+	}
+
+	public String toString() {
+		return this.number + "";
+	}
+}
@@ -0,0 +1,18 @@
+// "oppFB" NODE
+class OppFBNode implements SENNode, EXPNode {
+	public int execute(Robot robot) {
+		return robot.sense().oppFB();
+	}
+
+	public int evaluate(Robot robot) {
+		return execute(robot);
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.oppFB();
+	}
+
+	public String toString() {
+		return "Opponents FB Position";
+	}
+}
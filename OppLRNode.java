@@ -0,0 +1,20 @@
+// "oppLR" NODE
+class OppLRNode implements SENNode, EXPNode {
+
+	public int execute(Robot robot) {
+		return robot.sense().oppLR();
+	}
+
+	public int evaluate(Robot robot) {
+		return execute(robot);
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.oppLR();
+	}
+
+	public String toString() {
+		return "Opponents LR Position";
+
+	}
+}
@@ -0,0 +1,365 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Simplifies a parsed robot program without changing what it does: folds
+ * arithmetic on constants, removes the branches of if and while statements
+ * whose conditions are constant, drops the StmtNode and ConditionNode
+ * wrappers and splices nested blocks into the block around them. Moves and
+ * waits that follow each other a constant number of times become one
+ * move(n) or wait(n), which the robot can take as one batch.
+ *
+ * The program is rebuilt rather than changed, since parsed programs are
+ * shared through the ProgramCache. Expressions shared between several
+ * places stay shared. Divisions by a constant zero are left alone so
+ * that they still fail when they run, and only conditions with no sensors in
+ * them are dropped, so the robot reads its sensors exactly as before.
+ *
+ * Usage: java Optimizer file
+ */
+public class Optimizer {
+
+	// the constant conditions, as the parser would read eq(0, 0) and eq(0, 1)
+	private static final CONDNode TRUE = new EqualToNode(new NumNode(0), new NumNode(0));
+	private static final CONDNode FALSE = new EqualToNode(new NumNode(0), new NumNode(1));
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: java Optimizer file");
+			return;
+		}
+		RobotProgramNode prog = Parser.parseFile(new File(args[0]));
+		if (prog == null) {
+			return;
+		}
+		RobotProgramNode optimized = optimize(prog);
+		System.out.println(report(prog, optimized));
+		System.out.println(Parser.printable(optimized));
+	}
+
+	/**
+	 * Returns the simplified program, or the program itself if it is too
+	 * deeply nested to simplify.
+	 */
+	public static RobotProgramNode optimize(RobotProgramNode prog) {
+		if (prog.getDepth() > Interpreter.MAX_DEPTH) {
+			// the optimizer recurses through the tree
+			return prog;
+		}
+		Optimizer optimizer = new Optimizer();
+		if (prog instanceof ProgNode) {
+			ProgNode p = (ProgNode) prog;
+			List<RobotProgramNode> statements = new ArrayList<RobotProgramNode>();
+			for (RobotProgramNode node : p.getStatements()) {
+				optimizer.statement(node, statements);
+			}
+			ProgNode result = new ProgNode(statements.size());
+			result.setVariables(p.getVariables());
+			for (RobotProgramNode node : statements) {
+				result.addNode(node);
+			}
+			return result;
+		}
+		List<RobotProgramNode> statements = new ArrayList<RobotProgramNode>();
+		optimizer.statement(prog, statements);
+		return (statements.size() == 1) ? statements.get(0) : block(statements);
+	}
+
+	/**
+	 * Describes the size of the program before and after optimizing it: the
+	 * number of nodes, and the cost, which is the number of nodes called to
+	 * run every statement and evaluate every condition once.
+	 */
+	public static String report(RobotProgramNode before, RobotProgramNode after) {
+		return String.format("Optimized robot program from %d to %d nodes, cost %d to %d", countNodes(before),
+				countNodes(after), cost(before), cost(after));
+	}
+
+	// the new nodes of the expressions already optimized, so shared ones stay shared
+	private final IdentityHashMap<Object, Object> done = new IdentityHashMap<Object, Object>();
+
+	// =======================================================
+	// Statements
+	// =======================================================
+
+	/** Adds what the statement simplifies to, which may be nothing, to the list */
+	private void statement(RobotProgramNode node, List<RobotProgramNode> out) {
+		if (node instanceof StmtNode) {
+			statement(((StmtNode) node).getNode(), out);
+		} else if (node instanceof BlockNode) {
+			for (RobotProgramNode n : ((BlockNode) node).getStatements()) {
+				statement(n, out);
+			}
+		} else if (node instanceof LoopNode) {
+			out.add(new LoopNode(block(((LoopNode) node).getBlock())));
+		} else if (node instanceof WhileNode) {
+			WhileNode n = (WhileNode) node;
+			CONDNode condition = condition(n.getCondition());
+			if (condition == TRUE) {
+				out.add(new LoopNode(block(n.getBlock())));
+			} else if (condition != FALSE) {
+				WhileNode result = new WhileNode(condition);
+				result.setBlock(block(n.getBlock()));
+				out.add(result);
+			}
+		} else if (node instanceof IfNode) {
+			ifStatement((IfNode) node, out);
+		} else if (node instanceof MoveNode) {
+			EXPNode count = ((MoveNode) node).getExpression();
+			RobotProgramNode move = (count == null) ? node : new MoveNode(expression(count));
+			int steps = steps(move, out);
+			if (steps >= 0) {
+				out.set(out.size() - 1, new MoveNode(new NumNode(steps)));
+			} else {
+				out.add(move);
+			}
+		} else if (node instanceof WaitNode) {
+			EXPNode count = ((WaitNode) node).getExpression();
+			RobotProgramNode wait = (count == null) ? node : new WaitNode(expression(count));
+			int steps = steps(wait, out);
+			if (steps >= 0) {
+				out.set(out.size() - 1, new WaitNode(new NumNode(steps)));
+			} else {
+				out.add(wait);
+			}
+		} else if (node instanceof ASSGNNode) {
+			ASSGNNode n = (ASSGNNode) node;
+			out.add(new ASSGNNode(n.getName(), n.getSlot(), expression(n.getExpression())));
+		} else {
+			out.add(node);
+		}
+	}
+
+	/**
+	 * The number of steps the move or wait and the statement before it take
+	 * together, if they are the same action, both taken a constant number of
+	 * times, or -1 if they cannot be joined.
+	 */
+	private static int steps(RobotProgramNode node, List<RobotProgramNode> out) {
+		if (out.isEmpty() || out.get(out.size() - 1).getClass() != node.getClass()) {
+			return -1;
+		}
+		long first = steps(out.get(out.size() - 1)), second = steps(node);
+		if (first < 0 || second < 0 || first + second > Integer.MAX_VALUE) {
+			return -1;
+		}
+		return (int) (first + second);
+	}
+
+	/** The number of steps of a move or wait, or -1 if it is not constant */
+	private static long steps(RobotProgramNode node) {
+		EXPNode count = (node instanceof MoveNode) ? ((MoveNode) node).getExpression()
+				: ((WaitNode) node).getExpression();
+		if (count == null) {
+			return 1;
+		}
+		// move(n) takes no steps at all when n is below zero
+		return (count instanceof NumNode) ? Math.max(0, value(count)) : -1;
+	}
+
+	private void ifStatement(IfNode node, List<RobotProgramNode> out) {
+		CONDNode condition = condition(node.getCondition());
+		if (condition == TRUE) {
+			statement(node.getBlock(), out);
+			return;
+		}
+		// IfNode only ever tries its first elif, and never its else block if it has an elif
+		List<RobotProgramNode> otherwise = new ArrayList<RobotProgramNode>();
+		boolean elif = !node.getElifs().isEmpty();
+		if (elif) {
+			statement(node.getElifs().get(0), otherwise);
+		} else if (node.getElseBlock() != null) {
+			statement(node.getElseBlock(), otherwise);
+		}
+		if (condition == FALSE) {
+			out.addAll(otherwise);
+			return;
+		}
+		IfNode result = new IfNode(condition);
+		result.setBlock(block(node.getBlock()));
+		if (elif && otherwise.size() == 1 && otherwise.get(0) instanceof IfNode) {
+			result.addElif((IfNode) otherwise.get(0));
+		} else if (!otherwise.isEmpty()) {
+			result.setElseBlock(block(otherwise));
+		}
+		out.add(result);
+	}
+
+	private BlockNode block(RobotProgramNode node) {
+		List<RobotProgramNode> statements = new ArrayList<RobotProgramNode>();
+		statement(node, statements);
+		return block(statements);
+	}
+
+	private static BlockNode block(List<RobotProgramNode> statements) {
+		BlockNode block = new BlockNode(statements.size());
+		for (RobotProgramNode node : statements) {
+			block.addNode(node);
+		}
+		return block;
+	}
+
+	// =======================================================
+	// Conditions
+	// =======================================================
+
+	/** Returns the simplified condition, which is TRUE or FALSE if it is constant */
+	private CONDNode condition(CONDNode node) {
+		Object result = done.get(node);
+		if (result == null) {
+			result = simplifyCondition(node);
+			done.put(node, result);
+		}
+		return (CONDNode) result;
+	}
+
+	private CONDNode simplifyCondition(CONDNode node) {
+		if (node instanceof ConditionNode) {
+			return condition(((ConditionNode) node).getCondition());
+		} else if (node instanceof NotNode) {
+			CONDNode n = condition(((NotNode) node).getCondition());
+			if (n == TRUE || n == FALSE) {
+				return (n == TRUE) ? FALSE : TRUE;
+			}
+			return new NotNode(n);
+		} else if (node instanceof AndNode || node instanceof OrNode) {
+			boolean and = node instanceof AndNode;
+			CONDNode left = condition(and ? ((AndNode) node).getLeft() : ((OrNode) node).getLeft());
+			CONDNode right = condition(and ? ((AndNode) node).getRight() : ((OrNode) node).getRight());
+			// the value that decides the result on its own: false for and, true for or
+			CONDNode decides = and ? FALSE : TRUE;
+			if (left == decides) {
+				// the right condition is never evaluated
+				return decides;
+			} else if (left == TRUE || left == FALSE) {
+				return right;
+			} else if (right == TRUE || right == FALSE) {
+				// the left condition is always evaluated, so it can only be dropped if it is constant
+				if (right != decides) {
+					return left;
+				}
+			}
+			return and ? new AndNode(left, right) : new OrNode(left, right);
+		} else if (node instanceof LessThanNode) {
+			EXPNode left = expression(((LessThanNode) node).getLeft());
+			EXPNode right = expression(((LessThanNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode) {
+				return (value(left) < value(right)) ? TRUE : FALSE;
+			}
+			return new LessThanNode(left, right);
+		} else if (node instanceof GreaterThanNode) {
+			EXPNode left = expression(((GreaterThanNode) node).getLeft());
+			EXPNode right = expression(((GreaterThanNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode) {
+				return (value(left) > value(right)) ? TRUE : FALSE;
+			}
+			return new GreaterThanNode(left, right);
+		} else if (node instanceof EqualToNode) {
+			EXPNode left = expression(((EqualToNode) node).getLeft());
+			EXPNode right = expression(((EqualToNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode) {
+				return (value(left) == value(right)) ? TRUE : FALSE;
+			}
+			return new EqualToNode(left, right);
+		}
+		return node;
+	}
+
+	// =======================================================
+	// Expressions
+	// =======================================================
+
+	private EXPNode expression(EXPNode node) {
+		Object result = done.get(node);
+		if (result == null) {
+			result = simplifyExpression(node);
+			done.put(node, result);
+		}
+		return (EXPNode) result;
+	}
+
+	private EXPNode simplifyExpression(EXPNode node) {
+		if (node instanceof AddNode) {
+			EXPNode left = expression(((AddNode) node).getLeft());
+			EXPNode right = expression(((AddNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode) {
+				return new NumNode(value(left) + value(right));
+			}
+			return new AddNode(left, right);
+		} else if (node instanceof SubNode) {
+			EXPNode left = expression(((SubNode) node).getLeft());
+			EXPNode right = expression(((SubNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode) {
+				return new NumNode(value(left) - value(right));
+			}
+			return new SubNode(left, right);
+		} else if (node instanceof MulNode) {
+			EXPNode left = expression(((MulNode) node).getLeft());
+			EXPNode right = expression(((MulNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode) {
+				return new NumNode(value(left) * value(right));
+			}
+			return new MulNode(left, right);
+		} else if (node instanceof DivNode) {
+			EXPNode left = expression(((DivNode) node).getLeft());
+			EXPNode right = expression(((DivNode) node).getRight());
+			if (left instanceof NumNode && right instanceof NumNode && value(right) != 0) {
+				return new NumNode(value(left) / value(right));
+			}
+			return new DivNode(left, right);
+		} else if (node instanceof BarrelLRNode && ((BarrelLRNode) node).getExpression() != null) {
+			return new BarrelLRNode(expression(((BarrelLRNode) node).getExpression()));
+		} else if (node instanceof BarrelFBNode && ((BarrelFBNode) node).getExpression() != null) {
+			return new BarrelFBNode(expression(((BarrelFBNode) node).getExpression()));
+		}
+		return node;
+	}
+
+	private static int value(EXPNode node) {
+		return ((NumNode) node).getValue();
+	}
+
+	// =======================================================
+	// Report
+	// =======================================================
+
+	/** The number of different nodes in the program */
+	static int countNodes(Object prog) {
+		IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+		List<Object> todo = new ArrayList<Object>();
+		todo.add(prog);
+		while (!todo.isEmpty()) {
+			Object node = todo.remove(todo.size() - 1);
+			if (seen.put(node, Boolean.TRUE) == null) {
+				for (Object child : Nodes.children(node)) {
+					todo.add(child);
+				}
+			}
+		}
+		return seen.size();
+	}
+
+	/**
+	 * The number of nodes called to run every statement once, counting a
+	 * shared node each time it is used.
+	 */
+	static long cost(Object prog) {
+		return cost(prog, new IdentityHashMap<Object, Long>());
+	}
+
+	private static long cost(Object node, IdentityHashMap<Object, Long> costs) {
+		Long cost = costs.get(node);
+		if (cost == null) {
+			long sum = 1;
+			for (Object child : Nodes.children(node)) {
+				// shared expressions can double their cost with every assignment
+				sum = Math.min(Long.MAX_VALUE / 2, sum + cost(child, costs));
+			}
+			cost = sum;
+			costs.put(node, cost);
+		}
+		return cost;
+	}
+}
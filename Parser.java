@@ -1,7 +1,14 @@
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.regex.*;
 import javax.swing.JFileChooser;
 
 /**
@@ -11,37 +18,86 @@ import javax.swing.JFileChooser;
  */
 public class Parser {
 
-	static HashMap<String, ASSGNNode> vars = new HashMap<String, ASSGNNode>();
+	// the variables declared so far in the program being parsed, and their
+	// slots in the frame of variables each run of the program has
+	private final HashMap<String, Integer> declared = new HashMap<String, Integer>();
+	private final ArrayList<String> slotNames = new ArrayList<String>();
+
+	// the explicit stacks used to parse nested blocks, expressions and
+	// conditions. They are kept for the whole parse, and each call only uses
+	// the part above where the stack was when it started.
+	private final ArrayList<Open> open = new ArrayList<Open>();
+	private TokenKind[] expOps = new TokenKind[16], condOps = new TokenKind[16];
+	private EXPNode[] expFirsts = new EXPNode[16];
+	private CONDNode[] condFirsts = new CONDNode[16];
+	private int expTop, condTop;
+
+	// source files at least this big are memory-mapped instead of read onto the heap
+	static final long MAP_THRESHOLD = 1 << 20;
+
+	// the deepest program printable will print, as toString recurses through the nodes
+	static final int MAX_PRINT_DEPTH = 500;
 
 	/**
 	 * Top level parse method, called by the World
 	 */
 	static RobotProgramNode parseFile(File code) {
-		Scanner scan = null;
 		try {
-			scan = new Scanner(code);
-
-			// the only time tokens can be next to each other is
-			// when one of them is one of (){},;
-			scan.useDelimiter("\\s+|(?=[{}(),;])|(?<=[{}(),;])");
+			return parseSource(readSource(code));
+		} catch (NoSuchFileException e) {
+			System.out.println("Robot program source file not found");
+		} catch (IOException e) {
+			System.out.println("Robot program source file could not be read");
+		}
+		return null;
+	}
 
-			RobotProgramNode n = parseProgram(scan); // You need to implement this!!!
+	/**
+	 * Returns the contents of a program source file. Large files are mapped
+	 * into memory rather than copied onto the heap, and the lexer reads the
+	 * mapped bytes directly.
+	 */
+	static ByteBuffer readSource(File code) throws IOException {
+		if (code.length() < MAP_THRESHOLD) {
+			return ByteBuffer.wrap(Files.readAllBytes(code.toPath()));
+		}
+		try (FileChannel channel = FileChannel.open(code.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
 
-			scan.close();
-			return n;
-		} catch (FileNotFoundException e) {
-			System.out.println("Robot program source file not found");
+	/**
+	 * Parses the contents of a program source file, returning null and printing
+	 * the error if the program is not valid.
+	 */
+	static RobotProgramNode parseSource(ByteBuffer src) {
+		try {
+			if (BinaryProgram.isBinary(src)) {
+				return BinaryProgram.read(src);
+			}
+			return parseProgram(new Lexer(src));
 		} catch (ParserFailureException e) {
 			System.out.println("Parser error:");
 			System.out.println(e.getMessage());
-			scan.close();
 		}
 		return null;
 	}
 
+	static RobotProgramNode parseSource(byte[] src) {
+		return parseSource(ByteBuffer.wrap(src));
+	}
+
 	/** For testing the parser without requiring the world */
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-batch")) {
+			ParserBatch.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 1 && args[0].equals("-compile")) {
+			compile(new File(args[1]), (args.length > 2) ? new File(args[2]) : null);
+			return;
+		}
 		if (args.length > 0) {
 			for (String arg : args) {
 				File f = new File(arg);
@@ -51,7 +107,7 @@ public class Parser {
 					System.out.println("Parsing completed ");
 					if (prog != null) {
 						System.out.println("================\nProgram:");
-						System.out.println(prog);
+						System.out.println(printable(prog));
 					}
 					System.out.println("=================");
 				} else {
@@ -68,7 +124,7 @@ public class Parser {
 				RobotProgramNode prog = parseFile(chooser.getSelectedFile());
 				System.out.println("Parsing completed");
 				if (prog != null) {
-					System.out.println("Program: \n" + prog);
+					System.out.println("Program: \n" + printable(prog));
 				}
 				System.out.println("=================");
 			}
@@ -76,19 +132,55 @@ public class Parser {
 		System.out.println("Done");
 	}
 
-	// Useful Patterns
+	/**
+	 * The program as text, or a note saying how deep it is if it is too deeply
+	 * nested to print.
+	 */
+	static String printable(RobotProgramNode prog) {
+		int depth = prog.getDepth();
+		if (depth > MAX_PRINT_DEPTH) {
+			return "(program nested " + depth + " deep, too deep to print)";
+		}
+		return prog.toString();
+	}
+
+	/**
+	 * Parses a source file and writes it out in the BinaryProgram format, to
+	 * the output file if one is given, else next to the source with the
+	 * extension .robc.
+	 */
+	static void compile(File code, File output) {
+		RobotProgramNode prog = parseFile(code);
+		if (prog == null) {
+			System.exit(1);
+		}
+		if (output == null) {
+			String name = code.getName();
+			int dot = name.lastIndexOf('.');
+			output = new File(code.getParentFile(), ((dot > 0) ? name.substring(0, dot) : name) + ".robc");
+		}
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+			BinaryProgram.write(prog, out);
+		} catch (IOException e) {
+			System.out.println("Could not write '" + output + "': " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Compiled '" + code + "' to '" + output + "' (" + output.length() + " bytes)");
+	}
 
-	static Pattern NUMPAT = Pattern.compile("-?\\d+"); // ("-?(0|[1-9][0-9]*)");
-	static Pattern OPENPAREN = Pattern.compile("\\(");
-	static Pattern CLOSEPAREN = Pattern.compile("\\)");
-	static Pattern OPENBRACE = Pattern.compile("\\{");
-	static Pattern CLOSEBRACE = Pattern.compile("\\}");
+	/**
+	 * Parses a whole program. Each call uses a new Parser, so any number of
+	 * programs can be parsed at the same time.
+	 */
+	static RobotProgramNode parseProgram(Lexer s) {
+		return new Parser().parsePROG(s);
+	}
 
 	/**
 	 * PROG ::= STMT+
 	 */
 	// THE PARSER GOES HERE
-	static RobotProgramNode parseProgram(Scanner s) {
+	RobotProgramNode parsePROG(Lexer s) {
 		// If the file is empty then throw exception
 		if (!s.hasNext()) {
 			fail("Parse failed!", s);
@@ -99,611 +191,611 @@ public class Parser {
 		while (s.hasNext()) {
 			node.addNode(parseSTMT(s));
 		}
+		node.setVariables(slotNames);
 		return node;
 	}
 
-	static RobotProgramNode parseSTMT(Scanner s) {
-		//Act
-		if (s.hasNext("move") || s.hasNext("turnL") || s.hasNext("turnR") || s.hasNext("takeFuel") || s.hasNext("wait")
-				|| s.hasNext("turnAround") || s.hasNext("shieldOn") || s.hasNext("shieldOff")) {
-			StmtNode node = new StmtNode(parseACT(s));
-			if (s.hasNext(";")) {
-				s.next(";");
-				return node;
-			}
-			fail("';' Missing", s);
-			//Loop
-		} else if (s.hasNext("loop")) {
-			StmtNode node = new StmtNode(parseLOOP(s));
-			return node;
-			//if
-		} else if (s.hasNext("if")) {
-			StmtNode node = new StmtNode(parseIf(s));
-			return node;
-			//while
-		} else if (s.hasNext("while")) {
-			StmtNode node = new StmtNode(parseWHILE(s));
-			return node;
-			//Assgn
-		} else if (s.hasNext("\\$[A-Za-z][A-Za-z0-9]*")) {
-			StmtNode node = new StmtNode(parseASSGN(s));
-			if (s.hasNext(";")) {
-				s.next(";");
-				return node;
-			}
-			fail("';' Missing", s);
+	/**
+	 * A compound statement whose block is being parsed. Instead of recursing
+	 * into blocks, the parser keeps a stack of these, so blocks can be nested
+	 * to any depth.
+	 */
+	private static class Open {
+		// LOOP, WHILE, IF or ELIF, or OPENBRACE for a block on its own
+		final TokenKind kind;
+		// the IfNode or WhileNode, null for the others
+		final RobotProgramNode node;
+		BlockNode block;
+		// is block the else block of an if?
+		boolean inElse;
+
+		Open(TokenKind kind, RobotProgramNode node, BlockNode block) {
+			this.kind = kind;
+			this.node = node;
+			this.block = block;
 		}
-		fail("Invalid statement", s);
-		return null;
 	}
 
-	static RobotProgramNode parseACT(Scanner s) {
-		if (s.hasNext("move")) {
-			s.next("move");
-			if (s.hasNext(OPENPAREN)) {//stage2
-				s.next(OPENPAREN);
-				RobotProgramNode node = new MoveNode(parseEXP(s));
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-					return node;
-				}
-				fail("No close parenthesis found after expNode", s);
-			}
-			return new MoveNode();
-		}
-		if (s.hasNext("turnL")) {
-			s.next("turnL");
-			return new TurnLNode();
-		}
-		if (s.hasNext("turnR")) {
-			s.next("turnR");
-			return new TurnRNode();
-		}
-		if (s.hasNext("turnAround")) {
-			s.next("turnAround");
-			return new TurnAroundNode();
-		}
-		
-		if (s.hasNext("shieldOn")) {
-			s.next("shieldOn");
-			return new ShieldOnNode();
-		}
-		if (s.hasNext("shieldOff")) {
-			s.next("shieldOff");
-			return new ShieldOffNode();
-		}
-		if (s.hasNext("takeFuel")) {
-			s.next("takeFuel");
-			return new TakeFuelNode();
-		}
-		if (s.hasNext("wait")) {
-			s.next("wait");
+	/**
+	 * STMT ::= ACT ";" | LOOP | IF | WHILE | ASSGN ";" | SENSE ";"
+	 */
+	RobotProgramNode parseSTMT(Lexer s) {
+		int base = open.size();
+		return parseStatements(s, base, parseStatementHead(s));
+	}
 
-			if (s.hasNext(OPENPAREN)) {//stage2
-				s.next(OPENPAREN);
-				RobotProgramNode node = new WaitNode(parseEXP(s));
+	/**
+	 * BLOCK ::= "{" STMT+ "}"
+	 */
+	RobotProgramNode parseBLOCK(Lexer s) {
+		int base = open.size();
+		open.add(new Open(TokenKind.OPENBRACE, null, openBlock(s)));
+		return parseStatements(s, base, null);
+	}
 
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-					return node;
+	/**
+	 * Parses statements into the innermost open block until every block above
+	 * base is closed, and returns the statement or block that was opened
+	 * first. done is a statement that has already been parsed, or null.
+	 */
+	private RobotProgramNode parseStatements(Lexer s, int base, RobotProgramNode done) {
+		while (true) {
+			if (done != null) {
+				if (open.size() == base) {
+					return done;
 				}
-				fail("No close parenthesis found after expNode", s);
+				open.get(open.size() - 1).block.addNode(done);
+			}
+			if (!s.hasNext(TokenKind.CLOSEBRACE)) {
+				if (!s.peek().isStatement()) {
+					fail("invalid statement or no close brace found", s);
+				}
+				done = parseStatementHead(s);
+			} else {
+				if (open.get(open.size() - 1).block.getSize() == 0) {
+					fail("No 'block' found inside loop", s);
+				}
+				s.skip();
+				done = closeBlock(s);
 			}
-
-			return new WaitNode();
 		}
-		fail("Invalid Action", s);
-		return null;
 	}
 
-	static RobotProgramNode parseLOOP(Scanner s) {
-		if (s.hasNext("loop")) {
-			s.next("loop");
-			return new LoopNode(parseBLOCK(s));
+	/**
+	 * Parses a simple statement and returns it, or parses a compound statement
+	 * up to the "{" of its block, pushes it onto open and returns null.
+	 */
+	private RobotProgramNode parseStatementHead(Lexer s) {
+		switch (s.peek()) {
+		//Act
+		case MOVE:
+		case TURNL:
+		case TURNR:
+		case TURNAROUND:
+		case SHIELDON:
+		case SHIELDOFF:
+		case TAKEFUEL:
+		case WAIT: {
+			StmtNode node = new StmtNode(parseACT(s));
+			if (!checkFor(TokenKind.SEMICOLON, s)) {
+				fail("';' Missing", s);
+			}
+			return node;
+		}
+		//Loop
+		case LOOP:
+			parseLOOP(s);
+			return null;
+		//if
+		case IF:
+			parseIf(s);
+			return null;
+		//while
+		case WHILE:
+			parseWHILE(s);
+			return null;
+		//Assgn
+		case VARIABLE: {
+			StmtNode node = new StmtNode(parseASSGN(s));
+			if (!checkFor(TokenKind.SEMICOLON, s)) {
+				fail("';' Missing", s);
+			}
+			return node;
+		}
+		case SENSE: {
+			StmtNode node = new StmtNode(parseSENSE(s));
+			if (!checkFor(TokenKind.SEMICOLON, s)) {
+				fail("';' Missing", s);
+			}
+			return node;
+		}
+		default:
+			fail("Invalid statement", s);
+			return null;
 		}
-		fail("'loop' statement not found", s);
-		return null;
 	}
 
-	static RobotProgramNode parseIf(Scanner s) {
-		if (s.hasNext("if")) {
-			s.next("if");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				RobotProgramNode ifNode = new IfNode(parseCOND(s));
-
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-
-					IfNode IfNode = (IfNode) ifNode;
-					IfNode.setBlock((BlockNode) parseBLOCK(s));
-
-					while (s.hasNext("elif")) {
-						IfNode.addElif((IfNode) parseIf(s));
-					}
-
-					if (s.hasNext("else")) {
-						s.next("else");
-						IfNode.setElseBlock((BlockNode) parseBLOCK(s));
-					}
-					return ifNode;
-				} else {
-					fail("No close parenthesis found after conditional", s);
-				}
+	/**
+	 * Finishes the compound statement on top of open once the "}" of its block
+	 * has been read. Returns the finished statement, or null if an elif or
+	 * else block follows.
+	 */
+	private RobotProgramNode closeBlock(Lexer s) {
+		Open top = open.get(open.size() - 1);
+		switch (top.kind) {
+		case OPENBRACE:
+			open.remove(open.size() - 1);
+			return top.block;
+		case LOOP:
+			open.remove(open.size() - 1);
+			return new StmtNode(new LoopNode(top.block));
+		case WHILE:
+			open.remove(open.size() - 1);
+			((WhileNode) top.node).setBlock(top.block);
+			return new StmtNode(top.node);
+		default:
+			if (top.inElse) {
+				((IfNode) top.node).setElseBlock(top.block);
 			} else {
-				fail("No open parenthesis found before conditional", s);
+				((IfNode) top.node).setBlock(top.block);
 			}
-		} else if (s.hasNext("elif")) {
-			s.next("elif");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				RobotProgramNode ifNode = new IfNode(parseCOND(s));
-
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-
-					IfNode IfNode = (IfNode) ifNode;
-					IfNode.setBlock((BlockNode) parseBLOCK(s));
-
-					while (s.hasNext("elif")) {
-						IfNode.addElif((IfNode) parseIf(s));
-					}
+			return continueIf(s);
+		}
+	}
 
-					if (s.hasNext("else")) {
-						s.next("else");
-						IfNode.setElseBlock((BlockNode) parseBLOCK(s));
-					}
-					return ifNode;
-				} else {
-					fail("No close parenthesis found after conditional", s);
+	/**
+	 * Goes on with the if or elif on top of open after one of its blocks. Each
+	 * elif takes any elifs and else that follow it, and is then added to the
+	 * if or elif below it. Returns the finished if statement, or null if an
+	 * elif or else block follows.
+	 */
+	private RobotProgramNode continueIf(Lexer s) {
+		while (true) {
+			Open top = open.get(open.size() - 1);
+			if (!top.inElse) {
+				if (s.hasNext(TokenKind.ELIF)) {
+					parseIf(s);
+					return null;
+				}
+				if (checkFor(TokenKind.ELSE, s)) {
+					top.inElse = true;
+					top.block = openBlock(s);
+					return null;
 				}
-			} else {
-				fail("No open parenthesis found before conditional", s);
 			}
-		} else {
-			fail("'if' statement not found ", s);
+			open.remove(open.size() - 1);
+			if (top.kind == TokenKind.IF) {
+				return new StmtNode(top.node);
+			}
+			((IfNode) open.get(open.size() - 1).node).addElif((IfNode) top.node);
 		}
-		return null;
 	}
 
-	static RobotProgramNode parseWHILE(Scanner s) {
-		if (s.hasNext("while")) {
-			s.next("while");
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				RobotProgramNode whileNode = new WhileNode(parseCOND(s));
+	private BlockNode openBlock(Lexer s) {
+		if (!checkFor(TokenKind.OPENBRACE, s)) {
+			fail("No open brace found", s);
+		}
+		return new BlockNode();
+	}
 
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-					WhileNode WhileNode = (WhileNode) whileNode;
-					WhileNode.setBlock((BlockNode) parseBLOCK(s));
-					return whileNode;
+	RobotProgramNode parseACT(Lexer s) {
+		TokenKind kind = s.peek();
+		switch (kind) {
+		case MOVE:
+		case WAIT:
+			s.skip();
+			if (s.hasNext(TokenKind.OPENPAREN)) {//stage2
+				s.skip();
+				EXPNode exp = parseEXP(s);
+				if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+					fail("No close parenthesis found after expNode", s);
 				}
-				fail("No close parenthesis found after conditioanl", s);
+				return (kind == TokenKind.MOVE) ? new MoveNode(exp) : new WaitNode(exp);
 			}
-			fail("No open parenthesis found before conditional", s);
+			return (kind == TokenKind.MOVE) ? new MoveNode() : new WaitNode();
+		case TURNL:
+			s.skip();
+			return new TurnLNode();
+		case TURNR:
+			s.skip();
+			return new TurnRNode();
+		case TURNAROUND:
+			s.skip();
+			return new TurnAroundNode();
+		case SHIELDON:
+			s.skip();
+			return new ShieldOnNode();
+		case SHIELDOFF:
+			s.skip();
+			return new ShieldOffNode();
+		case TAKEFUEL:
+			s.skip();
+			return new TakeFuelNode();
+		default:
+			fail("Invalid Action", s);
+			return null;
 		}
-		fail("no 'while' found", s);
-
-		return null;
 	}
 
-	static RobotProgramNode parseASSGN(Scanner s) {
-		if (s.hasNext("\\$[A-Za-z][A-Za-z0-9]*")) {
-			String variableName = s.next("\\$[A-Za-z][A-Za-z0-9]*");
-
-			if (s.hasNext("=")) {
-				s.next("=");
-				EXPNode expNode = parseEXP(s);
-				// Put assignment of variable in map, to check for declaration later
-				ASSGNNode assn = new ASSGNNode(variableName, expNode);
-				vars.put(variableName, assn);
-				return assn;
-			}
-			fail("'=' not found after variable name", s);
+	/**
+	 * LOOP ::= "loop" BLOCK. Parses up to the start of the block, and pushes
+	 * the loop onto open.
+	 */
+	void parseLOOP(Lexer s) {
+		if (!checkFor(TokenKind.LOOP, s)) {
+			fail("'loop' statement not found", s);
 		}
-		fail("Invalid variable name", s);
-
-		return null;
+		open.add(new Open(TokenKind.LOOP, null, openBlock(s)));
 	}
 
-	static RobotProgramNode parseBLOCK(Scanner s) {
-		if (!s.hasNext(OPENBRACE)) {
-			fail("No open brace found", s);
+	/**
+	 * IF ::= "if" "(" COND ")" BLOCK [ ELIF ] [ "else" BLOCK ], where ELIF is
+	 * the same with "elif". Parses an if or an elif up to the start of its
+	 * block, and pushes it onto open; the elifs and else that follow are
+	 * parsed by continueIf.
+	 */
+	void parseIf(Lexer s) {
+		TokenKind kind = s.peek();
+		if (!checkFor(TokenKind.IF, s) && !checkFor(TokenKind.ELIF, s)) {
+			fail("'if' statement not found ", s);
 		}
-		s.next(OPENBRACE);
-
-		BlockNode node = new BlockNode();
-		while (!s.hasNext(CLOSEBRACE) && isSTMT(s)) {
-			node.addNode(parseSTMT(s));
+		if (!checkFor(TokenKind.OPENPAREN, s)) {
+			fail("No open parenthesis found before conditional", s);
 		}
 
-		if (node.getSize() == 0) {
-			fail("No 'block' found inside loop", s);
-		}
+		IfNode ifNode = new IfNode(parseCOND(s));
 
-		if (!s.hasNext(CLOSEBRACE)) {
-			fail("No close brace found", s);
+		if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+			fail("No close parenthesis found after conditional", s);
 		}
-		s.next(CLOSEBRACE);
-
-		return node;
-
+		open.add(new Open(kind, ifNode, openBlock(s)));
 	}
 
-	static EXPNode parseEXP(Scanner s) {
-		if (s.hasNext("-?[1-9][0-9]*|0")) {
-			return new NumNode(s.nextInt());
-		} else if (isSEN(s)) {
-			return parseSEN(s);
-		} else if (s.hasNext("add") || s.hasNext("sub") || s.hasNext("mul") || s.hasNext("div")) {
-			return parseOP(s);
-		} else if (s.hasNext("\\$[A-Za-z][A-Za-z0-9]*")) {
-			String variableName = s.next("\\$[A-Za-z][A-Za-z0-9]*");
-
-			// Check if declared in map - Stage 4
-			if (vars.containsKey(variableName)) {
-				return vars.get(variableName).getExpression();
-			} else {
-				fail("Variables must be declared before they are used in the program", s);
-			}
+	/**
+	 * WHILE ::= "while" "(" COND ")" BLOCK. Parses up to the start of the
+	 * block, and pushes the while onto open.
+	 */
+	void parseWHILE(Lexer s) {
+		if (!checkFor(TokenKind.WHILE, s)) {
+			fail("no 'while' found", s);
+		}
+		if (!checkFor(TokenKind.OPENPAREN, s)) {
+			fail("No open parenthesis found before conditional", s);
 		}
 
-		fail("No valid EXP Node found", s);
-		return null;
-	}
+		WhileNode whileNode = new WhileNode(parseCOND(s));
 
-	static SENNode parseSEN(Scanner s) {
-		if (s.hasNext("fuelLeft")) {
-			s.next("fuelLeft");
-			SENNode node = new FuelLeftNode();
-			return node;
+		if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+			fail("No close parenthesis found after conditioanl", s);
 		}
+		open.add(new Open(TokenKind.WHILE, whileNode, openBlock(s)));
+	}
 
-		if (s.hasNext("oppLR")) {
-			s.next("oppLR");
-			SENNode node = new OppLRNode();
-			return node;
+	RobotProgramNode parseASSGN(Lexer s) {
+		if (!s.hasNext(TokenKind.VARIABLE)) {
+			fail("Invalid variable name", s);
 		}
+		String variableName = s.next();
 
-		if (s.hasNext("oppFB")) {
-			s.next("oppFB");
-			SENNode node = new OppFBNode();
-			return node;
+		if (!checkFor(TokenKind.EQUALS, s)) {
+			fail("'=' not found after variable name", s);
 		}
+		EXPNode expNode = parseEXP(s);
+		return new ASSGNNode(variableName, declare(variableName), expNode);
+	}
 
-		if (s.hasNext("numBarrels")) {
-			s.next("numBarrels");
-			SENNode node = new NumBarrelsNode();
-			return node;
+	/**
+	 * SENSE ::= "sense" "(" VAR "=" SEN { "," VAR "=" SEN } ")", where a
+	 * barrelLR or barrelFB SEN may have an argument. Reads every sensor at the
+	 * same tick.
+	 */
+	RobotProgramNode parseSENSE(Lexer s) {
+		if (!checkFor(TokenKind.SENSE, s)) {
+			fail("no 'sense' found", s);
 		}
-
-		if (s.hasNext("barrelLR")) {
-			s.next("barrelLR");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				EXPNode EXP = parseEXP(s);
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-					return new BarrelLRNode(EXP);
-				}
-				fail("Missing close parenthesis after optional argument", s);
-			}
-
-			SENNode node = new BarrelLRNode();
-			return node;
+		if (!checkFor(TokenKind.OPENPAREN, s)) {
+			fail("No open parenthesis found after 'sense'", s);
 		}
-
-		if (s.hasNext("barrelFB")) {
-			s.next("barrelFB");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				EXPNode EXP = parseEXP(s);
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-					return new BarrelFBNode(EXP);
-				}
-				fail("Missing close parenthesis after optional argument", s);
+		SenseNode node = new SenseNode();
+		do {
+			if (!s.hasNext(TokenKind.VARIABLE)) {
+				fail("Invalid variable name", s);
 			}
-
-			SENNode node = new BarrelFBNode();
-			return node;
-		}
-		if (s.hasNext("wallDist")) {
-			s.next("wallDist");
-			SENNode node = new WallDistNode();
-			return node;
+			String variableName = s.next();
+			if (!checkFor(TokenKind.EQUALS, s)) {
+				fail("'=' not found after variable name", s);
+			}
+			if (!s.peek().isSensor()) {
+				fail("Only sensors can be read by 'sense'", s);
+			}
+			SENNode sensor = (SENNode) parseEXP(s);
+			node.addSensor(variableName, declare(variableName), sensor);
+		} while (checkFor(TokenKind.COMMA, s));
+		if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+			fail("No close parenthesis found after sensors", s);
 		}
-
-		fail("Invalid SEN argument with"+s.next(), s);
-
-		return null;
+		return node;
 	}
 
-	static EXPNode parseOP(Scanner s) {
-		if (s.hasNext("add")) {
-			s.next("add");
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-				EXPNode EXP1 = parseEXP(s);
-				if (s.hasNext(",")) {
-					s.next(",");
-					EXPNode EXP2 = parseEXP(s);
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						return new AddNode(EXP1, EXP2);
-					}
-					fail("Missing closing parenthesis after EXP", s);
-				}
-				fail("Missing ','", s);
-			}
-			fail("Missing open parenthesis", s);
+	/** Declares the variable if it is new, and returns its slot */
+	private int declare(String variableName) {
+		// Put the variable in the map, to check for declaration later
+		Integer slot = declared.get(variableName);
+		if (slot == null) {
+			slot = slotNames.size();
+			declared.put(variableName, slot);
+			slotNames.add(variableName);
 		}
+		return slot;
+	}
 
-		if (s.hasNext("sub")) {
-			s.next("sub");
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-				EXPNode EXP1 = parseEXP(s);
-				if (s.hasNext(",")) {
-					s.next(",");
-					EXPNode EXP2 = parseEXP(s);
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						return new SubNode(EXP1, EXP2);
-					}
-					fail("Missing closing parenthesis after EXP", s);
+	/**
+	 * EXP ::= NUM | SEN | VAR | OP "(" EXP "," EXP ")", where a barrelLR or
+	 * barrelFB sensor can take an EXP in parentheses. The operators and
+	 * sensors whose operands are still being parsed are kept on a stack, so
+	 * expressions can be nested to any depth.
+	 */
+	EXPNode parseEXP(Lexer s) {
+		// the pending operators and barrel sensors are in expOps above base,
+		// with their first operand in expFirsts, null until it is parsed
+		int base = expTop;
+		while (true) {
+			EXPNode exp;
+			TokenKind kind = s.peek();
+			switch (kind) {
+			case NUMBER:
+				exp = new NumNode(s.nextInt());
+				break;
+			case FUELLEFT:
+			case OPPLR:
+			case OPPFB:
+			case NUMBARRELS:
+			case WALLDIST:
+				exp = parseSEN(s);
+				break;
+			case BARRELLR:
+			case BARRELFB:
+				s.skip();
+				if (!checkFor(TokenKind.OPENPAREN, s)) {
+					exp = (kind == TokenKind.BARRELLR) ? new BarrelLRNode() : new BarrelFBNode();
+					break;
 				}
-				fail("Missing ','", s);
-			}
-			fail("Missing open parenthesis", s);
-		}
-
-		if (s.hasNext("mul")) {
-			s.next("mul");
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-				EXPNode EXP1 = parseEXP(s);
-				if (s.hasNext(",")) {
-					s.next(",");
-					EXPNode EXP2 = parseEXP(s);
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						return new MulNode(EXP1, EXP2);
-					}
-					fail("Missing closing parenthesis after EXP", s);
+				// the barrel number is parsed like an operand
+				pending(kind);
+				continue;
+			case ADD:
+			case SUB:
+			case MUL:
+			case DIV:
+				s.skip();
+				if (!checkFor(TokenKind.OPENPAREN, s)) {
+					fail("Missing open parenthesis", s);
+				}
+				pending(kind);
+				continue;
+			case VARIABLE: {
+				String variableName = s.next();
+
+				// Check if declared in map - Stage 4
+				Integer slot = declared.get(variableName);
+				if (slot == null) {
+					fail("Variables must be declared before they are used in the program", s);
 				}
-				fail("Missing ','", s);
+				exp = new VarNode(variableName, slot);
+				break;
+			}
+			default:
+				fail("No valid EXP Node found", s);
+				return null;
 			}
-			fail("Missing open parenthesis", s);
-		}
 
-		if (s.hasNext("div")) {
-			s.next("div");
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-				EXPNode EXP1 = parseEXP(s);
-				if (s.hasNext(",")) {
-					s.next(",");
-					EXPNode EXP2 = parseEXP(s);
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						return new DivNode(EXP1, EXP2);
+			// exp completes the pending operators and sensors it is the last operand of
+			while (expTop > base) {
+				int top = expTop - 1;
+				TokenKind op = expOps[top];
+				if (!op.isOperator()) {
+					if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+						fail("Missing close parenthesis after optional argument", s);
+					}
+					exp = (op == TokenKind.BARRELLR) ? new BarrelLRNode(exp) : new BarrelFBNode(exp);
+				} else if (expFirsts[top] == null) {
+					if (!checkFor(TokenKind.COMMA, s)) {
+						fail("Missing ','", s);
+					}
+					expFirsts[top] = exp;
+					break;
+				} else {
+					if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+						fail("Missing closing parenthesis after EXP", s);
 					}
-					fail("Missing closing parenthesis after EXP", s);
+					exp = newOP(op, expFirsts[top], exp);
 				}
-				fail("Missing ','", s);
+				expFirsts[--expTop] = null;
+			}
+			if (expTop == base) {
+				return exp;
 			}
-			fail("Missing open parenthesis", s);
 		}
-		return null;
 	}
 
-	static CONDNode parseCOND(Scanner s) {
-		//RELOP
-		if (s.hasNext("lt")) {
-			s.next("lt");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				EXPNode e1 = parseEXP(s);
-
-				if (s.hasNext(",")) {
-					s.next(",");
+	/** Pushes an operator or barrel sensor whose operands parseEXP is to parse next */
+	private void pending(TokenKind kind) {
+		if (expTop == expOps.length) {
+			expOps = Arrays.copyOf(expOps, expTop * 2);
+			expFirsts = Arrays.copyOf(expFirsts, expTop * 2);
+		}
+		expOps[expTop] = kind;
+		expFirsts[expTop++] = null;
+	}
 
-					EXPNode e2 = parseEXP(s);
+	/**
+	 * SEN ::= "fuelLeft" | "oppLR" | "oppFB" | "numBarrels" | "wallDist", and
+	 * "barrelLR" and "barrelFB" without an argument. parseEXP parses the
+	 * barrel sensors that have one.
+	 */
+	SENNode parseSEN(Lexer s) {
+		TokenKind kind = s.peek();
+		switch (kind) {
+		case FUELLEFT:
+			s.skip();
+			return new FuelLeftNode();
+		case OPPLR:
+			s.skip();
+			return new OppLRNode();
+		case OPPFB:
+			s.skip();
+			return new OppFBNode();
+		case NUMBARRELS:
+			s.skip();
+			return new NumBarrelsNode();
+		case WALLDIST:
+			s.skip();
+			return new WallDistNode();
+		case BARRELLR:
+			s.skip();
+			return new BarrelLRNode();
+		case BARRELFB:
+			s.skip();
+			return new BarrelFBNode();
+		default:
+			fail("Invalid SEN argument with" + s.next(), s);
+			return null;
+		}
+	}
+
+	/** The node for OP "(" EXP1 "," EXP2 ")" */
+	static EXPNode newOP(TokenKind kind, EXPNode EXP1, EXPNode EXP2) {
+		switch (kind) {
+		case ADD:
+			return new AddNode(EXP1, EXP2);
+		case SUB:
+			return new SubNode(EXP1, EXP2);
+		case MUL:
+			return new MulNode(EXP1, EXP2);
+		default:
+			return new DivNode(EXP1, EXP2);
+		}
+	}
 
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						CONDNode node = new LessThanNode(e1, e2);
-						return node;
-					} else {
-						fail("')' not found", s);
-					}
-				} else {
-					fail("',' not found", s);
+	/**
+	 * COND ::= RELOP "(" EXP "," EXP ")" | "and" "(" COND "," COND ")" |
+	 * "or" "(" COND "," COND ")" | "not" "(" COND ")". The and, or and not
+	 * conditions whose operands are still being parsed are kept on a stack, so
+	 * conditions can be nested to any depth.
+	 */
+	CONDNode parseCOND(Lexer s) {
+		int base = condTop;
+		while (true) {
+			CONDNode cond;
+			TokenKind kind = s.peek();
+			switch (kind) {
+			//RELOP
+			case LT:
+			case GT:
+			case EQ:
+				cond = parseRELOP(s);
+				break;
+			//stage 2
+			case AND:
+			case OR:
+			case NOT:
+				s.skip();
+				if (!checkFor(TokenKind.OPENPAREN, s)) {
+					fail("'(' not found", s);
 				}
-			} else {
-				fail("No '(' found", s);
+				if (condTop == condOps.length) {
+					condOps = Arrays.copyOf(condOps, condTop * 2);
+					condFirsts = Arrays.copyOf(condFirsts, condTop * 2);
+				}
+				condOps[condTop] = kind;
+				condFirsts[condTop++] = null;
+				continue;
+			default:
+				fail("Invalid condition EXP", s);
+				return null;
 			}
-		}
-
-		if (s.hasNext("gt")) {
-			s.next("gt");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				EXPNode e1 = parseEXP(s);
 
-				if (s.hasNext(",")) {
-					s.next(",");
-
-					EXPNode e2 = parseEXP(s);
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						CONDNode node = new GreaterThanNode(e1, e2);
-						return node;
-					} else {
-						fail("')' not found", s);
+			// cond completes the pending conditions it is the last operand of
+			while (condTop > base) {
+				int top = condTop - 1;
+				TokenKind op = condOps[top];
+				if (op == TokenKind.NOT) {
+					if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+						fail("close parenthesis not found", s);
+					}
+					cond = new NotNode(new ConditionNode(cond));
+				} else if (condFirsts[top] == null) {
+					if (!checkFor(TokenKind.COMMA, s)) {
+						fail("',' not found", s);
 					}
+					condFirsts[top] = new ConditionNode(cond);
+					break;
 				} else {
-					fail("',' not found", s);
+					if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+						fail("close parenthesis not found", s);
+					}
+					CONDNode n2 = new ConditionNode(cond);
+					CONDNode n1 = condFirsts[top];
+					cond = (op == TokenKind.AND) ? new AndNode(n1, n2) : new OrNode(n1, n2);
 				}
-			} else {
-				fail("'(' not found ", s);
+				condFirsts[--condTop] = null;
+			}
+			if (condTop == base) {
+				return cond;
 			}
 		}
+	}
 
-		if (s.hasNext("eq")) {
-			s.next("eq");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				EXPNode e1 = parseEXP(s);
+	/**
+	 * RELOP "(" EXP "," EXP ")", where RELOP ::= "lt" | "gt" | "eq"
+	 */
+	CONDNode parseRELOP(Lexer s) {
+		TokenKind kind = s.peek();
+		s.skip();
+		if (!checkFor(TokenKind.OPENPAREN, s)) {
+			fail("'(' not found ", s);
+		}
+		EXPNode e1 = parseEXP(s);
+		if (!checkFor(TokenKind.COMMA, s)) {
+			fail("',' not found", s);
+		}
+		EXPNode e2 = parseEXP(s);
+		if (!checkFor(TokenKind.CLOSEPAREN, s)) {
+			fail("')' not found", s);
+		}
+		if (kind == TokenKind.LT) {
+			return new LessThanNode(e1, e2);
+		}
+		return (kind == TokenKind.GT) ? new GreaterThanNode(e1, e2) : new EqualToNode(e1, e2);
+	}
 
-				if (s.hasNext(",")) {
-					s.next(",");
-
-					EXPNode e2 = parseEXP(s);
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						CONDNode node = new EqualToNode(e1, e2);
-						return node;
-					} else {
-						fail("')' not found", s);
-					}
-				} else {
-					fail("',' not found", s);
-				}
-			} else {
-				fail("'(' not found ", s);
-			}
-		}
-//stage 2
-		if (s.hasNext("and")) {
-			s.next("and");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				CONDNode n1 = new ConditionNode(parseCOND(s));
-
-				if (s.hasNext(",")) {
-					s.next(",");
-					CONDNode n2 = new ConditionNode(parseCOND(s));
-
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						return new AndNode(n1, n2);
-					}
-					fail("close parenthesis not found", s);
-				}
-				fail("',' not found", s);
-			}
-			fail("'(' not found", s);
-		}
-
-		if (s.hasNext("or")) {
-			s.next("or");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				CONDNode n1 = new ConditionNode(parseCOND(s));
-
-				if (s.hasNext(",")) {
-					s.next(",");
-					CONDNode n2 = new ConditionNode(parseCOND(s));
-
-					if (s.hasNext(CLOSEPAREN)) {
-						s.next(CLOSEPAREN);
-						return new OrNode(n1, n2);
-					}
-					fail("close parenthesis not found", s);
-				}
-				fail("',' not found", s);
-			}
-			fail("'(' not found", s);
-		}
-
-		if (s.hasNext("not")) {
-			s.next("not");
-
-			if (s.hasNext(OPENPAREN)) {
-				s.next(OPENPAREN);
-
-				CONDNode n1 = new ConditionNode(parseCOND(s));
-
-				if (s.hasNext(CLOSEPAREN)) {
-					s.next(CLOSEPAREN);
-					return new NotNode(n1);
-				}
-				fail("close parenthesis not found", s);
-			}
-			fail("'(' not found", s);
-		}
-
-		fail("Invalid condition EXP", s);
-		return null;
-	}
-
-	static boolean isSTMT(Scanner s) {
-		if (s.hasNext("move") || s.hasNext("turnL") || s.hasNext("turnR") || s.hasNext("takeFuel") || s.hasNext("wait")
-				|| s.hasNext("turnAround") || s.hasNext("shieldOn") || s.hasNext("shieldOff") || s.hasNext("loop")
-				|| s.hasNext("if") || s.hasNext("while") || s.hasNext("\\$[A-Za-z][A-Za-z0-9]*")) {
-			return true;
-		}
-		fail("invalid statement or no close brace found", s);
-		return false;
-	}
-
-	static boolean isSEN(Scanner s) {
-		if (s.hasNext("fuelLeft") || s.hasNext("oppLR") || s.hasNext("oppFB") || s.hasNext("numBarrels")
-				|| s.hasNext("barrelLR") || s.hasNext("barrelFB") || s.hasNext("wallDist")) {
-			return true;
-		}
-		return false;
-	}
-
-	// utility methods for the parser
+	// utility methods for the parser
 
 	/**
 	 * Report a failure in the parser.
 	 */
-	static void fail(String message, Scanner s) {
-		String msg = message + "\n   @ ...";
-		for (int i = 0; i < 5 && s.hasNext(); i++) {
-			msg += " " + s.next();
+	static void fail(String message, Lexer s) {
+		String msg = message + "\n   @ line " + s.line() + ", column " + s.column() + ": ...";
+		for (int i = 0; i < 5 && s.lookahead(i) != null; i++) {
+			msg += " " + s.lookahead(i);
 		}
 		throw new ParserFailureException(msg + "...");
 	}
 
 	/**
-	 * Requires that the next token matches a pattern if it matches, it consumes and
+	 * Requires that the next token is of the given kind if it is, it consumes and
 	 * returns the token, if not, it throws an exception with an error message
 	 */
-	static String require(String p, String message, Scanner s) {
-		if (s.hasNext(p)) {
+	static String require(TokenKind kind, String message, Lexer s) {
+		if (s.hasNext(kind)) {
 			return s.next();
 		}
 		fail(message, s);
 		return null;
 	}
 
-	static String require(Pattern p, String message, Scanner s) {
-		if (s.hasNext(p)) {
+	static String require(String text, String message, Lexer s) {
+		if (s.hasNext(text)) {
 			return s.next();
 		}
 		fail(message, s);
@@ -711,20 +803,11 @@ public class Parser {
 	}
 
 	/**
-	 * Requires that the next token matches a pattern (which should only match a
-	 * number) if it matches, it consumes and returns the token as an integer if
-	 * not, it throws an exception with an error message
+	 * Requires that the next token is a number if it is, it consumes and returns
+	 * the token as an integer if not, it throws an exception with an error message
 	 */
-	static int requireInt(String p, String message, Scanner s) {
-		if (s.hasNext(p) && s.hasNextInt()) {
-			return s.nextInt();
-		}
-		fail(message, s);
-		return -1;
-	}
-
-	static int requireInt(Pattern p, String message, Scanner s) {
-		if (s.hasNext(p) && s.hasNextInt()) {
+	static int requireInt(String message, Lexer s) {
+		if (s.hasNext(TokenKind.NUMBER)) {
 			return s.nextInt();
 		}
 		fail(message, s);
@@ -732,22 +815,21 @@ public class Parser {
 	}
 
 	/**
-	 * Checks whether the next token in the scanner matches the specified pattern,
-	 * if so, consumes the token and return true. Otherwise returns false without
-	 * consuming anything.
+	 * Checks whether the next token is of the given kind, if so, consumes the
+	 * token and return true. Otherwise returns false without consuming anything.
 	 */
-	static boolean checkFor(String p, Scanner s) {
-		if (s.hasNext(p)) {
-			s.next();
+	static boolean checkFor(TokenKind kind, Lexer s) {
+		if (s.hasNext(kind)) {
+			s.skip();
 			return true;
 		} else {
 			return false;
 		}
 	}
 
-	static boolean checkFor(Pattern p, Scanner s) {
-		if (s.hasNext(p)) {
-			s.next();
+	static boolean checkFor(String text, Lexer s) {
+		if (s.hasNext(text)) {
+			s.skip();
 			return true;
 		} else {
 			return false;
@@ -755,781 +837,3 @@ public class Parser {
 	}
 
 }
-
-
-// You could add the node classes here, as long as they are not declared public (or private)
-
-//***********************************Classes*****************************************
-//PROG
-class ProgNode implements RobotProgramNode {
-	private ArrayList<RobotProgramNode> STMTNodes;
-
-	public ProgNode() {
-		this.STMTNodes = new ArrayList<RobotProgramNode>();
-	}
-
-	public void execute(Robot robot) {
-		for (int i = 0; i < this.STMTNodes.size(); i++) {
-			this.STMTNodes.get(i).execute(robot);
-		}
-	}
-
-	public void addNode(RobotProgramNode n) {
-		this.STMTNodes.add(n);
-	}
-
-	public String toString() {
-		String string = "";
-		for (int i = 0; i < this.STMTNodes.size(); i++) {
-			string += this.STMTNodes.get(i).toString() + "\n";
-		}
-		return string;
-	}
-}
-//STMT
-class StmtNode implements RobotProgramNode {
-
-	RobotProgramNode n;
-
-	public StmtNode(RobotProgramNode node) {
-		this.n = node;
-	}
-
-	public String toString() {
-		return this.n.toString();
-	}
-
-	public void execute(Robot robot) {
-		n.execute(robot);
-	}
-}
-//LOOP
-class LoopNode implements RobotProgramNode {
-
-	private RobotProgramNode n;
-
-	public LoopNode(RobotProgramNode blockNode) {
-		this.n = blockNode;
-	}
-
-	public void execute(Robot robot) {
-		while (true) {
-			this.n.execute(robot);
-		}
-	}
-
-	public String toString() {
-		System.out.println("called");
-		return "loop " + n.toString() + "end loop";
-	}
-}
-
-//BLOCK 
-class BlockNode implements RobotProgramNode {
-
-	private ArrayList<RobotProgramNode> STMT;
-
-	public BlockNode() {
-		this.STMT = new ArrayList<RobotProgramNode>();
-	}
-
-	public void execute(Robot robot) {
-		for (int i = 0; i < this.STMT.size(); i++) {
-			this.STMT.get(i).execute(robot);
-		}
-	}
-
-	public void addNode(RobotProgramNode node) {
-		this.STMT.add(node);
-	}
-
-	public int getSize() {
-		return this.STMT.size();
-	}
-
-	public String toString() {
-		String str = "\n";
-
-		for (RobotProgramNode r : this.STMT) {
-			str += "\t" + r.toString() + "\n";
-		}
-
-		return str;
-	}
-}
-
-//if
-class IfNode implements RobotProgramNode {
-
-	private CONDNode condition;
-	private BlockNode block;
-	private ArrayList<IfNode> elifList;
-	private BlockNode elseBlock;
-
-	public IfNode(CONDNode condNode) {
-		this.condition = condNode;
-	}
-
-	public void setBlock(BlockNode block) {
-		this.block = block;
-	}
-
-	public void setElseBlock(BlockNode elseBlock) {
-		this.elseBlock = elseBlock;
-	}
-
-	public void addElif(IfNode node) {
-		if (elifList == null) {
-			this.elifList = new ArrayList<IfNode>();
-		}
-
-		this.elifList.add(node);
-	}
-
-	public void execute(Robot robot) {
-		if (condition.evaluate(robot)) {
-			block.execute(robot);
-		} else {
-			if (this.elifList != null) {
-				for (IfNode n : this.elifList) {
-					n.execute(robot);
-					return;
-				}
-			}
-			if (elseBlock != null) {
-				elseBlock.execute(robot);
-			}
-		}
-	}
-
-	public String toString() {
-		String str = "";
-
-		str += "if (" + condition.toString() + ")" + this.block.toString() + "}";
-
-		if (elifList != null) {
-			for (IfNode n : this.elifList) {
-				str += "elif" + n.toString();
-			}
-		}
-
-		if (elseBlock != null) {
-			str += "else " + this.elseBlock.toString() + "}";
-		}
-
-		return str;
-	}
-}
-//while
-class WhileNode implements RobotProgramNode {
-	private CONDNode condition;
-	private BlockNode block;
-
-	public WhileNode(CONDNode condNode) {
-		this.condition = condNode;
-	}
-
-	public void setBlock(BlockNode block) {
-		this.block = block;
-	}
-
-	public void execute(Robot robot) {
-		while (condition.evaluate(robot)) {
-			block.execute(robot);
-		}
-	}
-
-	public String toString() {
-		return "while (" + condition.toString() + ")" + this.block.toString() + "end while";
-	}
-}
-
-//**************************************** Action ACT *****************************************
-// MOVE NODE
-class MoveNode implements RobotProgramNode {
-	private EXPNode expNode;
-	private int count;
-
-	public MoveNode() {
-
-	}
-
-	public MoveNode(EXPNode expNode) {
-		this.expNode = expNode;
-	}
-
-	public void execute(Robot robot) {
-		if (expNode == null) {
-			robot.move();
-		} else {
-			this.count = expNode.evaluate(robot);
-			for (int i = 0; i < count; i++) {
-				robot.move();
-			}
-		}
-	}
-
-	public String toString() {
-		if (expNode == null) {
-			return "move";
-		}
-		return "move " + expNode.toString() + " number of times";
-	}
-}
-
-// TURN LEFT NODE
-class TurnLNode implements RobotProgramNode {
-
-	
-	public TurnLNode() {
-	}
-
-	public void execute(Robot robot) {
-		robot.turnLeft();
-	}
-
-	public String toString() {
-		return "turn left";
-	}
-}
-
-// TURN RIGHT NODE
-class TurnRNode implements RobotProgramNode {
-
-	
-	public TurnRNode() {
-	}
-
-	public void execute(Robot robot) {
-		robot.turnRight();
-	}
-
-	public String toString() {
-		return "turn right";
-	}
-}
-
-// TURN AROUND NODE
-class TurnAroundNode implements RobotProgramNode {
-
-	public void execute(Robot robot) {
-		robot.turnAround();
-	}
-
-	public String toString() {
-		return "Turn Around";
-	}
-}
-
-// SHIELD ON NODE
-class ShieldOnNode implements RobotProgramNode {
-
-	public void execute(Robot robot) {
-		robot.setShield(true);
-	}
-
-	public String toString() {
-		return "Shield On";
-	}
-}
-
-// SHIELD OFF NODE
-class ShieldOffNode implements RobotProgramNode {
-
-	public void execute(Robot robot) {
-		robot.setShield(false);
-	}
-
-	public String toString() {
-		return "Shield Off";
-	}
-}
-
-// TAKE FUEL NODE
-class TakeFuelNode implements RobotProgramNode {
-
-	public TakeFuelNode() {
-	}
-
-	public void execute(Robot robot) {
-		robot.takeFuel();
-	}
-
-	public String toString() {
-		return "take fuel";
-	}
-}
-
-// WAIT NODE
-class WaitNode implements RobotProgramNode {
-
-	private EXPNode expNode;
-	private int count;
-
-	public WaitNode() {
-	}
-
-	public WaitNode(EXPNode exp) {
-		this.expNode = exp;
-	}
-
-	public void execute(Robot robot) {
-		if (this.expNode == null) {
-			robot.idleWait();
-		} else {
-			this.count = this.expNode.evaluate(robot);
-			for (int i = 0; i < count; i++) {
-				robot.idleWait();
-			}
-		}
-	}
-
-	public String toString() {
-		if (this.expNode == null) {
-			return "wait";
-		} else {
-			return "wait 'expNode' number of times";
-		}
-	}
-}
-
-// ************************************** Condition COND *****************************************
-
-class ConditionNode implements CONDNode {
-	CONDNode n;
-
-	public ConditionNode(CONDNode n) {
-		this.n = n;
-	}
-
-	public boolean evaluate(Robot robot) {
-		return n.evaluate(robot);
-	}
-
-	public String toString() {
-		return n.toString();
-	}
-}
-
-// AND NODE
-class AndNode implements CONDNode {
-	CONDNode n1;
-	CONDNode n2;
-
-	public AndNode(CONDNode n1, CONDNode n2) {
-		this.n1 = n1;
-		this.n2 = n2;
-	}
-
-	public boolean evaluate(Robot robot) {
-		return (n1.evaluate(robot) && n2.evaluate(robot));
-	}
-
-	public String toString() {
-		return n1.toString() + " AND " + n2.toString();
-	}
-}
-
-// NOT NODE
-class NotNode implements CONDNode {
-	CONDNode n1;
-
-	public NotNode(CONDNode n1) {
-		this.n1 = n1;
-	}
-
-	public boolean evaluate(Robot robot) {
-		return (!n1.evaluate(robot));
-	}
-
-	public String toString() {
-		return "NOT " + n1.toString();
-	}
-}
-
-// OR NODE
-class OrNode implements CONDNode {
-	CONDNode n1;
-	CONDNode n2;
-
-	public OrNode(CONDNode n1, CONDNode n2) {
-		this.n1 = n1;
-		this.n2 = n2;
-	}
-
-	public boolean evaluate(Robot robot) {
-		return (n1.evaluate(robot) || n2.evaluate(robot));
-	}
-
-	public String toString() {
-		return n1.toString() + " OR " + n2.toString();
-	}
-}
-
-// GREATER THAN NODE
-class GreaterThanNode implements CONDNode {
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public GreaterThanNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public boolean evaluate(Robot robot) {
-		if (e1.evaluate(robot) > e2.evaluate(robot)) {
-			return true;
-		}
-		return false;
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " > " + e2.toString() + ")";
-	}
-}
-
-// EQUAL TO NODE
-class EqualToNode implements CONDNode {
-
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public EqualToNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public boolean evaluate(Robot robot) {
-		if (e1.evaluate(robot) == e2.evaluate(robot)) {
-			return true;
-		}
-		return false;
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " == " + e2.toString() + ")";
-	}
-}
-
-// LESS THAN NODE
-class LessThanNode implements CONDNode {
-
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public LessThanNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public boolean evaluate(Robot robot) {
-		if (e1.evaluate(robot) < e2.evaluate(robot)) {
-			return true;
-		}
-		return false;
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " < " + e2.toString() + ")";
-	}
-}
-
-// *******************************ASSGN ***************************************
-
-class ASSGNNode implements RobotProgramNode {
-
-	private String name;
-	private EXPNode EXP;
-
-	public ASSGNNode(String name, EXPNode EXP) {
-		this.name = name;
-		this.EXP = EXP;
-	}
-	
-	public EXPNode getExpression() {
-		return EXP;
-	}
-
-	public void setExpression(EXPNode EXP) {
-		this.EXP = EXP;
-	}
-
-	public void setName(String name) {
-		this.name = name;
-	}
-
-	public void execute(Robot robot) {
-		Parser.vars.put(this.name, this);
-	}
-
-	public String toString() {
-		return name.toString() + " = " + EXP.toString();
-	}
-}
-
-
-// *****************************************SEN ***********************************
-// "fuelLeft" NODE
-class FuelLeftNode implements SENNode, EXPNode {
-	public int execute(Robot robot) {
-		return robot.getFuel();
-	}
-
-	public int evaluate(Robot robot) {
-		return execute(robot);
-	}
-
-	public String toString() {
-		return "Fuel remaining";
-	}
-}
-
-// "oppLR" NODE
-class OppLRNode implements SENNode, EXPNode {
-
-	public int execute(Robot robot) {
-		return robot.getOpponentLR();
-	}
-
-	public int evaluate(Robot robot) {
-		return execute(robot);
-	}
-
-	public String toString() {
-		return "Opponents LR Position";
-
-	}
-}
-
-// "oppFB" NODE
-class OppFBNode implements SENNode, EXPNode {
-	public int execute(Robot robot) {
-		return robot.getOpponentFB();
-	}
-
-	public int evaluate(Robot robot) {
-		return execute(robot);
-	}
-
-	public String toString() {
-		return "Opponents FB Position";
-	}
-}
-
-// "barrelFB" NODE
-class BarrelFBNode implements SENNode, EXPNode {
-
-	private EXPNode EXP;
-
-	public BarrelFBNode() {
-
-	}
-
-	public BarrelFBNode(EXPNode EXP) {
-		this.EXP = EXP;
-	}
-
-	public int execute(Robot robot) {
-		return robot.getClosestBarrelFB();
-	}
-
-	public int evaluate(Robot robot) {
-		if (EXP == null) {
-			return robot.getClosestBarrelFB();
-		} else {
-			return robot.getBarrelFB(this.EXP.evaluate(robot));
-		}
-	}
-
-	public String toString() {
-		if (EXP == null) {
-			return "FB distance to closest barrel";
-		} else {
-			return "FB distance to barrel no. 'argument'";
-		}
-	}
-}
-
-// "barrelLR" NODE
-class BarrelLRNode implements SENNode, EXPNode {
-
-	private EXPNode EXP;
-
-	public BarrelLRNode() {
-
-	}
-
-	public BarrelLRNode(EXPNode EXP) {
-		this.EXP = EXP;
-	}
-
-	public int execute(Robot robot) {
-		if (EXP == null) {
-			return robot.getClosestBarrelLR();
-		} else {
-			return robot.getBarrelLR(this.EXP.evaluate(robot));
-		}
-	}
-
-	public int evaluate(Robot robot) {
-		return execute(robot);
-	}
-
-	public String toString() {
-		if (this.EXP == null) {
-			return "LR distance to closest barrel";
-		} else {
-			return "LR distance to barrel no. 'argument'";
-		}
-	}
-
-}
-
-// "numBarrels" NODE
-class NumBarrelsNode implements SENNode, EXPNode {
-	public int execute(Robot robot) {
-		return robot.numBarrels();
-	}
-
-	public int evaluate(Robot robot) {
-		return execute(robot);
-	}
-
-	public String toString() {
-		return "No. of Barrels Currently in the word";
-	}
-}
-
-// "wallDist" NODE
-class WallDistNode implements SENNode, EXPNode {
-	public int execute(Robot robot) {
-		return robot.getDistanceToWall();
-	}
-
-	public int evaluate(Robot robot) {
-		return execute(robot);
-	}
-
-	public String toString() {
-		return "Distance to wall";
-	}
-}
-
-// *******************************OP NODES *************************************
-//stage 2
-// "+" add NODE
-class AddNode implements EXPNode {
-
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public AddNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public int evaluate(Robot robot) {
-		return e1.evaluate(robot) + e2.evaluate(robot);
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " PLUS " + e2.toString() + ")";
-	}
-}
-
-// "-" sub NODE
-class SubNode implements EXPNode {
-
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public SubNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public int evaluate(Robot robot) {
-		return e1.evaluate(robot) - e2.evaluate(robot);
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " MINUS " + e2.toString() + ")";
-	}
-}
-
-// "*" mul NODE
-class MulNode implements EXPNode {
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public MulNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public int evaluate(Robot robot) {
-		return (e1.evaluate(robot) * e2.evaluate(robot));
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " TIMES " + e2.toString() + ")";
-	}
-}
-
-// "/" div NODE
-class DivNode implements EXPNode {
-	private EXPNode e1;
-	private EXPNode e2;
-
-	public DivNode(EXPNode e1, EXPNode e2) {
-		this.e1 = e1;
-		this.e2 = e2;
-	}
-
-	public int evaluate(Robot robot) {
-		return (e1.evaluate(robot) / e2.evaluate(robot));
-	}
-
-	public String toString() {
-		return "(" + e1.toString() + " DIVIDED BY " + e2.toString() + ")";
-	}
-}
-
-// NUM NODE
-class NumNode implements EXPNode {
-	private int number;
-
-	public NumNode(int num) {
-		this.number = num;
-	}
-
-	public int evaluate() {
-		return this.number;
-	}
-
-	public int evaluate(Robot robot) {
-		return number;
-	}
-
-	public String toString() {
-		return this.number + "";
-	}
-}
-
-// VAR NODE
-class VarNode implements EXPNode {
-	private String name;
-
-	public VarNode(String name) {
-		this.name = name;
-	}
-
-	public int evaluate(Robot robot) {
-		// Get the ASSGNNode from map using name, get EXPNode from ASSGNNode, evaluate EXPNode
-		return Parser.vars.get(this.name).getExpression().evaluate(robot);
-	}
-
-	public String toString() {
-		return this.name;
-	}
-}
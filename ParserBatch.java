@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch mode for the parser: parses every program in a set of files,
+ * directories and globs on a fork-join pool, writes a one line result per
+ * file to a report, and prints a summary.
+ *
+ * Usage: java Parser -batch [-report file] [-threads n] path...
+ *
+ * A path may be a file, a directory (every file under it is parsed) or a glob
+ * such as "submissions/**.prog". Exits with status 1 if any program failed to
+ * parse, so it can be used as a gate.
+ */
+public class ParserBatch {
+
+	/** The outcome of parsing one file */
+	static class Result {
+		final Path path;
+		boolean ok;
+		String message = "";
+		int tokens;
+		long nanos;
+
+		Result(Path path) {
+			this.path = path;
+		}
+	}
+
+	public static void main(String[] args) {
+		String report = "parse-report.tsv";
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> patterns = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-report") && i + 1 < args.length) {
+				report = args[++i];
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else {
+				patterns.add(args[i]);
+			}
+		}
+		if (patterns.isEmpty()) {
+			System.out.println("Usage: java Parser -batch [-report file] [-threads n] path...");
+			return;
+		}
+
+		List<Path> files;
+		try {
+			files = expand(patterns);
+		} catch (IOException e) {
+			System.out.println("Can't list programs: " + e.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		Result[] results = new Result[files.size()];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = new Result(files.get(i));
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		pool.invoke(new ParseTask(results, 0, results.length));
+		long wall = System.nanoTime() - start;
+		pool.shutdown();
+
+		try {
+			writeReport(results, Paths.get(report));
+		} catch (IOException e) {
+			System.out.println("Can't write report '" + report + "': " + e.getMessage());
+		}
+		int failed = printSummary(results, wall, threads);
+		System.out.println("Report written to " + report);
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Parses results[from..to), splitting the range in half until each task
+	 * has a single file.
+	 */
+	@SuppressWarnings("serial")
+	private static class ParseTask extends RecursiveAction {
+		private final Result[] results;
+		private final int from, to;
+
+		ParseTask(Result[] results, int from, int to) {
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from) {
+					try {
+						parse(results[from]);
+					} catch (RuntimeException e) {
+						// a bug rather than a bad program, reported against the file like the rest
+						results[from].ok = false;
+						results[from].message = "parser failed: " + e;
+					}
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ParseTask(results, from, mid), new ParseTask(results, mid, to));
+		}
+	}
+
+	static void parse(Result result) {
+		ByteBuffer src;
+		try {
+			src = Parser.readSource(result.path.toFile());
+		} catch (IOException e) {
+			result.message = "can't read file: " + e.getMessage();
+			return;
+		}
+		long start = System.nanoTime();
+		Lexer lexer = new Lexer(src);
+		try {
+			Parser.parseProgram(lexer);
+			result.ok = true;
+		} catch (ParserFailureException e) {
+			result.message = e.getMessage();
+		}
+		result.nanos = System.nanoTime() - start;
+		try {
+			result.tokens = lexer.tokenCount();
+		} catch (ParserFailureException e) {
+			// a bad number after the error, the tokens before it are still counted
+		}
+	}
+
+	// =======================================================
+	// Finding the files
+	// =======================================================
+
+	/**
+	 * Turns the file, directory and glob arguments into a sorted list of files.
+	 */
+	static List<Path> expand(List<String> patterns) throws IOException {
+		final List<Path> files = new ArrayList<Path>();
+		for (String pattern : patterns) {
+			if (isGlob(pattern)) {
+				final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+				Files.walkFileTree(globBase(pattern), new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						if (attrs.isRegularFile() && matcher.matches(file)) {
+							files.add(file);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} else {
+				Path path = Paths.get(pattern);
+				if (Files.isDirectory(path)) {
+					Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+							if (attrs.isRegularFile()) {
+								files.add(file);
+							}
+							return FileVisitResult.CONTINUE;
+						}
+					});
+				} else {
+					files.add(path);
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static boolean isGlob(String pattern) {
+		for (char c : "*?[{".toCharArray()) {
+			if (pattern.indexOf(c) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The directory made of the glob's leading components that have no
+	 * wildcards, so that the paths found by walking it still match the glob.
+	 */
+	private static Path globBase(String pattern) {
+		int wildcard = pattern.length();
+		for (char c : "*?[{".toCharArray()) {
+			int i = pattern.indexOf(c);
+			if (i >= 0) {
+				wildcard = Math.min(wildcard, i);
+			}
+		}
+		int slash = pattern.lastIndexOf('/', wildcard);
+		return Paths.get((slash < 0) ? "" : pattern.substring(0, slash + 1));
+	}
+
+	// =======================================================
+	// Reporting
+	// =======================================================
+
+	static void writeReport(Result[] results, Path report) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report, StandardCharsets.UTF_8))) {
+			out.println("# file\tresult\ttokens\tparse_us\tmessage");
+			for (Result r : results) {
+				out.print(r.path);
+				out.print(r.ok ? "\tok\t" : "\terror\t");
+				out.print(r.tokens);
+				out.print('\t');
+				out.print(r.nanos / 1000);
+				out.print('\t');
+				out.println(r.message.replaceAll("\\s+", " ").trim());
+			}
+		}
+	}
+
+	/**
+	 * Prints the totals, throughput and latency percentiles. Returns the number
+	 * of files that failed.
+	 */
+	static int printSummary(Result[] results, long wall, int threads) {
+		long[] times = new long[results.length];
+		long tokens = 0;
+		int failed = 0;
+		for (int i = 0; i < results.length; i++) {
+			times[i] = results[i].nanos;
+			tokens += results[i].tokens;
+			if (!results[i].ok) {
+				failed++;
+			}
+		}
+		Arrays.sort(times);
+		double seconds = wall / 1e9;
+		System.out.printf("Parsed %d files (%d ok, %d failed), %d tokens in %.3f s on %d threads%n", results.length,
+				results.length - failed, failed, tokens, seconds, threads);
+		System.out.printf("%.1f files/s, %.1f tokens/s%n", results.length / seconds, tokens / seconds);
+		System.out.printf("parse latency (ms): p50 %.3f  p90 %.3f  p99 %.3f  max %.3f%n", percentile(times, 50) / 1e6,
+				percentile(times, 90) / 1e6, percentile(times, 99) / 1e6, percentile(times, 100) / 1e6);
+		return failed;
+	}
+
+	/** Nearest-rank percentile of sorted values */
+	static long percentile(long[] sorted, int p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+}
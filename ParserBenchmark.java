@@ -0,0 +1,394 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Times the lexer and parser on a generated robot program, and reports the
+ * cost per statement.
+ *
+ * Usage: java ParserBenchmark [statements]
+ *
+ * With -file, compares parsing a source file read onto the heap as a char
+ * array against parsing it straight from a memory-mapped buffer, reporting
+ * throughput and the bytes allocated per parse.
+ *
+ * Usage: java ParserBenchmark -file path
+ *
+ * With -binary, compares parsing a source file against reading the same
+ * program compiled to the BinaryProgram format, after checking that the
+ * compiled program prints the same as the parsed one.
+ *
+ * Usage: java ParserBenchmark -binary path
+ *
+ * With -suite, runs a fixed set of benchmarks: parseProgram over the corpus
+ * of small, medium and huge programs in bench/corpus (or the given directory),
+ * and single productions that are costly to parse: deeply nested add/mul
+ * expressions, long and/or/not chains and blocks with many statements. Each
+ * benchmark is warmed up and then run for several one second iterations, and
+ * its throughput and allocation rate are reported. With -corpus, writes the
+ * generated medium and huge programs of the corpus again.
+ *
+ * Usage: java ParserBenchmark -suite [corpus dir]
+ *        java ParserBenchmark -corpus [corpus dir]
+ *
+ * With -stress, instead parses and runs many programs at the same time and
+ * checks that they don't interfere with each other.
+ *
+ * Usage: java ParserBenchmark -stress [programs] [threads]
+ */
+public class ParserBenchmark {
+
+	private static final int WARMUP = 5, RUNS = 10;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("-stress")) {
+			int programs = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+			int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+			stress(programs, threads);
+			return;
+		}
+		if (args.length > 1 && args[0].equals("-file")) {
+			compareInputs(new File(args[1]));
+			return;
+		}
+		if (args.length > 0 && (args[0].equals("-suite") || args[0].equals("-corpus"))) {
+			File dir = new File((args.length > 1) ? args[1] : "bench/corpus");
+			if (args[0].equals("-suite")) {
+				suite(dir);
+			} else {
+				writeCorpus(dir);
+			}
+			return;
+		}
+		if (args.length > 1 && args[0].equals("-binary")) {
+			compareBinary(new File(args[1]));
+			return;
+		}
+		int statements = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		char[] src = ProgramGenerator.generate(statements, new Random(1)).toCharArray();
+		System.out.println("Program of " + statements + " top level statements, " + src.length + " chars");
+
+		long best = Long.MAX_VALUE;
+		int count = 0;
+		for (int run = 0; run < WARMUP + RUNS; run++) {
+			long start = System.nanoTime();
+			Lexer lexer = new Lexer(src);
+			Parser.parseProgram(lexer);
+			long time = System.nanoTime() - start;
+			if (run >= WARMUP) {
+				best = Math.min(best, time);
+			}
+			count = lexer.tokenCount();
+		}
+		System.out.printf("best of %d: %.2f ms, %.1f ns/statement, %.1f ns/token, %.1f MB/s%n", RUNS, best / 1e6,
+				(double) best / statements, (double) best / count, src.length / (best / 1e9) / 1e6);
+	}
+
+	// =======================================================
+	// Benchmark suite
+	// =======================================================
+
+	// the programs of the corpus, smallest first. small is hand-written, the
+	// others are made by writeCorpus
+	private static final String[] CORPUS = { "small", "medium", "huge" };
+	private static final int MEDIUM_STATEMENTS = 200, HUGE_STATEMENTS = 10000;
+
+	// nesting of the production benchmarks, and statements in the block one
+	private static final int NESTING = 200, BLOCK_STATEMENTS = 10000;
+
+	private static final long WARMUP_NANOS = 2000000000L, ITERATION_NANOS = 1000000000L;
+	private static final int ITERATIONS = 5;
+
+	// results are stored here so the JIT can't drop the work that made them
+	static volatile Object sink;
+
+	static void writeCorpus(File dir) throws IOException {
+		dir.mkdirs();
+		Files.write(new File(dir, "medium.prog").toPath(),
+				ProgramGenerator.generate(MEDIUM_STATEMENTS, new Random(2)).getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(dir, "huge.prog").toPath(),
+				ProgramGenerator.generate(HUGE_STATEMENTS, new Random(3)).getBytes(StandardCharsets.UTF_8));
+		System.out.println("Wrote medium.prog and huge.prog to " + dir);
+	}
+
+	static void suite(File dir) throws Exception {
+		List<String> names = new ArrayList<String>();
+		List<Timing.Work> benchmarks = new ArrayList<Timing.Work>();
+		for (String name : CORPUS) {
+			File file = new File(dir, name + ".prog");
+			final char[] src = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).toCharArray();
+			names.add("parseProgram " + name);
+			benchmarks.add(new Timing.Work() {
+				long run() {
+					sink = Parser.parseProgram(new Lexer(src));
+					return 1;
+				}
+			});
+		}
+		final char[] exp = nestedExp(NESTING).toCharArray();
+		names.add("parseEXP nested " + NESTING);
+		benchmarks.add(new Timing.Work() {
+			long run() {
+				sink = new Parser().parseEXP(new Lexer(exp));
+				return 1;
+			}
+		});
+		final char[] cond = nestedCond(NESTING).toCharArray();
+		names.add("parseCOND chain " + NESTING);
+		benchmarks.add(new Timing.Work() {
+			long run() {
+				sink = new Parser().parseCOND(new Lexer(cond));
+				return 1;
+			}
+		});
+		StringBuilder sb = new StringBuilder("{\n");
+		Random rand = new Random(4);
+		for (int i = 0; i < BLOCK_STATEMENTS; i++) {
+			sb.append(ProgramGenerator.ACTIONS[rand.nextInt(ProgramGenerator.ACTIONS.length)]).append('\n');
+		}
+		final char[] block = sb.append('}').toString().toCharArray();
+		names.add("parseBLOCK " + BLOCK_STATEMENTS);
+		benchmarks.add(new Timing.Work() {
+			long run() {
+				sink = new Parser().parseBLOCK(new Lexer(block));
+				return 1;
+			}
+		});
+
+		System.out.printf("%-24s %14s %12s %14s %12s%n", "benchmark", "ops/s", "us/op", "bytes/op", "alloc MB/s");
+		for (int i = 0; i < names.size(); i++) {
+			measure(names.get(i), benchmarks.get(i));
+		}
+	}
+
+	/**
+	 * Warms a benchmark up, then runs it for ITERATIONS timed iterations and
+	 * prints its mean throughput, with the spread between iterations, and the
+	 * bytes it allocates.
+	 */
+	private static void measure(String name, Timing.Work benchmark) {
+		Timing t = Timing.measure(benchmark, WARMUP_NANOS, ITERATION_NANOS, ITERATIONS);
+		System.out.printf("%-24s %14s %12.2f %14d %12.1f%n", name, t.format("%.1f"), t.nanos / 1e3 / t.ops,
+				t.bytes / t.ops, t.bytes / 1e6 / (t.nanos / 1e9));
+	}
+
+	/** add(mul(add(mul(..., 2), 1), 2), 1) nested depth deep */
+	static String nestedExp(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append((i % 2 == 0) ? "add(" : "mul(");
+		}
+		sb.append("fuelLeft");
+		for (int i = depth - 1; i >= 0; i--) {
+			sb.append(", ").append(i % 3).append(')');
+		}
+		return sb.toString();
+	}
+
+	/** and(or(not(and(..., lt(...)), ...) nested depth deep */
+	static String nestedCond(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append((i % 3 == 0) ? "and(" : (i % 3 == 1) ? "or(" : "not(");
+		}
+		sb.append("gt(oppLR, 0)");
+		for (int i = depth - 1; i >= 0; i--) {
+			if (i % 3 != 2) {
+				sb.append(", lt(wallDist, ").append(i).append(')');
+			}
+			sb.append(')');
+		}
+		return sb.toString();
+	}
+
+	// =======================================================
+	// Heap and mapped input
+	// =======================================================
+
+	static void compareInputs(File file) throws IOException {
+		double mb = file.length() / 1e6;
+		System.out.printf("%s: %.1f MB%n", file, mb);
+		for (boolean mapped : new boolean[] { false, true }) {
+			long best = Long.MAX_VALUE;
+			long allocated = 0;
+			for (int run = 0; run < WARMUP + RUNS; run++) {
+				long bytesBefore = Timing.allocatedBytes();
+				long start = System.nanoTime();
+				Lexer lexer;
+				if (mapped) {
+					try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+						lexer = new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+					}
+				} else {
+					char[] src = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).toCharArray();
+					lexer = new Lexer(src);
+				}
+				Parser.parseProgram(lexer);
+				long time = System.nanoTime() - start;
+				if (run >= WARMUP) {
+					best = Math.min(best, time);
+					allocated = Timing.allocatedBytes() - bytesBefore;
+				}
+			}
+			System.out.printf("%-7s best of %d: %.1f ms, %.1f MB/s, %.1f MB allocated per parse%n",
+					mapped ? "mapped" : "heap", RUNS, best / 1e6, mb / (best / 1e9), allocated / 1e6);
+		}
+	}
+
+	// =======================================================
+	// Source and compiled programs
+	// =======================================================
+
+	static void compareBinary(File file) throws IOException {
+		ByteBuffer src = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		RobotProgramNode parsed = Parser.parseProgram(new Lexer(src));
+		ByteBuffer compiled = ByteBuffer.wrap(BinaryProgram.toBytes(parsed));
+		if (!BinaryProgram.read(compiled).toString().equals(parsed.toString())) {
+			System.out.println("compiled program does NOT match the parsed one");
+			System.exit(1);
+		}
+		System.out.printf("%s: %d bytes of source, %d bytes compiled%n", file, src.limit(), compiled.limit());
+		long[] parse = timeLoad(src, false);
+		long[] read = timeLoad(compiled, true);
+		System.out.printf("parse best of %d: %.2f ms, %.1f MB allocated%n", RUNS, parse[0] / 1e6, parse[1] / 1e6);
+		System.out.printf("read  best of %d: %.2f ms, %.1f MB allocated (%.1fx faster, %.1fx less allocation)%n", RUNS,
+				read[0] / 1e6, read[1] / 1e6, (double) parse[0] / read[0], (double) parse[1] / Math.max(1, read[1]));
+	}
+
+	/** The best time and the bytes allocated to load a program */
+	private static long[] timeLoad(ByteBuffer src, boolean compiled) {
+		long best = Long.MAX_VALUE;
+		long allocated = 0;
+		for (int run = 0; run < WARMUP + RUNS; run++) {
+			long bytesBefore = Timing.allocatedBytes();
+			long start = System.nanoTime();
+			if (compiled) {
+				BinaryProgram.read(src);
+			} else {
+				Parser.parseProgram(new Lexer(src));
+			}
+			long time = System.nanoTime() - start;
+			if (run >= WARMUP) {
+				best = Math.min(best, time);
+				allocated = Timing.allocatedBytes() - bytesBefore;
+			}
+		}
+		return new long[] { best, allocated };
+	}
+
+	// =======================================================
+	// Concurrent parsing and running
+	// =======================================================
+
+	/**
+	 * Runs every program once on its own to get its expected history, then
+	 * parses and runs them all again concurrently, twice each: once from a
+	 * private parse and once from a tree shared through a ProgramCache. Every
+	 * concurrent run must produce exactly the expected history.
+	 */
+	static void stress(int programs, int threads) throws Exception {
+		final byte[][] sources = new byte[programs][];
+		final List<List<String>> expected = new ArrayList<List<String>>();
+		PrintStream out = System.out;
+		// tracing every action would swamp the results
+		Trace.setSinks();
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int i = 0; i < programs; i++) {
+				sources[i] = stressProgram(new Random(i)).getBytes(StandardCharsets.UTF_8);
+				expected.add(runHeadless(Parser.parseSource(sources[i])));
+			}
+
+			final ProgramCache cache = new ProgramCache(programs, Long.MAX_VALUE);
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			for (int i = 0; i < programs; i++) {
+				final int n = i;
+				tasks.add(new Callable<Boolean>() {
+					public Boolean call() {
+						return runHeadless(Parser.parseSource(sources[n])).equals(expected.get(n));
+					}
+				});
+				tasks.add(new Callable<Boolean>() {
+					public Boolean call() {
+						return runHeadless(cache.load(sources[n])).equals(expected.get(n));
+					}
+				});
+			}
+			Collections.shuffle(tasks, new Random(42));
+
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			long start = System.nanoTime();
+			int mismatches = 0;
+			for (Future<Boolean> result : pool.invokeAll(tasks)) {
+				if (!result.get()) {
+					mismatches++;
+				}
+			}
+			long time = System.nanoTime() - start;
+			pool.shutdown();
+
+			out.printf("%d concurrent parse+run tasks over %d programs on %d threads in %.1f ms: %s%n", tasks.size(),
+					programs, threads, time / 1e6, (mismatches == 0) ? "all matched" : mismatches + " MISMATCHED");
+			if (mismatches > 0) {
+				System.exit(1);
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	/** Runs a program to completion as the red robot of a headless world */
+	static List<String> runHeadless(RobotProgramNode prog) {
+		World world = new World.RoboGamePrinter();
+		Robot robot = world.getRobot(1);
+		robot.setProgram(prog);
+		robot.run();
+		return robot.getHistory();
+	}
+
+	/**
+	 * Generates a program that always finishes, with variables that are
+	 * declared, reassigned and read throughout.
+	 */
+	static String stressProgram(Random rand) {
+		StringBuilder sb = new StringBuilder();
+		int vars = 0;
+		for (int i = 0; i < 30; i++) {
+			int r = rand.nextInt(6);
+			if (vars == 0 || r < 2) {
+				int v = rand.nextInt(Math.min(vars + 1, 4));
+				sb.append("$v").append(v).append(" = ");
+				if (vars > 0 && rand.nextBoolean()) {
+					sb.append("add($v").append(rand.nextInt(vars)).append(", ").append(rand.nextInt(5) - 2).append(')');
+				} else {
+					sb.append(rand.nextInt(4));
+				}
+				sb.append(";\n");
+				if (v == vars) {
+					vars++;
+				}
+			} else if (r == 2) {
+				sb.append(rand.nextBoolean() ? "move($v" : "wait($v").append(rand.nextInt(vars)).append(");\n");
+			} else if (r == 3) {
+				sb.append("if (gt($v").append(rand.nextInt(vars)).append(", 1)) { turnR; } else { move; }\n");
+			} else {
+				sb.append(ProgramGenerator.ACTIONS[rand.nextInt(ProgramGenerator.ACTIONS.length)]).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//PROG
+class ProgNode implements RobotProgramNode {
+	private ArrayList<RobotProgramNode> STMTNodes;
+	private List<String> variables = Collections.emptyList();
+	private int depth = 1;
+	private volatile int[] costs;
+
+	public ProgNode() {
+		this.STMTNodes = new ArrayList<RobotProgramNode>();
+	}
+
+	/** For readers that know how many statements there will be */
+	public ProgNode(int size) {
+		this.STMTNodes = new ArrayList<RobotProgramNode>(size);
+	}
+
+	/** The names of the variables the program declares, in slot order */
+	public List<String> getVariables() {
+		return variables;
+	}
+
+	public void setVariables(List<String> variables) {
+		this.variables = Collections.unmodifiableList(new ArrayList<String>(variables));
+	}
+
+	public void execute(Robot robot) {
+		// every run of the program has its own variables
+		robot.setFrame(new int[variables.size()]);
+		if (depth > Interpreter.MAX_DEPTH) {
+			Interpreter.execute(this, robot);
+			return;
+		}
+		for (int i = 0; i < this.STMTNodes.size(); i++) {
+			robot.charge(getCost(i));
+			this.STMTNodes.get(i).execute(robot);
+		}
+	}
+
+	public void addNode(RobotProgramNode n) {
+		this.STMTNodes.add(n);
+		depth = Math.max(depth, 1 + n.getDepth());
+		costs = null;
+	}
+
+	public List<RobotProgramNode> getStatements() {
+		return STMTNodes;
+	}
+
+	/** The instructions statement i costs each time it is executed (see Robot.charge) */
+	public int getCost(int i) {
+		int[] costs = this.costs;
+		if (costs == null) {
+			costs = new int[STMTNodes.size()];
+			for (int j = 0; j < costs.length; j++) {
+				costs[j] = Interpreter.cost(STMTNodes.get(j));
+			}
+			this.costs = costs;
+		}
+		return costs[i];
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		String string = "";
+		for (int i = 0; i < this.STMTNodes.size(); i++) {
+			string += this.STMTNodes.get(i).toString() + "\n";
+		}
+		return string;
+	}
+}
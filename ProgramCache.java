@@ -0,0 +1,223 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded least-recently-used cache of parsed robot programs, keyed by a
+ * hash of the program's source. Loading a program whose source has not
+ * changed returns the tree parsed last time without lexing or parsing it
+ * again.
+ *
+ * The trees are shared between every robot that loads the same source, so
+ * nodes must not keep any state while they execute.
+ *
+ * For the World, the cache also keeps each program as it is run: optimized,
+ * checked for barrel sensors, and prepared for each engine that has run it,
+ * so a reset or reload of an unchanged program does none of that again,
+ * and the compiled engine defines no new class for it.
+ */
+public class ProgramCache {
+
+	private final int maxEntries;
+	private final long maxSourceBytes;
+
+	// access ordered, so the eldest entry is the least recently used one
+	private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true);
+	private long sourceBytes;
+	private long hits, misses;
+
+	private static class Entry {
+		final RobotProgramNode program;
+		final int size;
+		// the program as it is run, worked out the first time the World loads it
+		private RobotProgramNode optimized;
+		private String report;
+		private boolean readsBarrels;
+		private final EnumMap<Engine, RobotProgramNode> prepared = new EnumMap<Engine, RobotProgramNode>(Engine.class);
+
+		Entry(RobotProgramNode program, int size) {
+			this.program = program;
+			this.size = size;
+		}
+
+		/** The program as the engine runs it, optimizing and preparing it only the first time */
+		synchronized Program run(Engine engine) {
+			if (optimized == null) {
+				optimized = Optimizer.optimize(program);
+				report = (optimized != program) ? Optimizer.report(program, optimized) : null;
+				readsBarrels = Sensors.readsBarrels(optimized);
+			}
+			RobotProgramNode prog = prepared.get(engine);
+			if (prog == null) {
+				prog = engine.prepare(optimized);
+				prepared.put(engine, prog);
+			}
+			return new Program(program, optimized, report, prog, readsBarrels);
+		}
+	}
+
+	/** A program as the World runs it */
+	public static final class Program {
+		/** The program as it was parsed */
+		public final RobotProgramNode parsed;
+		/** The program after Optimizer.optimize, which the World steps through */
+		public final RobotProgramNode optimized;
+		/** Optimizer.report on the optimization, or null if it changed nothing */
+		public final String report;
+		/** The optimized program as the robot's engine runs it (see Engine.prepare) */
+		public final RobotProgramNode prepared;
+		/** Whether the program reads the barrel sensors (see Sensors.readsBarrels) */
+		public final boolean readsBarrels;
+
+		private Program(RobotProgramNode parsed, RobotProgramNode optimized, String report, RobotProgramNode prepared,
+				boolean readsBarrels) {
+			this.parsed = parsed;
+			this.optimized = optimized;
+			this.report = report;
+			this.prepared = prepared;
+			this.readsBarrels = readsBarrels;
+		}
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the most programs the cache will hold
+	 * @param maxSourceBytes
+	 *            the most source, summed over all cached programs, the cache
+	 *            will hold. Used as a stand-in for the size of the trees.
+	 */
+	public ProgramCache(int maxEntries, long maxSourceBytes) {
+		this.maxEntries = maxEntries;
+		this.maxSourceBytes = maxSourceBytes;
+	}
+
+	/**
+	 * Returns the program in the given file, parsing it only if a program with
+	 * the same source is not already cached. Returns null if the file cannot
+	 * be read or the program is not valid.
+	 */
+	public RobotProgramNode load(File code) {
+		ByteBuffer src = read(code);
+		return (src != null) ? load(src) : null;
+	}
+
+	/**
+	 * Returns the program in the given file as the engine runs it, parsing,
+	 * optimizing and preparing it only if a program with the same source has
+	 * not already been made ready for that engine. Returns null if the file
+	 * cannot be read or the program is not valid.
+	 */
+	public Program load(File code, Engine engine) {
+		ByteBuffer src = read(code);
+		Entry entry = (src != null) ? entry(src) : null;
+		return (entry != null) ? entry.run(engine) : null;
+	}
+
+	private static ByteBuffer read(File code) {
+		try {
+			return Parser.readSource(code);
+		} catch (NoSuchFileException e) {
+			System.out.println("Robot program source file not found");
+		} catch (IOException e) {
+			System.out.println("Robot program source file could not be read");
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the program with the given source, parsing it only if it is not
+	 * already cached.
+	 */
+	public RobotProgramNode load(byte[] src) {
+		return load(ByteBuffer.wrap(src));
+	}
+
+	/**
+	 * Returns the program with the given source, which may be a mapped file,
+	 * parsing it only if it is not already cached.
+	 */
+	public RobotProgramNode load(ByteBuffer src) {
+		Entry entry = entry(src);
+		return (entry != null) ? entry.program : null;
+	}
+
+	/** The entry for the given source, parsing it if it is not cached, or null if it is not valid */
+	private Entry entry(ByteBuffer src) {
+		ByteBuffer key = hash(src);
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+				return entry;
+			}
+			misses++;
+		}
+		// parse outside the lock, so loads of different programs don't wait for each other
+		RobotProgramNode prog = Parser.parseSource(src);
+		if (prog == null) {
+			return null;
+		}
+		Entry entry = new Entry(prog, src.limit());
+		put(key, entry);
+		return entry;
+	}
+
+	private synchronized void put(ByteBuffer key, Entry entry) {
+		if (entry.size > maxSourceBytes) {
+			return;
+		}
+		Entry old = entries.put(key, entry);
+		if (old != null) {
+			sourceBytes -= old.size;
+		}
+		sourceBytes += entry.size;
+		Iterator<Map.Entry<ByteBuffer, Entry>> it = entries.entrySet().iterator();
+		while (entries.size() > maxEntries || sourceBytes > maxSourceBytes) {
+			Entry eldest = it.next().getValue();
+			it.remove();
+			sourceBytes -= eldest.size;
+		}
+	}
+
+	private static ByteBuffer hash(ByteBuffer src) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(src.duplicate());
+			return ByteBuffer.wrap(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** The number of loads that were answered from the cache */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** The number of loads that had to parse the program */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** The number of programs currently cached */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		sourceBytes = 0;
+	}
+
+	public synchronized String toString() {
+		return "program cache: " + entries.size() + " programs, " + hits + " hits, " + misses + " misses";
+	}
+}
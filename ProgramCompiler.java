@@ -0,0 +1,730 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Compiles a parsed robot program into a class of its own, so that the JIT
+ * sees the whole program as ordinary code calling the Robot, instead of a
+ * chain of virtual calls through the nodes, and can inline it.
+ *
+ * The class is written out as bytes and defined as a hidden class that
+ * implements RobotProgramNode, so it can be used wherever the tree can.
+ * Variables are read and written straight from the robot's frame. Nodes the
+ * compiler does not handle are called back through arrays of nodes held in
+ * static fields of the class, and so are expressions shared between several
+ * places, which keeps the code the size of the tree. Blocks with a lot of code are moved into methods
+ * of their own to keep every method well under the JVM's limits.
+ *
+ * The class file has version 49, which does not need StackMapTable frames.
+ * A program that is too deep or too big to compile, or that fails to compile
+ * for any other reason, is left as a tree and run by the nodes.
+ */
+public class ProgramCompiler {
+
+	// code bigger than this is moved into a method of its own
+	private static final int OUTLINE_SIZE = 4000;
+	// the biggest method, so that every branch offset fits in 16 bits
+	private static final int MAX_METHOD_SIZE = Short.MAX_VALUE;
+
+	private static final String NAME = "CompiledRobotProgram";
+	private static final String ROBOT = "Robot", SENSORS = "Sensors", RUN = "(LRobot;)V";
+
+	/**
+	 * Compiles the program, or returns it unchanged if it can't be compiled.
+	 */
+	public static RobotProgramNode compile(RobotProgramNode prog) {
+		if (prog.getDepth() > Interpreter.MAX_DEPTH) {
+			// the compiler recurses through the tree
+			System.out.println("Robot program is too deeply nested to compile, so it will be interpreted");
+			return prog;
+		}
+		try {
+			ProgramCompiler compiler = new ProgramCompiler();
+			byte[] bytes = compiler.generate(prog);
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			Class<?> c = lookup.lookupClass();
+			lookup.findStaticSetter(c, "S", RobotProgramNode[].class)
+					.invoke(compiler.statements.toArray(new RobotProgramNode[0]));
+			lookup.findStaticSetter(c, "E", EXPNode[].class).invoke(compiler.expressions.toArray(new EXPNode[0]));
+			lookup.findStaticSetter(c, "C", CONDNode[].class).invoke(compiler.conditions.toArray(new CONDNode[0]));
+			return (RobotProgramNode) lookup.findConstructor(c, MethodType.methodType(void.class)).invoke();
+		} catch (Throwable e) {
+			System.out.println("Robot program could not be compiled (" + e + "), so it will be interpreted");
+			return prog;
+		}
+	}
+
+	/** Thrown when the program would make a class the JVM can't load */
+	static class TooBigException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		TooBigException(String message) {
+			super(message);
+		}
+	}
+
+	// the nodes called back by the compiled code, in the static fields S, E and C
+	private final List<RobotProgramNode> statements = new ArrayList<RobotProgramNode>();
+	private final List<EXPNode> expressions = new ArrayList<EXPNode>();
+	private final List<CONDNode> conditions = new ArrayList<CONDNode>();
+
+	// expressions that have been compiled once, so the next use calls them back
+	private final IdentityHashMap<EXPNode, Boolean> compiled = new IdentityHashMap<EXPNode, Boolean>();
+
+	private final ConstantPool pool = new ConstantPool();
+	private final List<Method> methods = new ArrayList<Method>();
+
+	private static class Method {
+		final int access;
+		final String name, descriptor;
+		final Code code;
+
+		Method(int access, String name, String descriptor, Code code) {
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.code = code;
+		}
+	}
+
+	// =======================================================
+	// The program
+	// =======================================================
+
+	private byte[] generate(RobotProgramNode prog) throws IOException {
+		// static void run(Robot robot): the program. Every method that holds
+		// statements has the robot in local 0.
+		Code run = new Code();
+		if (prog instanceof ProgNode) {
+			// every run of the program has its own variables, as in ProgNode
+			run.op(ALOAD_0, 1);
+			run.constant(((ProgNode) prog).getVariables().size());
+			run.op(NEWARRAY, 0);
+			run.u1(T_INT);
+			run.invoke(INVOKEVIRTUAL, ROBOT, "setFrame", "([I)V", -2);
+			run.append(statements(prog));
+		} else {
+			run.append(statement(prog));
+		}
+		run.op(RETURN, 0);
+		methods.add(new Method(ACC_STATIC, "run", RUN, run));
+
+		// public void execute(Robot robot) { run(robot); }
+		Code execute = new Code();
+		execute.op(ALOAD_1, 1);
+		execute.invoke(INVOKESTATIC, NAME, "run", RUN, -1);
+		execute.op(RETURN, 0);
+		methods.add(new Method(ACC_PUBLIC, "execute", RUN, execute));
+
+		Code init = new Code();
+		init.op(ALOAD_0, 1);
+		init.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", -1);
+		init.op(RETURN, 0);
+		methods.add(new Method(ACC_PUBLIC, "<init>", "()V", init));
+
+		return classFile();
+	}
+
+	// =======================================================
+	// Statements
+	// =======================================================
+
+	/** The statements of a program or block, each charged for as it is executed */
+	private Code statements(RobotProgramNode owner) {
+		boolean block = owner instanceof BlockNode;
+		List<RobotProgramNode> list = block ? ((BlockNode) owner).getStatements()
+				: ((ProgNode) owner).getStatements();
+		List<Code> pieces = new ArrayList<Code>();
+		int size = 0;
+		for (int i = 0; i < list.size(); i++) {
+			Code piece = new Code();
+			charge(piece, block ? ((BlockNode) owner).getCost(i) : ((ProgNode) owner).getCost(i));
+			piece.append(statement(list.get(i)));
+			pieces.add(piece);
+			size += piece.length;
+		}
+		Code code = new Code();
+		if (size <= OUTLINE_SIZE) {
+			for (Code piece : pieces) {
+				code.append(piece);
+			}
+			return code;
+		}
+		// too big to inline, so call chunks of it as methods of their own
+		Code chunk = new Code();
+		for (Code piece : pieces) {
+			if (chunk.length > 0 && chunk.length + piece.length > OUTLINE_SIZE) {
+				code.append(outline(chunk));
+				chunk = new Code();
+			}
+			chunk.append(piece);
+		}
+		code.append(outline(chunk));
+		return code;
+	}
+
+	/** Moves the code into a new method, and returns the code that calls it */
+	private Code outline(Code body) {
+		body.op(RETURN, 0);
+		String name = "b" + methods.size();
+		methods.add(new Method(ACC_STATIC, name, RUN, body));
+		Code call = new Code();
+		call.op(ALOAD_0, 1);
+		call.invoke(INVOKESTATIC, NAME, name, RUN, -1);
+		return call;
+	}
+
+	private Code outlineIfBig(Code code) {
+		return (code.length > OUTLINE_SIZE) ? outline(code) : code;
+	}
+
+	private Code statement(RobotProgramNode node) {
+		Code code = new Code();
+		if (node instanceof StmtNode) {
+			code.append(statement(((StmtNode) node).getNode()));
+		} else if (node instanceof BlockNode) {
+			code.append(outlineIfBig(statements(node)));
+		} else if (node instanceof LoopNode) {
+			Label top = code.here();
+			charge(code, LoopNode.ROUND_COST);
+			code.append(statement(((LoopNode) node).getBlock()));
+			code.jump(GOTO, top, 0);
+		} else if (node instanceof WhileNode) {
+			WhileNode n = (WhileNode) node;
+			Label top = code.here();
+			Label end = new Label();
+			charge(code, n.getCost());
+			condition(code, n.getCondition(), end, false);
+			code.append(statement(n.getBlock()));
+			code.jump(GOTO, top, 0);
+			code.bind(end);
+		} else if (node instanceof IfNode) {
+			// the same choice as IfNode.execute: only the first elif is tried
+			IfNode n = (IfNode) node;
+			Label otherwise = new Label();
+			Label end = new Label();
+			condition(code, n.getCondition(), otherwise, false);
+			code.append(statement(n.getBlock()));
+			code.jump(GOTO, end, 0);
+			code.bind(otherwise);
+			if (!n.getElifs().isEmpty()) {
+				charge(code, n.getElifs().get(0).getCost());
+				code.append(outlineIfBig(statement(n.getElifs().get(0))));
+			} else if (n.getElseBlock() != null) {
+				code.append(statement(n.getElseBlock()));
+			}
+			code.bind(end);
+		} else if (node instanceof MoveNode) {
+			repeat(code, ((MoveNode) node).getExpression(), "move");
+		} else if (node instanceof WaitNode) {
+			repeat(code, ((WaitNode) node).getExpression(), "idleWait");
+		} else if (node instanceof TurnLNode) {
+			action(code, "turnLeft");
+		} else if (node instanceof TurnRNode) {
+			action(code, "turnRight");
+		} else if (node instanceof TurnAroundNode) {
+			action(code, "turnAround");
+		} else if (node instanceof TakeFuelNode) {
+			action(code, "takeFuel");
+		} else if (node instanceof ASSGNNode) {
+			// robot.getFrame()[slot] = value
+			ASSGNNode n = (ASSGNNode) node;
+			frame(code);
+			code.constant(n.getSlot());
+			expression(code, n.getExpression());
+			code.op(IASTORE, -3);
+		} else if (node instanceof ShieldOnNode || node instanceof ShieldOffNode) {
+			code.op(ALOAD_0, 1);
+			code.op((node instanceof ShieldOnNode) ? ICONST_1 : ICONST_0, 1);
+			code.invoke(INVOKEVIRTUAL, ROBOT, "setShield", "(Z)V", -2);
+		} else {
+			// S[i].execute(robot)
+			code.field(GETSTATIC, NAME, "S", "[LRobotProgramNode;", 1);
+			code.constant(statements.size());
+			statements.add(node);
+			code.op(AALOAD, -1);
+			code.op(ALOAD_0, 1);
+			code.invokeInterface("RobotProgramNode", "execute", RUN, 2, -2);
+		}
+		return code;
+	}
+
+	private void action(Code code, String method) {
+		code.op(ALOAD_0, 1);
+		code.invoke(INVOKEVIRTUAL, ROBOT, method, "()V", -1);
+	}
+
+	/** robot.charge(cost), as the nodes do */
+	private void charge(Code code, int cost) {
+		if (cost == 0) {
+			return;
+		}
+		code.op(ALOAD_0, 1);
+		code.constant(cost);
+		code.invoke(INVOKEVIRTUAL, ROBOT, "charge", "(I)V", -2);
+	}
+
+	/** Calls the action once, or the action that takes a count if there is one */
+	private void repeat(Code code, EXPNode count, String method) {
+		if (count == null) {
+			action(code, method);
+			return;
+		}
+		// robot.method(count)
+		code.op(ALOAD_0, 1);
+		expression(code, count);
+		code.invoke(INVOKEVIRTUAL, ROBOT, method, "(I)V", -2);
+	}
+
+	// =======================================================
+	// Conditions
+	// =======================================================
+
+	/**
+	 * Jumps to the target if the condition's value is jumpWhen, and otherwise
+	 * carries on. and and or only evaluate their second condition when they
+	 * need to, as the nodes do.
+	 */
+	private void condition(Code code, CONDNode node, Label target, boolean jumpWhen) {
+		if (node instanceof ConditionNode) {
+			condition(code, ((ConditionNode) node).getCondition(), target, jumpWhen);
+		} else if (node instanceof NotNode) {
+			condition(code, ((NotNode) node).getCondition(), target, !jumpWhen);
+		} else if (node instanceof AndNode || node instanceof OrNode) {
+			boolean and = node instanceof AndNode;
+			CONDNode left = and ? ((AndNode) node).getLeft() : ((OrNode) node).getLeft();
+			CONDNode right = and ? ((AndNode) node).getRight() : ((OrNode) node).getRight();
+			int rightCost = and ? ((AndNode) node).getRightCost() : ((OrNode) node).getRightCost();
+			if (jumpWhen != and) {
+				// and jumping when false, or or jumping when true: either side decides
+				condition(code, left, target, jumpWhen);
+				charge(code, rightCost);
+				condition(code, right, target, jumpWhen);
+			} else {
+				Label skip = new Label();
+				condition(code, left, skip, !jumpWhen);
+				charge(code, rightCost);
+				condition(code, right, target, jumpWhen);
+				code.bind(skip);
+			}
+		} else if (node instanceof LessThanNode) {
+			expression(code, ((LessThanNode) node).getLeft());
+			expression(code, ((LessThanNode) node).getRight());
+			code.jump(jumpWhen ? IF_ICMPLT : IF_ICMPGE, target, -2);
+		} else if (node instanceof GreaterThanNode) {
+			expression(code, ((GreaterThanNode) node).getLeft());
+			expression(code, ((GreaterThanNode) node).getRight());
+			code.jump(jumpWhen ? IF_ICMPGT : IF_ICMPLE, target, -2);
+		} else if (node instanceof EqualToNode) {
+			expression(code, ((EqualToNode) node).getLeft());
+			expression(code, ((EqualToNode) node).getRight());
+			code.jump(jumpWhen ? IF_ICMPEQ : IF_ICMPNE, target, -2);
+		} else {
+			// C[i].evaluate(robot)
+			code.field(GETSTATIC, NAME, "C", "[LCONDNode;", 1);
+			code.constant(conditions.size());
+			conditions.add(node);
+			code.op(AALOAD, -1);
+			code.op(ALOAD_0, 1);
+			code.invokeInterface("CONDNode", "evaluate", "(LRobot;)Z", 2, -1);
+			code.jump(jumpWhen ? IFNE : IFEQ, target, -1);
+		}
+	}
+
+	// =======================================================
+	// Expressions
+	// =======================================================
+
+	/** Pushes the value of the expression */
+	private void expression(Code code, EXPNode node) {
+		if (node instanceof NumNode) {
+			code.constant(((NumNode) node).getValue());
+			return;
+		}
+		if (node instanceof VarNode) {
+			frame(code);
+			code.constant(((VarNode) node).getSlot());
+			code.op(IALOAD, -1);
+			return;
+		}
+		if (sensor(code, node)) {
+			return;
+		}
+		boolean operator = node instanceof AddNode || node instanceof SubNode || node instanceof MulNode
+				|| node instanceof DivNode;
+		if (operator && compiled.put(node, Boolean.TRUE) == null) {
+			if (node instanceof AddNode) {
+				binary(code, ((AddNode) node).getLeft(), ((AddNode) node).getRight(), IADD);
+			} else if (node instanceof SubNode) {
+				binary(code, ((SubNode) node).getLeft(), ((SubNode) node).getRight(), ISUB);
+			} else if (node instanceof MulNode) {
+				binary(code, ((MulNode) node).getLeft(), ((MulNode) node).getRight(), IMUL);
+			} else {
+				binary(code, ((DivNode) node).getLeft(), ((DivNode) node).getRight(), IDIV);
+			}
+			return;
+		}
+		// E[i].evaluate(robot)
+		code.field(GETSTATIC, NAME, "E", "[LEXPNode;", 1);
+		code.constant(expressions.size());
+		expressions.add(node);
+		code.op(AALOAD, -1);
+		code.op(ALOAD_0, 1);
+		code.invokeInterface("EXPNode", "evaluate", "(LRobot;)I", 2, 0);
+	}
+
+	/** Pushes the robot's frame of variables */
+	private void frame(Code code) {
+		code.op(ALOAD_0, 1);
+		code.invoke(INVOKEVIRTUAL, ROBOT, "getFrame", "()[I", 0);
+	}
+
+	private void binary(Code code, EXPNode left, EXPNode right, int opcode) {
+		expression(code, left);
+		expression(code, right);
+		code.op(opcode, -1);
+	}
+
+	/** Pushes the value of a sensor, returning false if node isn't one */
+	private boolean sensor(Code code, EXPNode node) {
+		String field = null, method = null;
+		// barrelLR and barrelFB take the number of the barrel
+		boolean numbered = false;
+		EXPNode argument = null;
+		if (node instanceof FuelLeftNode) {
+			method = "fuel";
+		} else if (node instanceof OppLRNode) {
+			method = "oppLR";
+		} else if (node instanceof OppFBNode) {
+			method = "oppFB";
+		} else if (node instanceof WallDistNode) {
+			field = "wallDist";
+		} else if (node instanceof NumBarrelsNode) {
+			method = "numBarrels";
+		} else if (node instanceof BarrelLRNode) {
+			argument = ((BarrelLRNode) node).getExpression();
+			method = "barrelLR";
+			numbered = true;
+		} else if (node instanceof BarrelFBNode) {
+			argument = ((BarrelFBNode) node).getExpression();
+			method = "barrelFB";
+			numbered = true;
+		} else {
+			return false;
+		}
+		if (field != null) {
+			sensors(code);
+			code.field(GETFIELD, SENSORS, field, "I", 0);
+		} else if (!numbered) {
+			sensors(code);
+			code.invoke(INVOKEVIRTUAL, SENSORS, method, "()I", 0);
+		} else {
+			// the barrel number is worked out before the robot is asked, as in the nodes
+			if (argument == null) {
+				code.constant(0);
+			} else {
+				expression(code, argument);
+			}
+			sensors(code);
+			code.op(SWAP, 0);
+			code.invoke(INVOKEVIRTUAL, SENSORS, method, "(I)I", -1);
+		}
+		return true;
+	}
+
+	/** Pushes the robot's sensor readings */
+	private void sensors(Code code) {
+		code.op(ALOAD_0, 1);
+		code.invoke(INVOKEVIRTUAL, ROBOT, "sense", "()LSensors;", 0);
+	}
+
+	// =======================================================
+	// Class file
+	// =======================================================
+
+	private static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+	private static final int ICONST_M1 = 0x02, ICONST_0 = 0x03, ICONST_1 = 0x04, BIPUSH = 0x10, SIPUSH = 0x11,
+			LDC = 0x12, LDC_W = 0x13, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, IALOAD = 0x2e, AALOAD = 0x32, IASTORE = 0x4f,
+			SWAP = 0x5f, IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, IFEQ = 0x99, IFNE = 0x9a, IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0,
+			IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7, RETURN = 0xb1,
+			GETSTATIC = 0xb2, GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+			INVOKEINTERFACE = 0xb9, NEWARRAY = 0xbc;
+	// the array type of NEWARRAY
+	private static final int T_INT = 10;
+
+	private byte[] classFile() throws IOException {
+		int thisClass = pool.classRef(NAME);
+		int superClass = pool.classRef("java/lang/Object");
+		int programNode = pool.classRef("RobotProgramNode");
+		String[][] fields = { { "S", "[LRobotProgramNode;" }, { "E", "[LEXPNode;" }, { "C", "[LCONDNode;" } };
+		int[][] fieldNames = new int[fields.length][];
+		for (int i = 0; i < fields.length; i++) {
+			fieldNames[i] = new int[] { pool.utf8(fields[i][0]), pool.utf8(fields[i][1]) };
+		}
+		int codeName = pool.utf8("Code");
+		int[][] methodNames = new int[methods.size()][];
+		for (int i = 0; i < methods.size(); i++) {
+			Method m = methods.get(i);
+			if (m.code.length > MAX_METHOD_SIZE) {
+				throw new TooBigException("method of " + m.code.length + " bytes");
+			}
+			methodNames[i] = new int[] { pool.utf8(m.name), pool.utf8(m.descriptor) };
+		}
+		if (pool.size() > 0xFFFF) {
+			throw new TooBigException("constant pool of " + pool.size() + " entries");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49);
+		pool.writeTo(out);
+		out.writeShort(ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(programNode);
+		out.writeShort(fields.length);
+		for (int[] names : fieldNames) {
+			out.writeShort(ACC_STATIC);
+			out.writeShort(names[0]);
+			out.writeShort(names[1]);
+			out.writeShort(0);
+		}
+		out.writeShort(methods.size());
+		for (int i = 0; i < methods.size(); i++) {
+			Method m = methods.get(i);
+			out.writeShort(m.access);
+			out.writeShort(methodNames[i][0]);
+			out.writeShort(methodNames[i][1]);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + m.code.length);
+			out.writeShort(m.code.maxStack);
+			out.writeShort(2);
+			out.writeInt(m.code.length);
+			out.write(m.code.buf, 0, m.code.length);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+		out.writeShort(0);
+		return bytes.toByteArray();
+	}
+
+	/** The constant pool of the class, with each constant added only once */
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+		private int count = 1;
+
+		int size() {
+			return count;
+		}
+
+		int utf8(String s) {
+			Integer index = indexes.get("U" + s);
+			if (index == null) {
+				index = add("U" + s);
+				write(1, s);
+			}
+			return index;
+		}
+
+		int integer(int value) {
+			Integer index = indexes.get("I" + value);
+			if (index == null) {
+				index = add("I" + value);
+				try {
+					out.writeByte(3);
+					out.writeInt(value);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return index;
+		}
+
+		int classRef(String name) {
+			return ref("C", 7, utf8(name), -1);
+		}
+
+		int member(int tag, String owner, String name, String descriptor) {
+			int nameAndType = ref("N", 12, utf8(name), utf8(descriptor));
+			return ref("M" + tag, tag, classRef(owner), nameAndType);
+		}
+
+		/** A constant made of one or two other constants */
+		private int ref(String kind, int tag, int first, int second) {
+			String key = kind + first + "," + second;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				index = add(key);
+				try {
+					out.writeByte(tag);
+					out.writeShort(first);
+					if (second >= 0) {
+						out.writeShort(second);
+					}
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return index;
+		}
+
+		private int add(String key) {
+			int index = count++;
+			indexes.put(key, index);
+			return index;
+		}
+
+		private void write(int tag, String s) {
+			try {
+				out.writeByte(tag);
+				out.writeUTF(s);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void writeTo(DataOutputStream file) throws IOException {
+			file.writeShort(count);
+			bytes.writeTo(file);
+		}
+	}
+
+	/** A place in the code that branches can jump to */
+	private static class Label {
+		int pos = -1;
+		// the branch instructions waiting for the label to be bound
+		int[] branches = new int[2];
+		int count;
+	}
+
+	/**
+	 * A piece of bytecode. Branches are relative, so a finished piece can be
+	 * appended to any other piece, as long as all its labels are bound.
+	 */
+	private class Code {
+		byte[] buf = new byte[32];
+		int length;
+		int stack, maxStack;
+
+		private void u1(int b) {
+			if (length == buf.length) {
+				buf = Arrays.copyOf(buf, length * 2);
+			}
+			buf[length++] = (byte) b;
+		}
+
+		private void u2(int v) {
+			u1(v >> 8);
+			u1(v);
+		}
+
+		private void adjust(int change) {
+			stack += change;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		void op(int opcode, int change) {
+			u1(opcode);
+			adjust(change);
+		}
+
+		void constant(int value) {
+			if (value >= -1 && value <= 5) {
+				op(ICONST_0 + value, 1);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(BIPUSH, 1);
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				op(SIPUSH, 1);
+				u2(value);
+			} else {
+				int index = pool.integer(value);
+				if (index < 256) {
+					op(LDC, 1);
+					u1(index);
+				} else {
+					op(LDC_W, 1);
+					u2(index);
+				}
+			}
+		}
+
+		void field(int opcode, String owner, String name, String descriptor, int change) {
+			op(opcode, change);
+			u2(pool.member(9, owner, name, descriptor));
+		}
+
+		void invoke(int opcode, String owner, String name, String descriptor, int change) {
+			op(opcode, change);
+			u2(pool.member(10, owner, name, descriptor));
+		}
+
+		void invokeInterface(String owner, String name, String descriptor, int slots, int change) {
+			op(INVOKEINTERFACE, change);
+			u2(pool.member(11, owner, name, descriptor));
+			u1(slots);
+			u1(0);
+		}
+
+		Label here() {
+			Label label = new Label();
+			bind(label);
+			return label;
+		}
+
+		void jump(int opcode, Label label, int change) {
+			int pos = length;
+			op(opcode, change);
+			u2(0);
+			if (label.pos >= 0) {
+				patch(pos, label.pos);
+			} else {
+				if (label.count == label.branches.length) {
+					label.branches = Arrays.copyOf(label.branches, label.count * 2);
+				}
+				label.branches[label.count++] = pos;
+			}
+		}
+
+		void bind(Label label) {
+			label.pos = length;
+			for (int i = 0; i < label.count; i++) {
+				patch(label.branches[i], length);
+			}
+			label.count = 0;
+		}
+
+		private void patch(int branch, int target) {
+			int offset = target - branch;
+			if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+				throw new TooBigException("branch of " + offset + " bytes");
+			}
+			buf[branch + 1] = (byte) (offset >> 8);
+			buf[branch + 2] = (byte) offset;
+		}
+
+		void append(Code piece) {
+			maxStack = Math.max(maxStack, stack + piece.maxStack);
+			if (length + piece.length > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + piece.length));
+			}
+			System.arraycopy(piece.buf, 0, buf, length, piece.length);
+			length += piece.length;
+			stack += piece.stack;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+import java.util.Random;
+
+/**
+ * Generates random, valid robot programs, for Conformance to run on every
+ * engine and ParserBenchmark to parse. Every loop takes an action each time
+ * around, so a program that is stopped after a number of actions always
+ * stops.
+ */
+final class ProgramGenerator {
+
+	static final String[] ACTIONS = { "move;", "turnL;", "turnR;", "takeFuel;", "wait;", "shieldOn;",
+			"shieldOff;", "turnAround;" };
+	private static final String[] SENSORS = { "fuelLeft", "oppLR", "oppFB", "numBarrels", "wallDist", "barrelLR",
+			"barrelFB" };
+	private static final String[] OPS = { "add", "sub", "mul", "div" };
+	private static final String[] RELOPS = { "lt", "gt", "eq" };
+
+	/**
+	 * Generates a program of the given number of top level statements, using
+	 * every kind of statement and expression, including variables.
+	 */
+	static String generate(int statements, Random rand) {
+		StringBuilder sb = new StringBuilder();
+		int[] vars = { 0 };
+		for (int i = statements; i > 0; i--) {
+			stmt(sb, 0, vars, rand);
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void stmt(StringBuilder sb, int depth, int[] vars, Random rand) {
+		int r = rand.nextInt(10);
+		if (depth > 2 || r < 3) {
+			if (rand.nextInt(3) == 0) {
+				sb.append(rand.nextBoolean() ? "move(" : "wait(");
+				exp(sb, 0, vars[0], rand);
+				sb.append(");");
+			} else {
+				sb.append(ACTIONS[rand.nextInt(ACTIONS.length)]);
+			}
+		} else if (r < 5 && rand.nextInt(4) == 0) {
+			// read several sensors at once, into new variables or ones already declared
+			sb.append("sense(");
+			int declared = vars[0];
+			for (int i = 1 + rand.nextInt(3); i > 0; i--) {
+				int v = rand.nextInt(vars[0] + 1);
+				String sensor = SENSORS[rand.nextInt(SENSORS.length)];
+				sb.append("$v").append(v).append(" = ").append(sensor);
+				if (sensor.startsWith("barrel") && rand.nextBoolean()) {
+					sb.append('(');
+					exp(sb, 1, declared, rand);
+					sb.append(')');
+				}
+				sb.append((i > 1) ? ", " : ");");
+				vars[0] = Math.max(vars[0], v + 1);
+			}
+		} else if (r < 5) {
+			// assign to a new variable, or to one already declared
+			int v = rand.nextInt(vars[0] + 1);
+			sb.append("$v").append(v).append(" = ");
+			exp(sb, 0, vars[0], rand);
+			sb.append(';');
+			vars[0] = Math.max(vars[0], v + 1);
+		} else if (r < 7) {
+			sb.append("if (");
+			cond(sb, 0, vars[0], rand);
+			sb.append(") ");
+			block(sb, depth, vars, rand, false);
+			for (int i = rand.nextInt(3); i > 0; i--) {
+				sb.append(" elif (");
+				cond(sb, 0, vars[0], rand);
+				sb.append(") ");
+				block(sb, depth, vars, rand, false);
+			}
+			if (rand.nextBoolean()) {
+				sb.append(" else ");
+				block(sb, depth, vars, rand, false);
+			}
+		} else if (r < 9) {
+			sb.append("while (");
+			cond(sb, 0, vars[0], rand);
+			sb.append(") ");
+			block(sb, depth, vars, rand, true);
+		} else {
+			sb.append("loop ");
+			block(sb, depth, vars, rand, true);
+		}
+	}
+
+	private static void block(StringBuilder sb, int depth, int[] vars, Random rand, boolean loop) {
+		sb.append("{ ");
+		for (int i = 1 + rand.nextInt(3); i > 0; i--) {
+			stmt(sb, depth + 1, vars, rand);
+			sb.append(' ');
+		}
+		if (loop) {
+			sb.append(ACTIONS[rand.nextInt(ACTIONS.length)]).append(' ');
+		}
+		sb.append('}');
+	}
+
+	private static void exp(StringBuilder sb, int depth, int vars, Random rand) {
+		int r = rand.nextInt(10);
+		if (depth > 3 || r < 3) {
+			sb.append(rand.nextInt(21) - 10);
+		} else if (r < 5 && vars > 0) {
+			sb.append("$v").append(rand.nextInt(vars));
+		} else if (r < 7) {
+			String sensor = SENSORS[rand.nextInt(SENSORS.length)];
+			sb.append(sensor);
+			if (sensor.startsWith("barrel") && rand.nextBoolean()) {
+				sb.append('(');
+				exp(sb, depth + 1, vars, rand);
+				sb.append(')');
+			}
+		} else {
+			sb.append(OPS[rand.nextInt(OPS.length)]).append('(');
+			exp(sb, depth + 1, vars, rand);
+			sb.append(", ");
+			exp(sb, depth + 1, vars, rand);
+			sb.append(')');
+		}
+	}
+
+	private static void cond(StringBuilder sb, int depth, int vars, Random rand) {
+		int r = rand.nextInt(10);
+		if (depth > 2 || r < 5) {
+			sb.append(RELOPS[rand.nextInt(RELOPS.length)]).append('(');
+			exp(sb, 0, vars, rand);
+			sb.append(", ");
+			exp(sb, 0, vars, rand);
+			sb.append(')');
+		} else if (r < 7) {
+			sb.append("not(");
+			cond(sb, depth + 1, vars, rand);
+			sb.append(')');
+		} else {
+			sb.append(rand.nextBoolean() ? "and(" : "or(");
+			cond(sb, depth + 1, vars, rand);
+			sb.append(", ");
+			cond(sb, depth + 1, vars, rand);
+			sb.append(')');
+		}
+	}
+}
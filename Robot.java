@@ -1,16 +1,15 @@
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.imageio.ImageIO;
 
@@ -27,37 +26,58 @@ public class Robot {
 	 * Move forward one step.
 	 */
 	public void move() {
-		debug("move");
+		startMove();
+		processFuelAndBlock(false);
+		readState();
+	}
+
+	/**
+	 * Move forward the given number of steps, exactly as that many calls to
+	 * move() would. Without the GUI, the robot only works out its sensors
+	 * again after the last step, since nothing can read them in between.
+	 */
+	public void move(int steps) {
+		for (int i = 0; i < steps; i++) {
+			startMove();
+			processFuelAndBlock(i < steps - 1);
+			readState();
+		}
+	}
+
+	private void startMove() {
+		debug(TraceEvent.Type.MOVE, 0, 0);
 		currentAction = ACTION_MOVE;
+		int toX = targetX, toY = targetY;
 		if (dir == DIRECTION.NORTH)
-			targetY -= 1;
+			toY -= 1;
 		else if (dir == DIRECTION.WEST)
-			targetX -= 1;
+			toX -= 1;
 		else if (dir == DIRECTION.SOUTH)
-			targetY += 1;
+			toY += 1;
 		else
-			targetX += 1;
-		targetX = Math.max(0, targetX);
-		targetY = Math.max(0, targetY);
-		targetX = Math.min(11, targetX);
-		targetY = Math.min(11, targetY);
-		Robot other = world.getOtherRobot(this);
-		if (other != null) {
-			if (other.targetX == targetX && other.targetY == targetY) {
-				// not allowed to move
-				targetX = x;
-				targetY = y;
-			}
+			toX += 1;
+		toX = Math.max(0, toX);
+		toY = Math.max(0, toY);
+		toX = Math.min(world.getWidth() - 1, toX);
+		toY = Math.min(world.getHeight() - 1, toY);
+		// not allowed to move if another robot is moving there or staying there
+		if (world.claim(targetX, targetY, toX, toY)) {
+			targetX = toX;
+			targetY = toY;
 		}
-		processFuelAndBlock();
-		readState();
 	}
 
 	/**
 	 * Turn 90 degrees to the left
 	 */
 	public void turnLeft() {
-		debug("turnL");
+		startTurnLeft();
+		processFuelAndBlock(false);
+		readState();
+	}
+
+	private void startTurnLeft() {
+		debug(TraceEvent.Type.TURN_LEFT, 0, 0);
 		currentAction = ACTION_TURN_LEFT;
 		switch (dir) {
 		case NORTH:
@@ -73,15 +93,19 @@ public class Robot {
 			targetDir = DIRECTION.NORTH;
 			break;
 		}
-		processFuelAndBlock();
-		readState();
 	}
 
 	/**
 	 * Turn 90 degrees to the right
 	 */
 	public void turnRight() {
-		debug("turnR");
+		startTurnRight();
+		processFuelAndBlock(false);
+		readState();
+	}
+
+	private void startTurnRight() {
+		debug(TraceEvent.Type.TURN_RIGHT, 0, 0);
 		currentAction = ACTION_TURN_RIGHT;
 		switch (dir) {
 		case NORTH:
@@ -97,15 +121,19 @@ public class Robot {
 			targetDir = DIRECTION.SOUTH;
 			break;
 		}
-		processFuelAndBlock();
-		readState();
 	}
 
 	/**
 	 * Turn 180 degrees.
 	 */
 	public void turnAround() {
-		debug("turnAround");
+		startTurnAround();
+		processFuelAndBlock(false);
+		readState();
+	}
+
+	private void startTurnAround() {
+		debug(TraceEvent.Type.TURN_AROUND, 0, 0);
 		currentAction = ACTION_TURN_AROUND;
 		switch (dir) {
 		case NORTH:
@@ -121,8 +149,6 @@ public class Robot {
 			targetDir = DIRECTION.WEST;
 			break;
 		}
-		processFuelAndBlock();
-		readState();
 	}
 
 	/**
@@ -130,7 +156,7 @@ public class Robot {
 	 * cannot steal fuel, but this robot will use up fuel faster.
 	 */
 	public void setShield(boolean shield) {
-		debug("shield " + (shield ? "on" : "off"));
+		debug(shield ? TraceEvent.Type.SHIELD_ON : TraceEvent.Type.SHIELD_OFF, 0, 0);
 		this.shield = shield;
 		readState();
 	}
@@ -139,9 +165,9 @@ public class Robot {
 	 * Take fuel barrel or siphon fuel from other robot.
 	 */
 	public void takeFuel() {
-		debug("takeFuel");
+		debug(TraceEvent.Type.TAKE_FUEL, 0, 0);
 		currentAction = ACTION_TAKE_FUEL;
-		processFuelAndBlock();
+		processFuelAndBlock(false);
 		readState();
 	}
 
@@ -149,12 +175,67 @@ public class Robot {
 	 * Do nothing and wait.
 	 */
 	public void idleWait() {
-		debug("wait");
+		debug(TraceEvent.Type.WAIT, 0, 0);
 		currentAction = ACTION_WAIT;
-		processFuelAndBlock();
+		processFuelAndBlock(false);
 		readState();
 	}
 
+	/**
+	 * Wait the given number of times, exactly as that many calls to
+	 * idleWait() would, taking the waits together as move(int) does.
+	 */
+	public void idleWait(int times) {
+		for (int i = 0; i < times; i++) {
+			debug(TraceEvent.Type.WAIT, 0, 0);
+			currentAction = ACTION_WAIT;
+			processFuelAndBlock(i < times - 1);
+			readState();
+		}
+	}
+
+	/**
+	 * Starts one of the ACTION_ actions, or a change of shield, without
+	 * waiting for the world to carry it out, for a world that steps its robots
+	 * itself (see World.runLockstep). The action takes effect at the next
+	 * updatePending, after which the world calls readState. Returns false if
+	 * the action is already done, as shield changes are, which take no time.
+	 */
+	public boolean startAction(int action) {
+		if (cancelled)
+			throw new RobotInterruptedException();
+		switch (action) {
+		case ACTION_MOVE:
+			startMove();
+			break;
+		case ACTION_TURN_LEFT:
+			startTurnLeft();
+			break;
+		case ACTION_TURN_RIGHT:
+			startTurnRight();
+			break;
+		case ACTION_TURN_AROUND:
+			startTurnAround();
+			break;
+		case ACTION_TAKE_FUEL:
+			debug(TraceEvent.Type.TAKE_FUEL, 0, 0);
+			currentAction = ACTION_TAKE_FUEL;
+			break;
+		case ACTION_WAIT:
+			debug(TraceEvent.Type.WAIT, 0, 0);
+			currentAction = ACTION_WAIT;
+			break;
+		case ACTION_SHIELD_ON:
+		case ACTION_SHIELD_OFF:
+			setShield(action == ACTION_SHIELD_ON);
+			return false;
+		default:
+			throw new IllegalArgumentException("Not an action: " + action);
+		}
+		processFuel();
+		return true;
+	}
+
 	// Robot Sensors
 	// -------------
 
@@ -167,22 +248,26 @@ public class Robot {
 	public int getDistanceToWall() {
 		if (cancelled)
 			throw new RobotInterruptedException();
+		return wallDistance();
+	}
+
+	private int wallDistance() {
 		switch (dir) {
 		case NORTH:
 			return y;
 		case SOUTH:
-			return 11 - y;
+			return world.getHeight() - 1 - y;
 		case WEST:
 			return x;
 		case EAST:
-			return 11 - x;
+			return world.getWidth() - 1 - x;
 		}
 		return 0;
 	}
 
 	/**
-	 * Gets the left-right-location of the other robot relative to the current
-	 * position and orientation.
+	 * Gets the left-right-location of the nearest other robot relative to the
+	 * current position and orientation.
 	 * 
 	 * @return INFINITY if there isn't a second robot, -ve if to the left, +ve
 	 *         if to the right and 0 if directly in front or behind
@@ -190,18 +275,12 @@ public class Robot {
 	public int getOpponentLR() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		if (otherRobotPos == null) {
-			debug("oppLR=INFINTY");
-			return INFINITY;
-		} else {
-			debug("oppLR=" + otherRobotPos.x);
-			return otherRobotPos.x;
-		}
+		return sensors.oppLR();
 	}
 
 	/**
-	 * Gets the front-back-location of the other robot relative to the current
-	 * position and orientation.
+	 * Gets the front-back-location of the nearest other robot relative to the
+	 * current position and orientation.
 	 * 
 	 * @return INFINITY if there isn't a second robot, +ve if in front, -ve if
 	 *         behind and 0 if directly to the left or right.
@@ -209,13 +288,7 @@ public class Robot {
 	public int getOpponentFB() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		if (otherRobotPos == null) {
-			debug("oppFB=INFINTY");
-			return INFINITY;
-		} else {
-			debug("oppFB=" + otherRobotPos.y);
-			return otherRobotPos.y;
-		}
+		return sensors.oppFB();
 	}
 
 	/**
@@ -224,8 +297,7 @@ public class Robot {
 	public int numBarrels() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		debug("numBarrels = " + barrels.size());
-		return barrels.size();
+		return sensors.numBarrels();
 	}
 
 	/**
@@ -264,9 +336,7 @@ public class Robot {
 	public int getBarrelLR(int n) {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).x;
-		debug(((n == 0) ? "" : (n + "th")) + "closestBarrelLR = " + ((val == INFINITY) ? "INFINITY" : "" + val));
-		return val;
+		return sensors.barrelLR(n);
 	}
 
 	/**
@@ -279,9 +349,7 @@ public class Robot {
 	public int getBarrelFB(int n) {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		int val = (n >= barrels.size()) ? INFINITY : barrels.get(n).y;
-		debug(((n == 0) ? "" : (n + "th")) + "closestBarrelFB = " + ((val == INFINITY) ? "INFINITY" : "" + val));
-		return val;
+		return sensors.barrelFB(n);
 	}
 
 	/**
@@ -292,17 +360,82 @@ public class Robot {
 	public int getFuel() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		debug("fuel=" + fuel);
+		debug(TraceEvent.Type.FUEL, fuel, 0);
 		return fuel;
 	}
 
+	/**
+	 * All the robot's sensor readings for the current tick, which programs
+	 * read instead of calling a method for each sensor.
+	 */
+	public Sensors sense() {
+		if (cancelled)
+			throw new RobotInterruptedException();
+		return sensors;
+	}
+
+	/**
+	 * Charges the robot for the instructions its program evaluates. Every
+	 * engine charges for the nodes it is about to evaluate (see
+	 * Interpreter.cost): before each statement it executes, each time round a
+	 * loop, before each test of a while, before an elif it tries and before
+	 * the second condition of an and or an or. A program that evaluates more
+	 * than the instruction budget between two actions is stopped, as is one
+	 * whose robot has been cancelled, so that programs that compute without
+	 * acting can still be stopped. This runs on the robot's thread, so it only marks
+	 * the robot over budget; the world cancels it when it next advances it.
+	 */
+	public void charge(int cost) {
+		if (cancelled)
+			throw new RobotInterruptedException();
+		spent += cost;
+		if (spent > budget) {
+			overBudget = true;
+			throw new RobotInterruptedException(colour + " robot evaluated more than " + budget
+					+ " instructions without acting, so it has been stopped");
+		}
+	}
+
+	/** The instructions a program may evaluate between actions, or 0 for no limit */
+	public long getInstructionBudget() {
+		return (budget == Long.MAX_VALUE) ? 0 : budget;
+	}
+
+	public void setInstructionBudget(long budget) {
+		this.budget = (budget <= 0) ? Long.MAX_VALUE : budget;
+	}
+
+	/**
+	 * The instruction budget robots start with, from -Drobots.budget=, or no
+	 * limit, so programs are only stopped when a budget is asked for.
+	 */
+	private static long defaultBudget() {
+		long budget = Long.getLong("robots.budget", 0);
+		return (budget <= 0) ? Long.MAX_VALUE : budget;
+	}
+
+	/** The instructions the robot's program has evaluated so far */
+	public long getInstructions() {
+		return instructions + spent;
+	}
+
+	/** The most instructions the program has evaluated between two actions */
+	public long getMostInstructionsPerAction() {
+		return Math.max(mostPerAction, spent);
+	}
+
+	/** Was the program stopped for going over its instruction budget? */
+	public boolean isOverBudget() {
+		return overBudget;
+	}
+
 	/**
 	 * @return boolean stating whether the shield is currently on.
 	 */
 	public boolean isShieldOn() {
 		if (cancelled)
 			throw new RobotInterruptedException();
-		debug(shield ? "shield is on" : "shield is off");
+		debug(TraceEvent.Type.SHIELD, shield ? 1 : 0, 0);
 		return shield;
 	}
 
@@ -314,24 +447,44 @@ public class Robot {
 	public static final int
 	    ACTION_MOVE = 1, ACTION_TURN_LEFT = 2, ACTION_TURN_RIGHT = 3,
 	    ACTION_TURN_AROUND = 4, ACTION_TAKE_FUEL = 5, ACTION_WAIT = 6,
+	    ACTION_SHIELD_ON = 7, ACTION_SHIELD_OFF = 8,
 	    INFINITY = Integer.MAX_VALUE;  
 
 	private static final int
 	    FUEL_IDLE = 3, FUEL_MOVE = 6, FUEL_TURN = 5, FUEL_SHIELD = 15;
 
-        private enum DIRECTION { NORTH, WEST, SOUTH, EAST }
+        enum DIRECTION { NORTH, WEST, SOUTH, EAST }
 
         private World world;
-	private Point otherRobotPos;
-	private List<Point> barrels = new ArrayList<Point>();
 	private RobotProgramNode program;
-
-	private boolean shield, dead, finished, cancelled;
+	// whether the program can read the barrels, so each tick's sensors need a view of them
+	private boolean readsBarrels = true;
+	private int[] frame = new int[0];
+	private Engine engine = Engine.byDefault();
+	// the sensor readings, rebuilt whenever updatePending changes them
+	private volatile Sensors sensors;
+	// null when nothing is traced
+	private final Trace trace;
+
+	private boolean shield, dead, finished;
+	// volatile so that a robot computing in a loop sees its cancel (see charge)
+	private volatile boolean cancelled;
+	// the instructions the program may evaluate between actions, and what it has evaluated
+	private long budget = defaultBudget();
+	private long spent, instructions, mostPerAction;
+	// volatile, as the world reads it to cancel the robot (see advance)
+	private volatile boolean overBudget;
 	private int fuel = 100, targetFuel;
 	private int x, y, targetX, targetY;
         private DIRECTION dir, targetDir;
     //	private int x, y, dir, targetX, targetY, targetDir;
-	private int currentAction;
+	// volatile, as the world clears it to hand the robot its tick (see processFuelAndBlock)
+	private volatile int currentAction;
+	// the thread waiting for the world to carry out the current action
+	private volatile Thread waiter;
+	// when updatePending last carried out an action, and the waits for it, in nanoseconds
+	private volatile long released;
+	private long wakeNanos, wakes;
 	private String colour;
 	private BufferedImage robotImage1, robotImage2, shieldImage;
 	private boolean noWait = false;
@@ -342,11 +495,21 @@ public class Robot {
 		this.y = y;
 		this.colour = colour;
 		this.noWait = noWait;
+		this.trace = Trace.open(colour);
 		targetX = x;
 		targetY = y;
-		dir = (y < World.SIZE / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH;
+		world.enter(this, x, y);
+		dir = (y < world.getHeight() / 2) ? DIRECTION.SOUTH : DIRECTION.NORTH;
 		targetDir = dir;
 		targetFuel = fuel;
+		sensors = Sensors.unseen(fuel, wallDistance());
+	}
+
+	/**
+	 * Loads the images the first time the robot is drawn, so that robots run
+	 * without the GUI never read them.
+	 */
+	private void loadImages() {
 		try {
 			robotImage1 = ImageIO.read(new File("assets/robot_" + colour + "_1.png"));
 			robotImage2 = ImageIO.read(new File("assets/robot_" + colour + "_2.png"));
@@ -356,15 +519,71 @@ public class Robot {
 		}
 	}
 
-	private ArrayList<String> history = new ArrayList<>();
+	// the numbers of each state recorded by readState
+	private static final int STATE_WIDTH = 5;
+	private int[] history = new int[16 * STATE_WIDTH];
+	private int states;
 
 	/**
-	 * Encodes the state of the robot, used for automarking.
+	 * Encodes the state of the robot, used for automarking, and prints it.
+	 * The history keeps it as numbers, and the trace, if there is one, gets
+	 * it as an event as well.
 	 */
 	public void readState() {
-		String state = "x=" + x + " y=" + y + " dir=" + dir + " fuel=" + fuel + " shield=" + shield;
-		history.add(state);
-		System.out.println(state);
+		// a new action, so a new budget
+		instructions += spent;
+		mostPerAction = Math.max(mostPerAction, spent);
+		spent = 0;
+		if (states * STATE_WIDTH == history.length) {
+			history = Arrays.copyOf(history, history.length * 2);
+		}
+		int i = states * STATE_WIDTH;
+		history[i] = x;
+		history[i + 1] = y;
+		history[i + 2] = dir.ordinal();
+		history[i + 3] = fuel;
+		history[i + 4] = shield ? 1 : 0;
+		states++;
+		if (trace != null) {
+			trace.add(TraceEvent.Type.STATE, x, y, dir.ordinal(), fuel, shield ? 1 : 0);
+		}
+		printed();
+		System.out.println(state(x, y, dir.ordinal(), fuel, shield));
+	}
+
+	/** The line readState prints for a state */
+	static String state(int x, int y, int dir, int fuel, boolean shield) {
+		return "x=" + x + " y=" + y + " dir=" + DIRECTION.values()[dir] + " fuel=" + fuel + " shield=" + shield;
+	}
+
+	/**
+	 * Waits for the console to print the actions and readings traced so far,
+	 * if they are, so that what the robot prints itself comes after them.
+	 */
+	private void printed() {
+		if (debugging()) {
+			trace.await();
+		}
+	}
+
+	/**
+	 * The states recorded by readState, oldest first. The list follows the
+	 * states as they are recorded.
+	 */
+	public List<String> getHistory() {
+		return new AbstractList<String>() {
+			public String get(int index) {
+				if (index >= states) {
+					throw new IndexOutOfBoundsException("state " + index + " of " + states);
+				}
+				int i = index * STATE_WIDTH;
+				return state(history[i], history[i + 1], history[i + 2], history[i + 3], history[i + 4] != 0);
+			}
+
+			public int size() {
+				return states;
+			}
+		};
 	}
 
 	/**
@@ -373,6 +592,45 @@ public class Robot {
 	 */
 	public void setProgram(RobotProgramNode prog) {
 		program = prog;
+		readsBarrels = true;
+		// whether the readings are traced depends on the program
+		sensors = sensors.traced(debugging() ? trace : null);
+	}
+
+	/**
+	 * Tells the robot whether its program can read the barrels (see
+	 * Sensors.readsBarrels). If it can't, its sensors don't take a view of the
+	 * barrels each tick, though they still find them if asked. Setting a
+	 * program assumes that it can.
+	 */
+	public void setReadsBarrels(boolean readsBarrels) {
+		this.readsBarrels = readsBarrels;
+	}
+
+	public RobotProgramNode getProgram() {
+		return program;
+	}
+
+	/** The engine World uses to run the programs it loads for this robot */
+	public Engine getEngine() {
+		return engine;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * The values of the variables of the program run by this robot, indexed by
+	 * the slots the parser gave them, so that robots running the same program
+	 * do not share them.
+	 */
+	public int[] getFrame() {
+		return frame;
+	}
+
+	public void setFrame(int[] frame) {
+		this.frame = frame;
 	}
 
 	/**
@@ -393,7 +651,26 @@ public class Robot {
 	 */
 	public void cancel() {
 		cancelled = true;
-		updatePending();
+		advance();
+		cancel(world.robotCells());
+	}
+
+	/**
+	 * Cancels the robot once the world has finished its action, with the
+	 * robots where they are, so that the world can cancel them all at once.
+	 */
+	void cancel(Sensors.Robots robots) {
+		cancelled = true;
+		release(robots);
+		stop();
+	}
+
+	/** Ends the robot's part in the match, once the world has finished its action */
+	private void stop() {
+		cancelled = true;
+		if (trace != null) {
+			trace.close();
+		}
 		fuel = 0;
 		targetFuel = 0;
 	}
@@ -406,8 +683,12 @@ public class Robot {
 	 */
 	public void setFinished(boolean finished) {
 		this.finished = finished;
-		if (finished)
+		if (finished) {
 			updatePending();
+			if (trace != null) {
+				trace.close();
+			}
+		}
 	}
 
 	/**
@@ -417,6 +698,9 @@ public class Robot {
 	 * @param time
 	 */
 	public void draw(Graphics2D g2d, double time) {
+		if (robotImage1 == null) {
+			loadImages();
+		}
 		double x = this.x * (1 - time) + targetX * time;
 		double y = this.y * (1 - time) + targetY * time;
 		x = x * WorldComponent.GRID_SIZE + WorldComponent.GRID_SIZE / 2d;
@@ -467,27 +751,6 @@ public class Robot {
 		return dead;
 	}
 
-	private Point getOtherRobotPosition() {
-		Robot other = world.getOtherRobot(this);
-		return (other != null) ? toRelative(new Point(other.x, other.y)) : null;
-	}
-
-	private Point toRelative(Point p) {
-		int rx = p.x;
-		int ry = p.y;
-		switch (dir) {
-		case NORTH:
-			return new Point(rx - x, y - ry);
-		case SOUTH:
-			return new Point(x - rx, ry - y);
-		case WEST:
-			return new Point(y - ry, x - rx);
-		case EAST:
-			return new Point(ry - y, rx - x);
-		}
-		return null;
-	}
-
 	private double getAngle(DIRECTION direction) {
 		switch (direction) {
 		case NORTH:
@@ -519,22 +782,21 @@ public class Robot {
 			targetFuel -= FUEL_TURN;
 			break;
 		case ACTION_TAKE_FUEL:
-			if (world.getAvailableFuel().contains(new Point(x, y))) {
-				world.getAvailableFuel().remove(new Point(x, y));
+			if (world.getBarrels().remove(x, y)) {
 				targetFuel = 100;
 				return;
-			} else {// try to siphon fuel
-				Robot other = world.getOtherRobot(this);
-				if (other != null && !other.shield) {
-					Point otherP = getOtherRobotPosition(); // relative position
-					if (otherP.x == 0 && otherP.y == 1) {
-						System.out.println("Taking fuel");
-						int takeFuel = Math.min(25, other.targetFuel / 2);
-						takeFuel = Math.min(other.targetFuel, takeFuel);
-						targetFuel = Math.min(100, targetFuel + takeFuel);
-						other.targetFuel -= takeFuel;
-						return;
-					}
+			} else {// try to siphon fuel from a robot directly in front
+				int dx = (dir == DIRECTION.WEST) ? -1 : (dir == DIRECTION.EAST) ? 1 : 0;
+				int dy = (dir == DIRECTION.NORTH) ? -1 : (dir == DIRECTION.SOUTH) ? 1 : 0;
+				Robot other = world.getRobotAt(x + dx, y + dy);
+				if (other != null && other != this && !other.shield) {
+					printed();
+					System.out.println("Taking fuel");
+					int takeFuel = Math.min(25, other.targetFuel / 2);
+					takeFuel = Math.min(other.targetFuel, takeFuel);
+					targetFuel = Math.min(100, targetFuel + takeFuel);
+					other.targetFuel -= takeFuel;
+					return;
 				}
 			}
 			targetFuel -= FUEL_IDLE;
@@ -547,52 +809,109 @@ public class Robot {
 			targetFuel -= FUEL_SHIELD;
 	}
 
-	private void processFuelAndBlock() {
+	/**
+	 * Uses the fuel for the current action and waits for the world to carry
+	 * it out. Without the GUI the robot carries it out at once, and if more
+	 * actions follow that cannot read the sensors, leaves them as they are.
+	 *
+	 * With the GUI the robot's thread parks until updatePending clears the
+	 * action and unparks it. The waiter is set before the action is checked,
+	 * and the action cleared before the waiter is read, so either the robot
+	 * sees its action done or the world sees the robot and unparks it; an
+	 * unpark that comes first leaves a permit, so park returns at once.
+	 */
+	private void processFuelAndBlock(boolean more) {
 		if (cancelled)
 			throw new RobotInterruptedException();
 		// use fuel
 		processFuel();
-		if (this.noWait) {
+		if (this.noWait && more) {
+			advance();
+			currentAction = 0;
+		} else if (this.noWait) {
 			updatePending();
 		} else {
+			waiter = Thread.currentThread();
 			while (currentAction != 0) {
-				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
-				}
+				LockSupport.park(this);
+				// as with the sleep this replaces, an interrupt alone doesn't end the wait
+				Thread.interrupted();
 			}
+			wakeNanos += System.nanoTime() - released;
+			wakes++;
 		}
 	}
 
+	/**
+	 * The average time, in microseconds, between the world carrying out one
+	 * of the robot's actions and the robot carrying on with its program, or 0
+	 * if the robot has not waited for the world.
+	 */
+	public double getWakeLatency() {
+		return (wakes == 0) ? 0 : wakeNanos / 1e3 / wakes;
+	}
+
 	/**
 	 * Called by the "World" only.
 	 */
 	public void updatePending() {
+		advance();
+		release(world.robotCells());
+	}
+
+	/**
+	 * Reads the sensors for the action just finished, with the robots where
+	 * they are now, and lets the robot carry on. With more than two robots,
+	 * World.updateWorld finishes every robot's action before releasing any, so
+	 * they all see the same tick.
+	 */
+	void release(Sensors.Robots robots) {
+		sensors = snapshot(robots);
+		if (!noWait) {
+			released = System.nanoTime();
+		}
+		currentAction = 0;
+		Thread waiter = this.waiter;
+		if (waiter != null) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	/** What the sensors read now, with the robots in the given cells */
+	private Sensors snapshot(Sensors.Robots robots) {
+		int dx = (dir == DIRECTION.WEST) ? -1 : (dir == DIRECTION.EAST) ? 1 : 0;
+		int dy = (dir == DIRECTION.NORTH) ? -1 : (dir == DIRECTION.SOUTH) ? 1 : 0;
+		return new Sensors(fuel, wallDistance(), x, y, dx, dy, robots, world.getBarrels(), readsBarrels,
+				debugging() ? trace : null);
+	}
+
+	/** Finishes the current action, without working out the sensors again */
+	void advance() {
+		if (x != targetX || y != targetY) {
+			world.moved(this, x, y, targetX, targetY);
+		}
 		// reset turn
 		x = targetX;
 		y = targetY;
 		dir = targetDir;
 		fuel = targetFuel;
+		if (overBudget && !cancelled) {
+			stop();
+		}
 		if (finished) {
 			currentAction = ACTION_WAIT;
 			processFuel();
 		}
-		otherRobotPos = getOtherRobotPosition();
-		barrels = new ArrayList<Point>(world.getAvailableFuel());
-		for (int i = 0; i < barrels.size(); i++) {
-			Point p = toRelative(barrels.get(i));
-			barrels.set(i, p);
-		}
-		Collections.sort(barrels, new Comparator<Point>() {
+	}
 
-			@Override
-			public int compare(Point p1, Point p2) {
-				int d1 = Math.abs(p1.x) + Math.abs(p1.y);
-				int d2 = Math.abs(p2.x) + Math.abs(p2.y);
-				return d1 - d2;
-			}
-		});
-		currentAction = 0;
+	/** The column the robot is in, as of the last tick */
+	public int getX() {
+		return x;
+	}
+
+	/** The row the robot is in, as of the last tick */
+	public int getY() {
+		return y;
 	}
 
 	public String toString() {
@@ -600,15 +919,21 @@ public class Robot {
 	}
 
 	/**
-	 * print a message about the action to System.out if debugging is currently
-	 * turned on.
+	 * Traces an action or sensor reading if debugging is currently turned on.
+	 * Takes the event's numbers rather than its text, so that nothing is built
+	 * when it is not traced.
 	 */
-	private void debug(String action) {
-		if (RoboGame.debugDisplay && program != null) {
-			System.out.println(colour + " robot: " + action);
+	private void debug(TraceEvent.Type type, int a, int b) {
+		if (debugging()) {
+			trace.add(type, a, b, 0, 0, 0);
 		}
 	}
 
+	/** Are the robot's actions and sensor readings traced? Sensors traces its own (see snapshot) */
+	private boolean debugging() {
+		return trace != null && RoboGame.debugDisplay && program != null;
+	}
+
 	/**
 	 * What the robot will do if it has no valid controller
 	 */
@@ -1,3 +1,11 @@
 @SuppressWarnings("serial")
 public class RobotInterruptedException extends RuntimeException {
+
+	public RobotInterruptedException() {
+	}
+
+	/** For a robot stopped for a reason worth reporting, such as going over its instruction budget */
+	public RobotInterruptedException(String message) {
+		super(message);
+	}
 }
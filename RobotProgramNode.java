@@ -5,4 +5,12 @@
 
 interface RobotProgramNode {
 	public void execute(Robot robot);
+
+	/**
+	 * The number of nodes on the longest path down from this one, so nodes
+	 * too deep to execute by recursion can hand themselves to the Interpreter.
+	 */
+	public default int getDepth() {
+		return 1;
+	}
 }
@@ -1,5 +1,7 @@
-
 public interface SENNode extends EXPNode{
 
 	public int execute(Robot robot);
+
+	/** The sensor's value in the given readings */
+	public int read(Sensors sensors, Robot robot);
 }
@@ -0,0 +1,53 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class SenseNode implements RobotProgramNode {
+
+	private final ArrayList<String> names = new ArrayList<String>();
+	private int[] slots = new int[0];
+	private final ArrayList<SENNode> sensors = new ArrayList<SENNode>();
+	private int depth = 1;
+
+	public void addSensor(String name, int slot, SENNode sensor) {
+		names.add(name);
+		slots = Arrays.copyOf(slots, slots.length + 1);
+		slots[slots.length - 1] = slot;
+		sensors.add(sensor);
+		depth = Math.max(depth, 1 + sensor.getDepth());
+	}
+
+	public void execute(Robot robot) {
+		// every sensor is read from the readings of the same tick
+		Sensors now = robot.sense();
+		int[] frame = robot.getFrame();
+		for (int i = 0; i < slots.length; i++) {
+			frame[slots[i]] = sensors.get(i).read(now, robot);
+		}
+	}
+
+	public List<String> getNames() {
+		return names;
+	}
+
+	/** The variables' indexes in the frame of variables */
+	public int getSlot(int i) {
+		return slots[i];
+	}
+
+	public List<SENNode> getSensors() {
+		return sensors;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		String str = "sense";
+		for (int i = 0; i < slots.length; i++) {
+			str += ((i == 0) ? " " : ", ") + names.get(i) + " = " + sensors.get(i).toString();
+		}
+		return str;
+	}
+}
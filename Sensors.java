@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * What a robot's sensors read at one tick of the world. Robot builds one in
+ * updatePending, each time the world moves on, and programs read their
+ * sensors from it, with no call into the robot per sensor.
+ *
+ * A snapshot never changes, so the robot's thread can read it while the world
+ * builds the next one, and every sensor read from one snapshot belongs to the
+ * same tick. Making one only records where the robot is, and shares where
+ * every robot is with the others' snapshots of the tick (see Robots). Which
+ * robot is the nearest opponent is worked out when the program first asks,
+ * and which barrels are closest when it first asks for each, and kept for the
+ * rest of the tick.
+ *
+ * The barrels are a view of the world's BarrelIndex, taken with the snapshot
+ * if the robot's program can read them (see readsBarrels), and otherwise only
+ * if something asks, so that the world doesn't keep views for programs that
+ * never look at barrels.
+ *
+ * While the robot is debugged, the snapshot has its Trace, and each reading
+ * but the wall's is traced as it is read, as the robot's own sensor methods
+ * used to trace them. A snapshot with a trace may only be read on the robot's
+ * thread.
+ */
+public final class Sensors {
+
+	// no barrels and no other robots, for robots that have not looked yet
+	private static final BarrelIndex NO_BARRELS = new BarrelIndex(0, 0);
+	private static final Robots NO_ROBOTS = new Robots(new int[0], new int[0]);
+	// a position no robot or barrel can be at, for one that has not been looked for
+	private static final long UNKNOWN = Long.MAX_VALUE;
+
+	private final int fuel;
+	public final int wallDist;
+	// null when the readings are not traced
+	private final Trace trace;
+	// where the robot was and which way it faced
+	private final int x, y, dx, dy;
+	// where every robot was, and the nearest other one, once it has been found
+	private final Robots robots;
+	private volatile long opponent = UNKNOWN;
+	// the world's barrels, and the view of them, once it has been taken
+	private final BarrelIndex index;
+	private volatile CellIndex.View barrels;
+	// the barrel last looked for, since barrelLR(n) is usually followed by barrelFB(n)
+	private int nearestN;
+	private long nearest = UNKNOWN;
+
+	Sensors(int fuel, int wallDist, int x, int y, int dx, int dy, Robots robots, BarrelIndex index,
+			boolean viewBarrels, Trace trace) {
+		this.fuel = fuel;
+		this.wallDist = wallDist;
+		this.trace = trace;
+		this.x = x;
+		this.y = y;
+		this.dx = dx;
+		this.dy = dy;
+		this.robots = robots;
+		this.index = index;
+		if (viewBarrels) {
+			barrels = index.view();
+		}
+	}
+
+	/**
+	 * What a robot reads before the world first updates its sensors: its fuel
+	 * and the wall, but no opponent and no barrels.
+	 */
+	static Sensors unseen(int fuel, int wallDist) {
+		return new Sensors(fuel, wallDist, 0, 0, 0, 0, NO_ROBOTS, NO_BARRELS, true, null);
+	}
+
+	/** The same readings, traced to the given trace, or not traced if it is null */
+	Sensors traced(Trace trace) {
+		Sensors copy = new Sensors(fuel, wallDist, x, y, dx, dy, robots, index, false, trace);
+		copy.barrels = barrels;
+		return copy;
+	}
+
+	/** The robot's fuel */
+	public int fuel() {
+		debug(TraceEvent.Type.FUEL, fuel, 0);
+		return fuel;
+	}
+
+	/** Left-right-location of the nearest opponent, or Robot.INFINITY if there isn't one */
+	public int oppLR() {
+		long robot = opponent();
+		int val = (robot == CellIndex.NONE) ? Robot.INFINITY : CellIndex.lr(robot);
+		debug(TraceEvent.Type.OPP_LR, val, 0);
+		return val;
+	}
+
+	/** Front-back-location of the nearest opponent, or Robot.INFINITY if there isn't one */
+	public int oppFB() {
+		long robot = opponent();
+		int val = (robot == CellIndex.NONE) ? Robot.INFINITY : CellIndex.fb(robot);
+		debug(TraceEvent.Type.OPP_FB, val, 0);
+		return val;
+	}
+
+	private long opponent() {
+		long robot = opponent;
+		if (robot == UNKNOWN) {
+			robot = robots.nearestOther(x, y, dx, dy);
+			opponent = robot;
+		}
+		return robot;
+	}
+
+	public int numBarrels() {
+		int val = barrels().size();
+		debug(TraceEvent.Type.NUM_BARRELS, val, 0);
+		return val;
+	}
+
+	/** Left-right-location of the nth closest barrel, or Robot.INFINITY if there are fewer */
+	public int barrelLR(int n) {
+		long barrel = nearest(n);
+		int val = (barrel == CellIndex.NONE) ? Robot.INFINITY : CellIndex.lr(barrel);
+		debug(TraceEvent.Type.BARREL_LR, n, val);
+		return val;
+	}
+
+	/** Front-back-location of the nth closest barrel, or Robot.INFINITY if there are fewer */
+	public int barrelFB(int n) {
+		long barrel = nearest(n);
+		int val = (barrel == CellIndex.NONE) ? Robot.INFINITY : CellIndex.fb(barrel);
+		debug(TraceEvent.Type.BARREL_FB, n, val);
+		return val;
+	}
+
+	private void debug(TraceEvent.Type type, int a, int b) {
+		if (trace != null) {
+			trace.add(type, a, b, 0, 0, 0);
+		}
+	}
+
+	private synchronized long nearest(int n) {
+		if (nearest == UNKNOWN || nearestN != n) {
+			nearest = barrels().nearest(n, x, y, dx, dy);
+			nearestN = n;
+		}
+		return nearest;
+	}
+
+	private CellIndex.View barrels() {
+		CellIndex.View view = barrels;
+		if (view == null) {
+			synchronized (this) {
+				if (barrels == null) {
+					barrels = index.view();
+				}
+				view = barrels;
+			}
+		}
+		return view;
+	}
+
+	/**
+	 * Where every robot in a world was at one tick, shared by the sensors of
+	 * them all. A few robots are kept as a list of their cells, and more as a
+	 * view of the world's index of the cells robots are in (see
+	 * World.robotCells), so that finding the nearest doesn't look at them all.
+	 */
+	static final class Robots {
+		// more robots than this are found with the index
+		static final int FEW = 16;
+
+		private final int[] xs, ys;
+		private final CellIndex.View index;
+
+		Robots(int[] xs, int[] ys) {
+			this.xs = xs;
+			this.ys = ys;
+			this.index = null;
+		}
+
+		Robots(CellIndex.View index) {
+			this.xs = null;
+			this.ys = null;
+			this.index = index;
+		}
+
+		/**
+		 * The nearest robot to one at (x, y) facing along (dx, dy), other
+		 * than itself, as CellIndex.View.nearest finds it, with robots at
+		 * the same distance in the same order.
+		 */
+		long nearestOther(int x, int y, int dx, int dy) {
+			if (index != null) {
+				// the robot itself is closest, at (0, 0)
+				long robot = index.nearest(0, x, y, dx, dy);
+				return (robot == 0) ? index.nearest(1, x, y, dx, dy) : robot;
+			}
+			int rx = -dy, ry = dx;
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < xs.length; i++) {
+				int cx = xs[i] - x, cy = ys[i] - y;
+				if (cx != 0 || cy != 0) {
+					best = Math.min(best, CellIndex.order(cx * rx + cy * ry, cx * dx + cy * dy));
+				}
+			}
+			return (best == Long.MAX_VALUE) ? CellIndex.NONE : CellIndex.position(best);
+		}
+	}
+
+	/**
+	 * Can the parsed program read the barrels? Looks through its nodes for
+	 * numBarrels, barrelLR and barrelFB. Only for trees of the parser's (or
+	 * the Optimizer's) nodes: a program an Engine has compiled has no nodes
+	 * to look through.
+	 */
+	public static boolean readsBarrels(RobotProgramNode prog) {
+		// the Optimizer shares nodes, so each is only looked at once
+		Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		ArrayList<Object> todo = new ArrayList<Object>();
+		todo.add(prog);
+		while (!todo.isEmpty()) {
+			Object node = todo.remove(todo.size() - 1);
+			if (node instanceof NumBarrelsNode || node instanceof BarrelLRNode || node instanceof BarrelFBNode) {
+				return true;
+			}
+			if (seen.add(node)) {
+				todo.addAll(Arrays.asList(Nodes.children(node)));
+			}
+		}
+		return false;
+	}
+}
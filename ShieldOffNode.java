@@ -0,0 +1,11 @@
+// SHIELD OFF NODE
+class ShieldOffNode implements RobotProgramNode {
+
+	public void execute(Robot robot) {
+		robot.setShield(false);
+	}
+
+	public String toString() {
+		return "Shield Off";
+	}
+}
@@ -0,0 +1,11 @@
+// SHIELD ON NODE
+class ShieldOnNode implements RobotProgramNode {
+
+	public void execute(Robot robot) {
+		robot.setShield(true);
+	}
+
+	public String toString() {
+		return "Shield On";
+	}
+}
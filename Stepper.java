@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a parsed robot program one action at a time, rather than on a thread
+ * of its own that blocks in each action until the world carries it out.
+ *
+ * The program is a state machine: a stack of frames for the programs, blocks,
+ * loops and whiles being executed and the move(n) or wait(n) being repeated,
+ * with the index of the next statement of each block. step runs the program
+ * up to its next action and returns it without taking it, so the caller
+ * decides when the action happens, and the next step carries on from there.
+ * Conditions, expressions and assignments are evaluated as the nodes do,
+ * reading the robot's sensors and variables as they are at that step.
+ *
+ * Only the nodes made by the Parser and the Optimizer can be stepped through,
+ * not programs prepared by an Engine other than the tree.
+ */
+public class Stepper {
+
+	/** The value of step once the program has finished */
+	public static final int DONE = 0;
+
+	private final Robot robot;
+	private final RobotProgramNode program;
+	// the programs, blocks, loops, whiles and repeats being executed, under a
+	// list of the one statement if the program is not a ProgNode
+	private final ArrayList<Object> owners = new ArrayList<Object>();
+	// for a program, block or list, the next statement to execute; for a
+	// repeat, the times it has left
+	private int[] index = new int[16];
+	private boolean started;
+
+	public Stepper(RobotProgramNode program, Robot robot) {
+		this.program = program;
+		this.robot = robot;
+	}
+
+	/**
+	 * Runs the program up to its next action, and returns the action as one of
+	 * Robot's ACTION_ constants, or DONE if the program has finished. The
+	 * action has not been taken: pass it to Robot.startAction.
+	 */
+	public int step() {
+		if (!started) {
+			started = true;
+			if (program instanceof ProgNode) {
+				// every run of the program has its own variables, as in ProgNode
+				robot.setFrame(new int[((ProgNode) program).getVariables().size()]);
+				push(program);
+			} else {
+				push(Collections.singletonList(program));
+			}
+		}
+		while (!owners.isEmpty()) {
+			int top = owners.size() - 1;
+			Object owner = owners.get(top);
+			int action = DONE;
+			if (owner instanceof List) {
+				@SuppressWarnings("unchecked")
+				List<RobotProgramNode> statements = (List<RobotProgramNode>) owner;
+				int i = index[top]++;
+				if (i < statements.size()) {
+					action = start(statements.get(i));
+				} else {
+					pop();
+				}
+			} else if (owner instanceof BlockNode || owner instanceof ProgNode) {
+				boolean block = owner instanceof BlockNode;
+				List<RobotProgramNode> statements = block ? ((BlockNode) owner).getStatements()
+						: ((ProgNode) owner).getStatements();
+				int i = index[top]++;
+				if (i < statements.size()) {
+					robot.charge(block ? ((BlockNode) owner).getCost(i) : ((ProgNode) owner).getCost(i));
+					action = start(statements.get(i));
+				} else {
+					pop();
+				}
+			} else if (owner instanceof LoopNode) {
+				robot.charge(LoopNode.ROUND_COST);
+				action = start(((LoopNode) owner).getBlock());
+			} else if (owner instanceof WhileNode) {
+				WhileNode node = (WhileNode) owner;
+				robot.charge(node.getCost());
+				if (node.getCondition().evaluate(robot)) {
+					action = start(node.getBlock());
+				} else {
+					pop();
+				}
+			} else if (index[top]-- > 0) {
+				action = ((Repeat) owner).action;
+			} else {
+				pop();
+			}
+			if (action != DONE) {
+				return action;
+			}
+		}
+		return DONE;
+	}
+
+	/** Has the program finished? */
+	public boolean isDone() {
+		return started && owners.isEmpty();
+	}
+
+	/**
+	 * Starts executing a statement. Returns the action if it is one, and
+	 * otherwise pushes the frames it needs, or runs it if it is an
+	 * assignment, and returns DONE.
+	 */
+	private int start(RobotProgramNode node) {
+		while (node != null) {
+			if (node instanceof StmtNode) {
+				node = ((StmtNode) node).getNode();
+			} else if (node instanceof BlockNode) {
+				push(node);
+				return DONE;
+			} else if (node instanceof LoopNode || node instanceof WhileNode) {
+				push(node);
+				return DONE;
+			} else if (node instanceof IfNode) {
+				// the same choice as IfNode.execute: only the first elif is tried
+				IfNode n = (IfNode) node;
+				if (n.getCondition().evaluate(robot)) {
+					node = n.getBlock();
+				} else if (!n.getElifs().isEmpty()) {
+					node = n.getElifs().get(0);
+					robot.charge(((IfNode) node).getCost());
+				} else {
+					node = n.getElseBlock();
+				}
+			} else if (node instanceof MoveNode) {
+				return repeat(((MoveNode) node).getExpression(), Robot.ACTION_MOVE);
+			} else if (node instanceof WaitNode) {
+				return repeat(((WaitNode) node).getExpression(), Robot.ACTION_WAIT);
+			} else if (node instanceof TurnLNode) {
+				return Robot.ACTION_TURN_LEFT;
+			} else if (node instanceof TurnRNode) {
+				return Robot.ACTION_TURN_RIGHT;
+			} else if (node instanceof TurnAroundNode) {
+				return Robot.ACTION_TURN_AROUND;
+			} else if (node instanceof TakeFuelNode) {
+				return Robot.ACTION_TAKE_FUEL;
+			} else if (node instanceof ShieldOnNode) {
+				return Robot.ACTION_SHIELD_ON;
+			} else if (node instanceof ShieldOffNode) {
+				return Robot.ACTION_SHIELD_OFF;
+			} else if (node instanceof ASSGNNode || node instanceof SenseNode) {
+				node.execute(robot);
+				return DONE;
+			} else {
+				throw new IllegalArgumentException("Cannot step through " + node.getClass().getName());
+			}
+		}
+		return DONE;
+	}
+
+	/** Returns the action if it happens once, and otherwise repeats it count times */
+	private int repeat(EXPNode count, int action) {
+		if (count == null) {
+			return action;
+		}
+		Repeat repeat = new Repeat(action);
+		push(repeat);
+		index[owners.size() - 1] = count.evaluate(robot);
+		return DONE;
+	}
+
+	private void push(Object owner) {
+		int top = owners.size();
+		if (top == index.length) {
+			index = Arrays.copyOf(index, top * 2);
+		}
+		owners.add(owner);
+		index[top] = 0;
+	}
+
+	private void pop() {
+		owners.remove(owners.size() - 1);
+	}
+
+	/** A move(n) or wait(n) being repeated */
+	private static class Repeat {
+		final int action;
+
+		Repeat(int action) {
+			this.action = action;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+//STMT
+class StmtNode implements RobotProgramNode {
+
+	RobotProgramNode n;
+	private final int depth;
+
+	public StmtNode(RobotProgramNode node) {
+		this.n = node;
+		this.depth = 1 + node.getDepth();
+	}
+
+	public RobotProgramNode getNode() {
+		return n;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return this.n.toString();
+	}
+
+	public void execute(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			Interpreter.execute(this, robot);
+			return;
+		}
+		n.execute(robot);
+	}
+}
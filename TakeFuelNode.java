@@ -0,0 +1,14 @@
+// TAKE FUEL NODE
+class TakeFuelNode implements RobotProgramNode {
+
+	public TakeFuelNode() {
+	}
+
+	public void execute(Robot robot) {
+		robot.takeFuel();
+	}
+
+	public String toString() {
+		return "take fuel";
+	}
+}
@@ -0,0 +1,88 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times work for the benchmarks: runs it over and over until a time is up,
+ * or warms it up and then does that for a number of iterations, and keeps
+ * the operations it did, the time and bytes they took, and how far the rate
+ * of the slowest or fastest iteration was from the mean.
+ */
+final class Timing {
+
+	/** Something to time */
+	abstract static class Work {
+		// the time the work has left out, such as setting up
+		private long untimed;
+
+		/** Does the work once, and returns the number of operations it did */
+		abstract long run();
+
+		/** Leaves the time since start, a System.nanoTime, out of the timing */
+		void untimed(long start) {
+			untimed += System.nanoTime() - start;
+		}
+	}
+
+	/** The operations done, and the nanoseconds and bytes they took */
+	final long ops, nanos, bytes;
+	/** The furthest an iteration's rate was from the mean, as a fraction of it */
+	final double spread;
+
+	private Timing(long ops, long nanos, long bytes, double spread) {
+		this.ops = ops;
+		this.nanos = nanos;
+		this.bytes = bytes;
+		this.spread = spread;
+	}
+
+	/** Runs the work until the time it has taken is up */
+	static Timing runFor(Work work, long nanos) {
+		long bytesBefore = allocatedBytes();
+		long untimed = work.untimed;
+		long start = System.nanoTime(), time;
+		long ops = 0;
+		do {
+			ops += work.run();
+			time = System.nanoTime() - start - (work.untimed - untimed);
+		} while (time < nanos);
+		return new Timing(ops, time, allocatedBytes() - bytesBefore, 0);
+	}
+
+	/** Runs the work for the warmup time, then for the given number of timed iterations */
+	static Timing measure(Work work, long warmupNanos, long iterationNanos, int iterations) {
+		runFor(work, warmupNanos);
+		double[] rates = new double[iterations];
+		long ops = 0, nanos = 0, bytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			Timing t = runFor(work, iterationNanos);
+			rates[i] = t.rate();
+			ops += t.ops;
+			nanos += t.nanos;
+			bytes += t.bytes;
+		}
+		double mean = ops / (nanos / 1e9);
+		double spread = 0;
+		for (double rate : rates) {
+			spread = Math.max(spread, Math.abs(rate - mean) / mean);
+		}
+		return new Timing(ops, nanos, bytes, spread);
+	}
+
+	/** Operations per second */
+	double rate() {
+		return ops / (nanos / 1e9);
+	}
+
+	/** The rate in the given format, then the spread, as in "1234 +-5%" */
+	String format(String rate) {
+		return String.format(rate + " +-%.0f%%", rate(), 100 * spread);
+	}
+
+	/** Bytes allocated so far by this thread, or 0 if the JVM can't tell */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+		}
+		return 0;
+	}
+}
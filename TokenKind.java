@@ -0,0 +1,95 @@
+/**
+ * The kinds of token produced by the Lexer. Every keyword of the robot
+ * language has its own kind, so the parser can dispatch on a token with a
+ * single switch instead of comparing its text against each keyword.
+ */
+enum TokenKind {
+	WORD, NUMBER, VARIABLE, EQUALS,
+	OPENPAREN, CLOSEPAREN, OPENBRACE, CLOSEBRACE, COMMA, SEMICOLON,
+	EOF,
+
+	// actions
+	MOVE("move", Group.ACTION), TURNL("turnL", Group.ACTION), TURNR("turnR", Group.ACTION),
+	TURNAROUND("turnAround", Group.ACTION), SHIELDON("shieldOn", Group.ACTION),
+	SHIELDOFF("shieldOff", Group.ACTION), TAKEFUEL("takeFuel", Group.ACTION), WAIT("wait", Group.ACTION),
+
+	// control
+	LOOP("loop", Group.CONTROL), IF("if", Group.CONTROL), ELIF("elif"), ELSE("else"), WHILE("while", Group.CONTROL),
+	SENSE("sense", Group.CONTROL),
+
+	// sensors
+	FUELLEFT("fuelLeft", Group.SENSOR), OPPLR("oppLR", Group.SENSOR), OPPFB("oppFB", Group.SENSOR),
+	NUMBARRELS("numBarrels", Group.SENSOR), BARRELLR("barrelLR", Group.SENSOR),
+	BARRELFB("barrelFB", Group.SENSOR), WALLDIST("wallDist", Group.SENSOR),
+
+	// operators
+	ADD("add", Group.OPERATOR), SUB("sub", Group.OPERATOR), MUL("mul", Group.OPERATOR), DIV("div", Group.OPERATOR),
+
+	// conditions
+	LT("lt", Group.RELOP), GT("gt", Group.RELOP), EQ("eq", Group.RELOP),
+	AND("and", Group.LOGIC), OR("or", Group.LOGIC), NOT("not", Group.LOGIC);
+
+	enum Group {
+		NONE, ACTION, CONTROL, SENSOR, OPERATOR, RELOP, LOGIC
+	}
+
+	/** The text of a keyword, null for the other kinds */
+	final String text;
+	final Group group;
+
+	TokenKind() {
+		this(null, Group.NONE);
+	}
+
+	TokenKind(String text) {
+		this(text, Group.NONE);
+	}
+
+	TokenKind(String text, Group group) {
+		this.text = text;
+		this.group = group;
+	}
+
+	/** Can a statement start with this token? */
+	boolean isStatement() {
+		return group == Group.ACTION || group == Group.CONTROL || this == VARIABLE;
+	}
+
+	boolean isAction() {
+		return group == Group.ACTION;
+	}
+
+	boolean isSensor() {
+		return group == Group.SENSOR;
+	}
+
+	boolean isOperator() {
+		return group == Group.OPERATOR;
+	}
+
+	// keywords grouped by their first character, for the lexer
+	private static final TokenKind[][] KEYWORDS = new TokenKind[128][];
+
+	static {
+		for (TokenKind kind : values()) {
+			if (kind.text != null) {
+				char c = kind.text.charAt(0);
+				TokenKind[] bucket = KEYWORDS[c];
+				if (bucket == null) {
+					bucket = new TokenKind[0];
+				}
+				bucket = java.util.Arrays.copyOf(bucket, bucket.length + 1);
+				bucket[bucket.length - 1] = kind;
+				KEYWORDS[c] = bucket;
+			}
+		}
+	}
+
+	/**
+	 * The keywords that start with the given character, or null if there are
+	 * none.
+	 */
+	static TokenKind[] keywordsStartingWith(char c) {
+		return (c < 128) ? KEYWORDS[c] : null;
+	}
+}
@@ -0,0 +1,257 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a robot does and reads, recorded as it happens and printed later.
+ *
+ * Each robot records its TraceEvents as plain numbers in a ring buffer of its
+ * own, so recording an event only stores a few ints. A single daemon thread
+ * reads every robot's buffer, makes the events and hands them to the sinks,
+ * so the text is built on that thread rather than the robot's. If a buffer
+ * fills up the robot parks until it is read, so no event is lost. Buffers are
+ * as big as the sinks ask for (see TraceSink.capacity): the console prints
+ * too slowly for a long buffer to help. The trace thread parks while every
+ * buffer is empty, and a robot wakes it when it records an event in an empty
+ * buffer.
+ *
+ * The trace thread keeps a buffer until everything in it has been read and
+ * its Trace has been closed, or is no longer used: it only holds the Trace
+ * itself weakly, so a robot that is dropped without being closed doesn't
+ * keep its buffer.
+ *
+ * Tracing only adds to what robots print: a robot prints its states itself,
+ * whatever the sinks, and waits for the console to print the actions and
+ * readings it traced before it (see await). When there are no sinks, Robot
+ * gets no Trace at all and records nothing. The sinks are chosen with
+ * -Drobots.trace=, a comma-separated list of "console" (the default),
+ * "file:path" or "none", or with setSinks.
+ */
+public final class Trace {
+
+	// the numbers of each event: its type, then up to five values
+	private static final int WIDTH = 6;
+
+	private static final List<TraceSink> sinks = new CopyOnWriteArrayList<TraceSink>();
+	private static final List<Buffer> buffers = new CopyOnWriteArrayList<Buffer>();
+	// the threads waiting in flush, which the trace thread unparks when it has read events
+	private static final Set<Thread> flushing = ConcurrentHashMap.newKeySet();
+	private static Thread thread;
+
+	static {
+		for (String name : System.getProperty("robots.trace", "console").split(",")) {
+			name = name.trim();
+			if (name.equals("console")) {
+				sinks.add(TraceSink.console());
+			} else if (name.startsWith("file:")) {
+				try {
+					sinks.add(TraceSink.file(new File(name.substring(5))));
+				} catch (IOException e) {
+					System.err.println("Could not open trace file: " + e.getMessage());
+				}
+			} else if (!name.equals("none") && !name.isEmpty()) {
+				System.err.println("Unknown trace sink: " + name);
+			}
+		}
+	}
+
+	private final Buffer buffer;
+
+	private Trace(String robot, int capacity) {
+		buffer = new Buffer(robot, capacity, this);
+	}
+
+	/**
+	 * Returns a new trace for the robot of the given colour, or null if there
+	 * are no sinks to send its events to.
+	 */
+	public static Trace open(String robot) {
+		if (sinks.isEmpty()) {
+			return null;
+		}
+		int capacity = 1;
+		for (TraceSink sink : sinks) {
+			capacity = Math.max(capacity, sink.capacity());
+		}
+		Trace trace = new Trace(robot, Integer.highestOneBit(capacity));
+		buffers.add(trace.buffer);
+		start();
+		return trace;
+	}
+
+	/**
+	 * Replaces the sinks. Robots made before keep their traces, which send
+	 * their events to the new sinks.
+	 */
+	public static synchronized void setSinks(TraceSink... newSinks) {
+		sinks.clear();
+		sinks.addAll(Arrays.asList(newSinks));
+	}
+
+	public static void addSink(TraceSink sink) {
+		sinks.add(sink);
+	}
+
+	/**
+	 * Waits until every event recorded so far has been handed to the sinks,
+	 * then flushes them.
+	 */
+	public static void flush() {
+		Thread current = Thread.currentThread();
+		flushing.add(current);
+		try {
+			for (Buffer buffer : buffers) {
+				while (buffer.read != buffer.written) {
+					LockSupport.unpark(thread);
+					LockSupport.park(Trace.class);
+				}
+			}
+		} finally {
+			flushing.remove(current);
+		}
+		for (TraceSink sink : sinks) {
+			sink.flush();
+		}
+	}
+
+	/**
+	 * Records an event. Only the robot that opened the trace may call this.
+	 */
+	public void add(TraceEvent.Type type, int a, int b, int c, int d, int e) {
+		Buffer buffer = this.buffer;
+		long w = buffer.written;
+		if (w - buffer.read >= buffer.capacity) {
+			// full: wait for the trace thread rather than lose the event. The
+			// waiter is set before read is checked, and the trace thread
+			// advances read before it looks for a waiter, so it can't be missed
+			buffer.waiter = Thread.currentThread();
+			while (w - buffer.read >= buffer.capacity) {
+				LockSupport.unpark(thread);
+				LockSupport.park(this);
+			}
+			buffer.waiter = null;
+		}
+		int[] events = buffer.events;
+		int i = (int) (w & (buffer.capacity - 1)) * WIDTH;
+		events[i] = type.ordinal();
+		events[i + 1] = a;
+		events[i + 2] = b;
+		events[i + 3] = c;
+		events[i + 4] = d;
+		events[i + 5] = e;
+		buffer.written = w + 1;
+		if (buffer.read == w) {
+			// the trace thread may have found the buffer empty and parked
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Waits until every event the robot has recorded has been handed to the
+	 * sinks. Only the robot that opened the trace may call this.
+	 */
+	public void await() {
+		Buffer buffer = this.buffer;
+		if (buffer.read == buffer.written) {
+			return;
+		}
+		// as in add, the waiter is set before read is checked again
+		buffer.waiter = Thread.currentThread();
+		while (buffer.read != buffer.written) {
+			LockSupport.unpark(thread);
+			LockSupport.park(this);
+		}
+		buffer.waiter = null;
+	}
+
+	/** The robot will record no more events, so the trace can go once it is read */
+	public void close() {
+		buffer.closed = true;
+		LockSupport.unpark(thread);
+	}
+
+	private static synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					boolean idle = true;
+					for (Buffer buffer : buffers) {
+						if (buffer.drain()) {
+							idle = false;
+						} else if (buffer.done()) {
+							buffers.remove(buffer);
+						}
+					}
+					for (Thread flusher : flushing) {
+						LockSupport.unpark(flusher);
+					}
+					if (idle) {
+						LockSupport.park(Trace.class);
+					}
+				}
+			}
+		}, "robot trace");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** A trace's events, kept apart from it so that they are printed even if it goes first */
+	private static final class Buffer {
+		private final String robot;
+		// the number of events the buffer holds, a power of two
+		private final int capacity;
+		private final int[] events;
+		private final WeakReference<Trace> trace;
+		// the events written and read so far: only the robot writes, and only the trace thread reads
+		private volatile long written, read;
+		private volatile boolean closed;
+		// the robot's thread while it waits for room in a full buffer
+		private volatile Thread waiter;
+
+		Buffer(String robot, int capacity, Trace trace) {
+			this.robot = robot;
+			this.capacity = capacity;
+			this.events = new int[capacity * WIDTH];
+			this.trace = new WeakReference<Trace>(trace);
+		}
+
+		/** Has everything been read from a trace that will record nothing more? */
+		boolean done() {
+			return (closed || trace.get() == null) && read == written;
+		}
+
+		/** Hands the events recorded since the last call to the sinks, and returns whether there were any */
+		boolean drain() {
+			long r = read, w = written;
+			if (r == w) {
+				return false;
+			}
+			for (; r < w; r++) {
+				int i = (int) (r & (capacity - 1)) * WIDTH;
+				TraceEvent event = new TraceEvent(robot, events[i], Arrays.copyOfRange(events, i + 1, i + WIDTH));
+				for (TraceSink sink : sinks) {
+					try {
+						sink.accept(event);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+				read = r + 1;
+				Thread waiter = this.waiter;
+				if (waiter != null) {
+					LockSupport.unpark(waiter);
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Something a robot did, read or became, as recorded by its Trace.
+ *
+ * Robots record events as numbers only; the event and its text are made
+ * later, on the thread that hands them to the TraceSinks.
+ */
+public final class TraceEvent {
+
+	public enum Kind {
+		ACTION, SENSOR, STATE
+	}
+
+	public enum Type {
+		MOVE(Kind.ACTION, "move"), TURN_LEFT(Kind.ACTION, "turnL"), TURN_RIGHT(Kind.ACTION, "turnR"),
+		TURN_AROUND(Kind.ACTION, "turnAround"), SHIELD_ON(Kind.ACTION, "shield on"),
+		SHIELD_OFF(Kind.ACTION, "shield off"), TAKE_FUEL(Kind.ACTION, "takeFuel"), WAIT(Kind.ACTION, "wait"),
+
+		FUEL(Kind.SENSOR, "fuel"), OPP_LR(Kind.SENSOR, "oppLR"), OPP_FB(Kind.SENSOR, "oppFB"),
+		NUM_BARRELS(Kind.SENSOR, "numBarrels"), BARREL_LR(Kind.SENSOR, "closestBarrelLR"),
+		BARREL_FB(Kind.SENSOR, "closestBarrelFB"), SHIELD(Kind.SENSOR, "shield"),
+
+		/** The robot's position, direction, fuel and shield after an action */
+		STATE(Kind.STATE, "state");
+
+		private final Kind kind;
+		private final String text;
+
+		private Type(Kind kind, String text) {
+			this.kind = kind;
+			this.text = text;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public String toString() {
+			return text;
+		}
+	}
+
+	private static final Type[] TYPES = Type.values();
+
+	private final String robot;
+	private final Type type;
+	private final int[] values;
+
+	TraceEvent(String robot, int type, int[] values) {
+		this.robot = robot;
+		this.type = TYPES[type];
+		this.values = values;
+	}
+
+	/** The colour of the robot */
+	public String getRobot() {
+		return robot;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The ith number of the event. A sensor's reading is its first number,
+	 * except for the barrel sensors, whose first number is which barrel was
+	 * read and second is the reading. A state's numbers are x, y, direction,
+	 * fuel and shield (1 if on).
+	 */
+	public int getValue(int i) {
+		return values[i];
+	}
+
+	/** The line Robot used to print for the event */
+	public String toString() {
+		switch (type) {
+		case STATE:
+			return Robot.state(values[0], values[1], values[2], values[3], values[4] != 0);
+		case FUEL:
+			return robot + " robot: fuel=" + values[0];
+		case OPP_LR:
+		case OPP_FB:
+			return robot + " robot: " + type + "=" + ((values[0] == Robot.INFINITY) ? "INFINTY" : "" + values[0]);
+		case NUM_BARRELS:
+			return robot + " robot: numBarrels = " + values[0];
+		case BARREL_LR:
+		case BARREL_FB:
+			return robot + " robot: " + ((values[0] == 0) ? "" : (values[0] + "th")) + type + " = "
+					+ ((values[1] == Robot.INFINITY) ? "INFINITY" : "" + values[1]);
+		case SHIELD:
+			return robot + " robot: " + ((values[0] != 0) ? "shield is on" : "shield is off");
+		default:
+			return robot + " robot: " + type;
+		}
+	}
+}
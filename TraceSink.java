@@ -0,0 +1,88 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Where the events robots record go. Sinks are called on the trace's own
+ * thread, never on a robot's, one event at a time and in the order each
+ * robot recorded them.
+ */
+public interface TraceSink {
+
+	public void accept(TraceEvent event);
+
+	/** Called when Trace.flush has handed over every event recorded so far */
+	public default void flush() {
+	}
+
+	/**
+	 * The events a robot may record before it waits for this sink: a slow
+	 * sink gains nothing from more.
+	 */
+	public default int capacity() {
+		return 1024;
+	}
+
+	/**
+	 * Prints every action and reading to System.out, as robots used to. The
+	 * robots print their states themselves (see Robot.readState).
+	 */
+	public static TraceSink console() {
+		return new TraceSink() {
+			public void accept(TraceEvent event) {
+				if (event.getType().getKind() != TraceEvent.Kind.STATE) {
+					System.out.println(event);
+				}
+			}
+
+			public void flush() {
+				System.out.flush();
+			}
+
+			public int capacity() {
+				return 64;
+			}
+		};
+	}
+
+	/** Writes every event to the file, one per line */
+	public static TraceSink file(File file) throws IOException {
+		final BufferedWriter out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		return new TraceSink() {
+			public void accept(TraceEvent event) {
+				try {
+					out.write(event.toString());
+					out.newLine();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			public void flush() {
+				try {
+					out.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Adds every event to the list, which should be synchronized if it is
+	 * read before Trace.flush returns.
+	 */
+	public static TraceSink memory(final List<TraceEvent> events) {
+		return new TraceSink() {
+			public void accept(TraceEvent event) {
+				events.add(event);
+			}
+		};
+	}
+}
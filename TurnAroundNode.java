@@ -0,0 +1,11 @@
+// TURN AROUND NODE
+class TurnAroundNode implements RobotProgramNode {
+
+	public void execute(Robot robot) {
+		robot.turnAround();
+	}
+
+	public String toString() {
+		return "Turn Around";
+	}
+}
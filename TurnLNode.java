@@ -0,0 +1,15 @@
+// TURN LEFT NODE
+class TurnLNode implements RobotProgramNode {
+
+	
+	public TurnLNode() {
+	}
+
+	public void execute(Robot robot) {
+		robot.turnLeft();
+	}
+
+	public String toString() {
+		return "turn left";
+	}
+}
@@ -0,0 +1,15 @@
+// TURN RIGHT NODE
+class TurnRNode implements RobotProgramNode {
+
+	
+	public TurnRNode() {
+	}
+
+	public void execute(Robot robot) {
+		robot.turnRight();
+	}
+
+	public String toString() {
+		return "turn right";
+	}
+}
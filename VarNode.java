@@ -0,0 +1,28 @@
+// VAR NODE
+class VarNode implements EXPNode {
+	private String name;
+	private final int slot;
+
+	public VarNode(String name, int slot) {
+		this.name = name;
+		this.slot = slot;
+	}
+
+	public int evaluate(Robot robot) {
+		// the value last assigned to the variable in this run
+		return robot.getFrame()[slot];
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/** The variable's index in the frame of variables */
+	public int getSlot() {
+		return slot;
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
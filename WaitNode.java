@@ -0,0 +1,39 @@
+// WAIT NODE
+class WaitNode implements RobotProgramNode {
+
+	private EXPNode expNode;
+	private int depth = 1;
+
+	public WaitNode() {
+	}
+
+	public WaitNode(EXPNode exp) {
+		this.expNode = exp;
+		this.depth = 1 + exp.getDepth();
+	}
+
+	public void execute(Robot robot) {
+		if (this.expNode == null) {
+			robot.idleWait();
+		} else {
+			robot.idleWait(this.expNode.evaluate(robot));
+		}
+	}
+
+	/** The number of waits, or null for a single wait */
+	public EXPNode getExpression() {
+		return expNode;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		if (this.expNode == null) {
+			return "wait";
+		} else {
+			return "wait 'expNode' number of times";
+		}
+	}
+}
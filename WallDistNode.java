@@ -0,0 +1,18 @@
+// "wallDist" NODE
+class WallDistNode implements SENNode, EXPNode {
+	public int execute(Robot robot) {
+		return robot.sense().wallDist;
+	}
+
+	public int evaluate(Robot robot) {
+		return execute(robot);
+	}
+
+	public int read(Sensors sensors, Robot robot) {
+		return sensors.wallDist;
+	}
+
+	public String toString() {
+		return "Distance to wall";
+	}
+}
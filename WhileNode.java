@@ -0,0 +1,56 @@
+//while
+class WhileNode implements RobotProgramNode {
+	private CONDNode condition;
+	private int depth;
+	private BlockNode block;
+	private int cost = -1;
+
+	public WhileNode(CONDNode condNode) {
+		this.condition = condNode;
+		this.depth = 1 + condNode.getDepth();
+	}
+
+	public void setBlock(BlockNode block) {
+		this.block = block;
+		depth = Math.max(depth, 1 + block.getDepth());
+	}
+
+	public void execute(Robot robot) {
+		if (depth > Interpreter.MAX_DEPTH) {
+			Interpreter.execute(this, robot);
+			return;
+		}
+		int cost = getCost();
+		while (true) {
+			robot.charge(cost);
+			if (!condition.evaluate(robot)) {
+				return;
+			}
+			block.execute(robot);
+		}
+	}
+
+	public CONDNode getCondition() {
+		return condition;
+	}
+
+	/** The instructions each test of the condition costs (see Robot.charge) */
+	public int getCost() {
+		if (cost < 0) {
+			cost = 1 + Interpreter.cost(condition);
+		}
+		return cost;
+	}
+
+	public BlockNode getBlock() {
+		return block;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public String toString() {
+		return "while (" + condition.toString() + ")" + this.block.toString() + "end while";
+	}
+}
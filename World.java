@@ -2,10 +2,10 @@
 import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -13,24 +13,106 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class World {
 
+	/** The width and height of a world made with no size given */
 	public static final int SIZE = 12;
 
-	protected Set<Point> availableFuel = Collections.newSetFromMap(new ConcurrentHashMap<Point, Boolean>());
+	// shared by every world, so a reset doesn't parse unchanged programs again
+	private static final ProgramCache programs = new ProgramCache(64, 16 << 20);
+
+	private final int width, height;
+	protected BarrelIndex availableFuel;
 	private Random rand = new Random();
 	protected Robot[] robots;
+	// the cells the robots are moving to or staying in, which no other robot may move to
+	private final CellIndex targets;
+	// the robots by the cell they are in, y * width + x
+	private final ConcurrentHashMap<Integer, Robot> robotsAt = new ConcurrentHashMap<Integer, Robot>();
+	// the threads running the robots, once the match has started
+	private Match match;
+	// the parsed programs loaded for the robots, which the world can step through
+	private RobotProgramNode[] loaded;
+	// the robots' programs when the world steps them, or null for the robots that have finished
+	private Stepper[] steppers;
 
 	public World() {
-		robots = new Robot[] { null, new Robot(this, 0, 0, "red", false), new Robot(this, SIZE - 1, SIZE - 1, "blue", false) };
+		this(SIZE, SIZE);
+	}
+
+	/** A world of the given number of cells across and down, with two robots */
+	public World(int width, int height) {
+		this(width, height, 2);
+	}
+
+	/**
+	 * A world of the given number of cells across and down, with the given
+	 * number of robots: the red robot in the top left corner, the blue one in
+	 * the bottom right, and any others spread out evenly between them, in rows.
+	 */
+	public World(int width, int height, int robots) {
+		this(width, height, robots, false);
+	}
+
+	/**
+	 * A world as above whose robots, if noWait is set, carry out their
+	 * actions as soon as they start them, without waiting for the world.
+	 */
+	protected World(int width, int height, int robots, boolean noWait) {
+		if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("no world can be " + width + " by " + height);
+		}
+		if (robots < 1 || robots > width * height) {
+			throw new IllegalArgumentException(robots + " robots can't fit in " + width + " by " + height);
+		}
+		this.width = width;
+		this.height = height;
+		availableFuel = new BarrelIndex(width, height);
+		targets = new CellIndex(width, height);
+		loaded = new RobotProgramNode[robots + 1];
+		this.robots = new Robot[robots + 1];
+		int cells = width * height;
+		for (int i = 1; i <= robots; i++) {
+			int cell = (i == 1) ? 0 : (i == 2) ? cells - 1 : (int) ((long) (i - 2) * cells / (robots - 1));
+			String colour = (i == 1) ? "red" : (i == 2) ? "blue" : "#" + i;
+			this.robots[i] = new Robot(this, cell % width, cell / width, colour, noWait);
+		}
+	}
+
+	/** The number of cells across the world */
+	public int getWidth() {
+		return width;
+	}
+
+	/** The number of cells down the world */
+	public int getHeight() {
+		return height;
 	}
 
 	/**
-	 * This world can no longer be used after this call.
+	 * This world can no longer be used after this call. Returns once every
+	 * robot has stopped.
 	 */
 	public void reset() {
 		availableFuel.clear();
-		for (int i = 1; i <= 2; i++) {
-			robots[i].updatePending();
-			robots[i].cancel();
+		if (takesTurns()) {
+			for (int i = 1; i < robots.length; i++) {
+				robots[i].updatePending();
+				robots[i].cancel();
+			}
+			if (match != null) {
+				match.close();
+			}
+			return;
+		}
+		// as updateWorld, finding where the robots are once rather than once for each
+		for (int i = 1; i < robots.length; i++) {
+			robots[i].advance();
+		}
+		Sensors.Robots cells = robotCells();
+		for (int i = 1; i < robots.length; i++) {
+			robots[i].cancel(cells);
+		}
+		if (match != null) {
+			match.close();
 		}
 	}
 
@@ -38,19 +120,52 @@ public class World {
 		return availableFuel;
 	}
 
+	/** The barrels, for robots to take and find the closest of */
+	public BarrelIndex getBarrels() {
+		return availableFuel;
+	}
+
+	/**
+	 * Carries out every robot's action and lets them carry on. Two robots
+	 * take their turns one after the other, as they always have, so the red
+	 * robot's sensors see the blue one where it was before the tick. More
+	 * robots all finish their actions before any carries on, so that every
+	 * robot's sensors see where the others are after the same tick, and the
+	 * world finds where they are once rather than once for each.
+	 */
 	public void updateWorld() {
 		addFuel(false);
-		for (int i = 1; i <= 2; i++) {
-			robots[i].updatePending();
+		if (takesTurns()) {
+			for (int i = 1; i < robots.length; i++) {
+				robots[i].updatePending();
+			}
+			return;
+		}
+		for (int i = 1; i < robots.length; i++) {
+			robots[i].advance();
 		}
+		Sensors.Robots cells = robotCells();
+		for (int i = 1; i < robots.length; i++) {
+			robots[i].release(cells);
+		}
+	}
+
+	// whether the robots are updated one after the other, as a world of two always has been
+	private boolean takesTurns() {
+		return robots.length - 1 <= 2;
 	}
 
 	public void loadRobotProgram(int id, File code) {
-		RobotProgramNode prog = Parser.parseFile(code);
+		ProgramCache.Program prog = programs.load(code, robots[id].getEngine());
 		if (prog != null) {
 			System.out.println("Robot " + id + " now has program: ");
-			System.out.println(prog);
-			robots[id].setProgram(prog);
+			System.out.println(Parser.printable(prog.parsed));
+			if (prog.report != null) {
+				System.out.println(prog.report);
+			}
+			loaded[id] = prog.optimized;
+			robots[id].setProgram(prog.prepared);
+			robots[id].setReadsBarrels(prog.readsBarrels);
 		}
 	}
 
@@ -60,59 +175,220 @@ public class World {
 			addFuel(true);
 			addFuel(true);
 		}
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					robots[1].run();
-				} catch (RobotInterruptedException e) {
+		match = new Match();
+		for (int i = 1; i < robots.length; i++) {
+			match.fork(robots[i]);
+		}
+	}
+
+	// =======================================================
+	// Lockstep
+	// =======================================================
+
+	// what a robot without a program does when the world steps it, as Robot.defaultProgram does
+	private static final String DEFAULT_PROGRAM = "while (gt(fuelLeft, 0)) {"
+			+ " if (eq(numBarrels, 0)) { wait; } else {"
+			+ " sense($x = barrelLR, $y = barrelFB);"
+			+ " if (and(eq($x, 0), eq($y, 0))) { takeFuel; }"
+			+ " else { if (eq($y, 0)) { if (lt($x, 0)) { turnL; } else { turnR; } }"
+			+ " else { if (gt($y, 0)) { move; } else { turnAround; } } } } }";
+	private static RobotProgramNode defaultProgram;
+
+	/**
+	 * Prepares to run the match on the calling thread, a tick at a time,
+	 * rather than on a thread for each robot as start does. Robots run the
+	 * programs loaded for them, or the program they were given if it can be
+	 * stepped through (see Stepper), or the default program.
+	 */
+	public void startLockstep() {
+		if (availableFuel.isEmpty()) {
+			addFuel(true);
+			addFuel(true);
+		}
+		steppers = new Stepper[robots.length];
+		for (int i = 1; i < robots.length; i++) {
+			RobotProgramNode prog = (loaded[i] != null) ? loaded[i] : robots[i].getProgram();
+			steppers[i] = new Stepper((prog != null) ? prog : defaultProgram(), robots[i]);
+			robots[i].setReadsBarrels(Sensors.readsBarrels((prog != null) ? prog : defaultProgram()));
+		}
+	}
+
+	/**
+	 * Plays one tick of a match started by startLockstep. Each robot still
+	 * running takes its turn in order, running its program up to its next
+	 * action and starting it; then the world updates, carrying out every
+	 * action at once, and each robot that acted records its state. Returns
+	 * false, doing nothing, once every robot has finished.
+	 *
+	 * The robots always take their turns in the same order, so a match
+	 * between the same programs always plays out the same way, as long as
+	 * the world's random numbers are the same (see setSeed).
+	 */
+	public boolean tick() {
+		boolean[] acting = new boolean[robots.length];
+		boolean any = false;
+		for (int i = 1; i < robots.length; i++) {
+			if (steppers[i] != null) {
+				acting[i] = startNextAction(steppers[i], robots[i]);
+				if (!acting[i]) {
+					steppers[i] = null;
+					robots[i].setFinished(true);
 				}
-				robots[1].setFinished(true);
+				any |= acting[i];
+			}
+		}
+		if (!any) {
+			return false;
+		}
+		updateWorld();
+		for (int i = 1; i < robots.length; i++) {
+			if (acting[i]) {
+				robots[i].readState();
 			}
-		}).start();
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					robots[2].run();
-				} catch (RobotInterruptedException e) {
+		}
+		return true;
+	}
+
+	/**
+	 * Runs a match started by startLockstep for at most the given number of
+	 * ticks, and returns the number it took.
+	 */
+	public int runLockstep(int ticks) {
+		int tick = 0;
+		while (tick < ticks && tick()) {
+			tick++;
+		}
+		return tick;
+	}
+
+	/**
+	 * Runs the program up to its next action and starts it, carrying on after
+	 * changes of shield, which take no time. Returns false if the program
+	 * has finished, or ended with an exception.
+	 */
+	private static boolean startNextAction(Stepper stepper, Robot robot) {
+		try {
+			while (true) {
+				int action = stepper.step();
+				if (action == Stepper.DONE) {
+					return false;
+				}
+				if (robot.startAction(action)) {
+					return true;
 				}
-				robots[2].setFinished(true);
 			}
-		}).start();
+		} catch (RobotInterruptedException e) {
+			Match.report(e);
+			return false;
+		} catch (RuntimeException e) {
+			// as if it had been thrown on the robot's own thread
+			System.err.println("Exception in " + robot + "'s program: " + e);
+			return false;
+		}
+	}
+
+	private static synchronized RobotProgramNode defaultProgram() {
+		if (defaultProgram == null) {
+			defaultProgram = Parser.parseSource(ByteBuffer.wrap(DEFAULT_PROGRAM.getBytes(StandardCharsets.UTF_8)));
+		}
+		return defaultProgram;
+	}
+
+	/** Makes the world add fuel at the same places each time it is given the same seed */
+	public void setSeed(long seed) {
+		rand.setSeed(seed);
+	}
+
+	/** The match started by start, or null if it has not started */
+	public Match getMatch() {
+		return match;
+	}
+
+	/** The cache of parsed programs used by loadRobotProgram */
+	public static ProgramCache getProgramCache() {
+		return programs;
 	}
 
 	public Robot getRobot(int id) {
-		if (id <= 0 || id > robots.length) {
+		if (id <= 0 || id >= robots.length) {
 			return null;
 		}
 		return robots[id];
 	}
 
-	/** Returns the opponent robot of the argument */
-	public Robot getOtherRobot(Robot robot) {
-		if (robot == robots[2])
-			return robots[1];
-		if (robot == robots[1])
-			return robots[2];
-		return null;
+	/** The number of robots, which getRobot numbers from 1 */
+	public int getRobotCount() {
+		return robots.length - 1;
+	}
+
+	/** The robot in the cell (x, y), or null if there isn't one */
+	public Robot getRobotAt(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return null;
+		}
+		return robotsAt.get(y * width + x);
+	}
+
+	/** Puts a new robot in the cell (x, y), in place of any robot there */
+	void enter(Robot robot, int x, int y) {
+		targets.add(x, y);
+		robotsAt.put(y * width + x, robot);
+	}
+
+	/**
+	 * Moves a robot's target from one cell to the next, unless another robot
+	 * is moving to it or staying in it, and returns whether it moved. Each
+	 * check takes the same time however many robots there are.
+	 */
+	boolean claim(int fromX, int fromY, int toX, int toY) {
+		synchronized (targets) {
+			if (targets.contains(toX, toY)) {
+				return false;
+			}
+			targets.remove(fromX, fromY);
+			targets.add(toX, toY);
+			return true;
+		}
+	}
+
+	/** Records that a robot has finished moving to its target */
+	void moved(Robot robot, int fromX, int fromY, int toX, int toY) {
+		// a robot moving in may have got there first
+		robotsAt.remove(fromY * width + fromX, robot);
+		robotsAt.put(toY * width + toX, robot);
+	}
+
+	/**
+	 * Where the robots are, for their sensors. With more than a few robots,
+	 * it is only called when every robot has finished its action, when the
+	 * cells they are staying in are the cells they are in, so that a view of
+	 * them is where the robots are.
+	 */
+	Sensors.Robots robotCells() {
+		if (robots.length - 1 > Sensors.Robots.FEW) {
+			return new Sensors.Robots(targets.view());
+		}
+		int[] xs = new int[robots.length - 1], ys = new int[robots.length - 1];
+		for (int i = 1; i < robots.length; i++) {
+			xs[i - 1] = robots[i].getX();
+			ys[i - 1] = robots[i].getY();
+		}
+		return new Sensors.Robots(xs, ys);
 	}
 
 	private void addFuel(boolean definitely) {
 		if (definitely || rand.nextDouble() < 0.2) {
-			int x = rand.nextInt(12);
-			int y = rand.nextInt(12);
-			Point fuel = new Point(x, y);
-			availableFuel.add(fuel);
+			int x = rand.nextInt(width);
+			int y = rand.nextInt(height);
+			availableFuel.add(x, y);
 		}
 	}
 	
 	public static class RoboGamePrinter extends World {
 		public RoboGamePrinter() {
-			super();
-			// we remake the robots to have noWait set to true, this makes the program run without the timer.
+			// the robots have noWait set to true, this makes the program run without the timer.
 			// the blue robot is never used, but the red robot does call some methods on it so we can't make it null.
-			this.robots = new Robot[] { null, new Robot(this, 0, 0, "red", true), new Robot(this, SIZE - 1, SIZE - 1, "blue", true) };
+			super(SIZE, SIZE, 2, true);
 		}
 
 		public static void main(String[] args) throws IOException {
@@ -134,11 +410,22 @@ public class World {
 				String[] coords = line.split("\\s+");
 				int x = Integer.parseInt(coords[0]);
 				int y = Integer.parseInt(coords[1]);
-				rgp.availableFuel.add(new Point(x, y));
+				rgp.availableFuel.add(x, y);
 			}
 			
-			// run the robot.
-			rgp.robots[1].run();
+			// run the robot, and print everything it traced before the program exits.
+			RobotInterruptedException stopped = null;
+			try {
+				rgp.robots[1].run();
+			} catch (RobotInterruptedException e) {
+				stopped = e;
+			} finally {
+				Trace.flush();
+			}
+			// after what it traced, as it was stopped after that
+			if (stopped != null) {
+				Match.report(stopped);
+			}
 		}
 	}
 }
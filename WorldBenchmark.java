@@ -0,0 +1,214 @@
+import java.awt.Point;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times robot programs as they run, rather than as they parse.
+ *
+ * Counts decisions per second: the if and while conditions a program
+ * evaluates. The program is a while loop that moves the robot until it runs
+ * out of fuel, testing many conditions that are never true before each move.
+ * It runs as the red robot of a headless world on each Engine, after checking
+ * that every engine makes the same moves. Sensors and actions cost the same
+ * on every engine, so the differences are the cost of deciding. The bytes
+ * allocated per move include the world's own, such as the robot's history
+ * and the sensor snapshot, but nothing the program's decisions allocate.
+ *
+ * With -actions, it instead counts the actions per second of a program that
+ * mostly waits, taking each move(n) and wait(n) one step at a time and then
+ * as the batches Robot takes them as.
+ *
+ * Usage: java WorldBenchmark [conditions | -actions]
+ */
+public class WorldBenchmark {
+
+	private static final long WARMUP_NANOS = 2000000000L, ITERATION_NANOS = 1000000000L;
+	private static final int ITERATIONS = 5;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("-actions")) {
+			actions();
+			return;
+		}
+		int conditions = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+		String src = decisionProgram(conditions, new Random(1));
+		RobotProgramNode tree = Parser.parseSource(ByteBuffer.wrap(src.getBytes(StandardCharsets.UTF_8)));
+		Engine[] engines = Engine.values();
+		RobotProgramNode[] programs = new RobotProgramNode[engines.length];
+		for (int i = 0; i < engines.length; i++) {
+			programs[i] = engines[i].prepare(tree);
+		}
+
+		PrintStream out = System.out;
+		boolean debug = RoboGame.debugDisplay;
+		// trace nothing, so the robots record no events, and hide what they still print
+		Trace.setSinks();
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		RoboGame.debugDisplay = false;
+		try {
+			List<String> expected = ParserBenchmark.runHeadless(tree);
+			for (int i = 0; i < engines.length; i++) {
+				if (!ParserBenchmark.runHeadless(programs[i]).equals(expected)) {
+					out.println(engines[i] + " made different moves from the tree");
+					System.exit(1);
+				}
+			}
+			// every move follows a test of the loop condition and each if, and the loop ends on one more test
+			long decisions = expected.size() * (conditions + 1L) + 1;
+			out.printf("%d conditions per move, %d moves and %d decisions per run%n", conditions, expected.size(),
+					decisions);
+			out.printf("%-10s %20s %12s %12s%n", "engine", "decisions/s", "ns/decision", "bytes/move");
+			for (int i = 0; i < engines.length; i++) {
+				measure(out, engines[i].name().toLowerCase(), programs[i], decisions, expected.size());
+			}
+		} finally {
+			System.setOut(out);
+			RoboGame.debugDisplay = debug;
+		}
+	}
+
+	/**
+	 * Warms the program up, then runs it for ITERATIONS timed iterations and
+	 * prints the mean rate of decisions, with the spread between iterations,
+	 * and the bytes allocated per move.
+	 */
+	private static void measure(PrintStream out, String name, final RobotProgramNode prog, final long decisions,
+			int moves) {
+		Timing t = Timing.measure(new Timing.Work() {
+			long run() {
+				ParserBenchmark.runHeadless(prog);
+				return decisions;
+			}
+		}, WARMUP_NANOS, ITERATION_NANOS, ITERATIONS);
+		out.printf("%-10s %20s %12.1f %12d%n", name, t.format("%.0f"), t.nanos / (double) t.ops,
+				t.bytes / (t.ops / decisions * moves));
+	}
+
+	// =======================================================
+	// Batched actions
+	// =======================================================
+
+	// waits and moves until the robot's fuel is far below zero, which takes about 28000 actions
+	private static final String ACTION_PROGRAM = "while (gt(fuelLeft, -100000)) { wait(20); move(4); turnL; }";
+	// the barrels in the world, which the robot finds again whenever it works out its sensors
+	private static final int BARRELS = 10;
+
+	private static void actions() {
+		RobotProgramNode prog = Parser.parseSource(ByteBuffer.wrap(ACTION_PROGRAM.getBytes(StandardCharsets.UTF_8)));
+		PrintStream out = System.out;
+		Trace.setSinks();
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		try {
+			List<String> expected = runActions(prog, false);
+			if (!runActions(prog, true).equals(expected)) {
+				out.println("The batches made different moves from the single steps");
+				System.exit(1);
+			}
+			out.printf("%d actions per run%n", expected.size());
+			out.printf("%-10s %20s %12s%n", "steps", "actions/s", "ns/action");
+			double single = measureActions(out, "single", prog, false, expected.size());
+			double batched = measureActions(out, "batched", prog, true, expected.size());
+			out.printf("batches are %.1fx as fast%n", batched / single);
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	/** Like measure, for the rate of actions, which it returns */
+	private static double measureActions(PrintStream out, String name, final RobotProgramNode prog,
+			final boolean batched, final int actions) {
+		Timing t = Timing.measure(new Timing.Work() {
+			long run() {
+				runActions(prog, batched);
+				return actions;
+			}
+		}, WARMUP_NANOS, ITERATION_NANOS, ITERATIONS);
+		out.printf("%-10s %20s %12.1f%n", name, t.format("%.0f"), t.nanos / (double) t.ops);
+		return t.rate();
+	}
+
+	/**
+	 * Runs the program as the red robot of a headless world with barrels in
+	 * it, on a robot that takes move(n) and wait(n) as batches or one step at
+	 * a time.
+	 */
+	private static List<String> runActions(RobotProgramNode prog, boolean batched) {
+		World world = new World.RoboGamePrinter();
+		Robot robot = batched ? new Robot(world, 0, 0, "red", true) : new SteppingRobot(world);
+		world.robots[1] = robot;
+		Random rand = new Random(3);
+		for (int i = 0; i < BARRELS; i++) {
+			world.getBarrels().add(rand.nextInt(World.SIZE), rand.nextInt(World.SIZE));
+		}
+		robot.setProgram(prog);
+		robot.run();
+		return robot.getHistory();
+	}
+
+	/** A robot that takes move(n) and wait(n) one step at a time */
+	private static class SteppingRobot extends Robot {
+		SteppingRobot(World world) {
+			super(world, 0, 0, "red", true);
+		}
+
+		public void move(int steps) {
+			for (int i = 0; i < steps; i++) {
+				move();
+			}
+		}
+
+		public void idleWait(int times) {
+			for (int i = 0; i < times; i++) {
+				idleWait();
+			}
+		}
+	}
+
+	// =======================================================
+	// Decisions
+	// =======================================================
+
+	private static final String[] SENSORS = { "fuelLeft", "wallDist", "numBarrels" };
+
+	/**
+	 * A program that tests the given number of conditions before every move.
+	 * The sensors it reads are never below zero or above 100, so none of the
+	 * conditions is ever true and the robot only moves.
+	 */
+	static String decisionProgram(int conditions, Random rand) {
+		StringBuilder sb = new StringBuilder("while (gt(fuelLeft, 0)) {\n");
+		for (int i = 0; i < conditions; i++) {
+			String s = SENSORS[rand.nextInt(SENSORS.length)];
+			String t = SENSORS[rand.nextInt(SENSORS.length)];
+			int c = 200 + rand.nextInt(100);
+			sb.append("\tif (");
+			switch (i % 4) {
+			case 0:
+				sb.append("gt(add(").append(s).append(", ").append(rand.nextInt(10)).append("), ").append(c).append(')');
+				break;
+			case 1:
+				sb.append("and(gt(").append(s).append(", -1), lt(mul(").append(t).append(", 2), -").append(c).append("))");
+				break;
+			case 2:
+				sb.append("or(eq(").append(s).append(", ").append(c).append("), lt(sub(").append(s).append(", ").append(t)
+						.append("), -").append(c).append("))");
+				break;
+			default:
+				sb.append("not(lt(div(").append(s).append(", 2), ").append(c).append("))");
+				break;
+			}
+			sb.append(") { turnL; }\n");
+		}
+		return sb.append("\tmove;\n}\n").toString();
+	}
+}
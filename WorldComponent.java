@@ -3,13 +3,15 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -23,8 +25,21 @@ public class WorldComponent extends JComponent {
 	public static final int GRID_SIZE = 50;
 	private static final int ANIMATION_DELAY = 20;
 	private static final int WORLD_UPDATE_DELAY = 33;
+	// the most pixels across or down the world is drawn in; bigger worlds are scaled down to fit
+	private static final int MAX_VIEW = 600;
+	// cells drawn smaller than this have no grid lines, and a dot for each barrel
+	private static final int MIN_CELL = 8;
+	private static final int BARREL_COLOUR = 0xffe07000;
+
+	// the size of the worlds, from -Drobots.width= and -Drobots.height=, or World.SIZE
+	private final int width = Integer.getInteger("robots.width", World.SIZE);
+	private final int height = Integer.getInteger("robots.height", World.SIZE);
+	// how much the world is scaled down by to fit in MAX_VIEW
+	private final double scale = Math.min(1, MAX_VIEW / (double) (Math.max(width, height) * GRID_SIZE));
 
 	private BufferedImage fuelImage;
+	// the barrels of a scaled down world, a pixel each, redrawn for every frame
+	private BufferedImage barrelDots;
 	private World world;
 	private Timer timer;
 
@@ -32,8 +47,9 @@ public class WorldComponent extends JComponent {
 
 	public WorldComponent() {
 		super();
-		world = new World();
-		setPreferredSize(new Dimension(600, 600));
+		world = new World(width, height);
+		setPreferredSize(new Dimension((int) Math.ceil(width * GRID_SIZE * scale),
+				(int) Math.ceil(height * GRID_SIZE * scale)));
 
 		try {
 			fuelImage = ImageIO.read(new File("assets/fuel.png"));
@@ -52,7 +68,7 @@ public class WorldComponent extends JComponent {
 		if (timer != null)
 			timer.cancel();
 		world.reset();
-		world = new World();
+		world = new World(width, height);
 	}
 
 	public void loadRobotProgram(int rob, File code) {
@@ -69,26 +85,57 @@ public class WorldComponent extends JComponent {
 		g2d.setColor(Color.BLACK);
 		g2d.setStroke(new BasicStroke(2));
 
-		for (int i = 0; i <= World.SIZE; i++) {
-			Line2D hline = new Line2D.Double(0, i * GRID_SIZE, 600, i * GRID_SIZE);
-			Line2D vline = new Line2D.Double(i * GRID_SIZE, 0, i * GRID_SIZE, 600);
-			g2d.draw(hline);
-			g2d.draw(vline);
+		CellIndex.View fuel = world.getBarrels().view();
+		boolean detailed = GRID_SIZE * scale >= MIN_CELL;
+		if (!detailed) {
+			// in pixels, as the lines between the cells would run together
+			drawBarrelDots(g2d, fuel);
+			g2d.draw(new Rectangle2D.Double(0, 0, width * GRID_SIZE * scale, height * GRID_SIZE * scale));
 		}
+		g2d.scale(scale, scale);
 
-		for (Point fuel : world.getAvailableFuel()) {
-			int x = fuel.x * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
-			int y = fuel.y * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
-			g2d.drawImage(fuelImage, x, y, null);
+		if (detailed) {
+			for (int i = 0; i <= height; i++) {
+				g2d.draw(new Line2D.Double(0, i * GRID_SIZE, width * GRID_SIZE, i * GRID_SIZE));
+			}
+			for (int i = 0; i <= width; i++) {
+				g2d.draw(new Line2D.Double(i * GRID_SIZE, 0, i * GRID_SIZE, height * GRID_SIZE));
+			}
+			for (int cell = fuel.next(-1); cell >= 0; cell = fuel.next(cell)) {
+				int x = (cell % fuel.width()) * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getWidth() / 2;
+				int y = (cell / fuel.width()) * GRID_SIZE + GRID_SIZE / 2 - fuelImage.getHeight() / 2;
+				g2d.drawImage(fuelImage, x, y, null);
+			}
 		}
 
-		for (int i = 1; i <= 2; i++) {
+		for (int i = 1; i <= world.getRobotCount(); i++) {
 			Robot rob;
 			if ((rob = world.getRobot(i)) != null)
 				rob.draw(g2d, getTimeRatio());
 		}
 	}
 
+	/**
+	 * Draws the barrels of a world scaled down too far for their images as a
+	 * dot in each pixel with a barrel in it, going through the barrels once
+	 * without drawing each, so that large worlds with many barrels draw quickly.
+	 */
+	private void drawBarrelDots(Graphics2D g2d, CellIndex.View fuel) {
+		Dimension size = getPreferredSize();
+		if (barrelDots == null) {
+			barrelDots = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+		}
+		int[] pixels = ((DataBufferInt) barrelDots.getRaster().getDataBuffer()).getData();
+		Arrays.fill(pixels, 0);
+		double pixelsPerCell = GRID_SIZE * scale;
+		for (int cell = fuel.next(-1); cell >= 0; cell = fuel.next(cell)) {
+			int x = Math.min(size.width - 1, (int) ((cell % width) * pixelsPerCell));
+			int y = Math.min(size.height - 1, (int) ((cell / width) * pixelsPerCell));
+			pixels[y * size.width + x] = BARREL_COLOUR;
+		}
+		g2d.drawImage(barrelDots, 0, 0, null);
+	}
+
 	private double getTimeRatio() {
 		int base = frame / WORLD_UPDATE_DELAY;
 		return (double) frame / WORLD_UPDATE_DELAY - base;